@@ -11,7 +11,7 @@ public class Main {
         }
 
         try {
-            new ChessClient(serverUrl, webSocketUri).run();
+            new ChessClient(serverUrl, webSocketUri, Boolean.getBoolean("chess.ws.binary")).run();
 
         } catch (Throwable ex) {
             System.out.printf("Unable to start server: %s%n", ex.getMessage());
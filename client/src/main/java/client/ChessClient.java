@@ -11,27 +11,40 @@ import model.gameservicerecords.CreateGameInput;
 import model.gameservicerecords.JoinGameInput;
 import model.gameservicerecords.ShortenedGameData;
 import client.websocket.MessageObserver;
+import serverfacade.LiveGameList;
 import serverfacade.ServerFacade;
+import websocket.WebSocketJson;
 import websocket.messages.ServerMessage;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.stream.Collectors;
 
 import static chess.EscapeSequences.*;
 
 public class ChessClient implements MessageObserver {
+    private static final int RECONNECT_ATTEMPTS = 5;
+
     private final ServerFacade server;
     private final WebSocketFacade webSocket;
     private final ClientDisplay display;
+    // reads each websocket message straight into its concrete ServerMessage subclass
+    private final Gson messageGson = WebSocketJson.newGson();
 
     private String currentUser = null;
     private AuthData currentAuthData;
     private int currentGameID = -1;
     private ChessGame.TeamColor userColor = null;
     private ChessBoard gameBoard = new ChessBoard();
+    // last full game from the server, kept up to date by applying MOVE messages
+    private ChessGame liveGame = null;
+    // sequence of the last game event received, sent back in RESUME after a dropped connection
+    private volatile Long lastSequence = null;
+    // game list pushed from the server's lobby feed while logged in
+    private LiveGameList liveGames = null;
+    // whether the last command showed the game list, which is then redrawn as it changes
+    private volatile boolean showingGameList = false;
 
 
     private boolean loggedIn = false;
@@ -41,8 +54,15 @@ public class ChessClient implements MessageObserver {
 
 
     public ChessClient(String serverUrl, String webSocketUri) throws Exception {
+        this(serverUrl, webSocketUri, false);
+    }
+
+    /**
+     * @param binaryProtocol talk to the server in BinaryProtocol frames instead of JSON
+     */
+    public ChessClient(String serverUrl, String webSocketUri, boolean binaryProtocol) throws Exception {
         server = new ServerFacade(serverUrl);
-        webSocket = new WebSocketFacade(webSocketUri, this);
+        webSocket = new WebSocketFacade(webSocketUri, this, binaryProtocol);
         display = new ClientDisplay();
         gameBoard.resetBoard();
     }
@@ -95,6 +115,7 @@ public class ChessClient implements MessageObserver {
             command = tokens[0];
         }
         String[] inputs = Arrays.copyOfRange(tokens, 1, tokens.length);
+        showingGameList = false;
 
         return switch (command) {
 
@@ -146,6 +167,7 @@ public class ChessClient implements MessageObserver {
             this.currentAuthData = authData;
             this.loggedIn = true;
             this.currentUser = username;
+            watchLobby();
 
             return String.format("Successfully logged in as '%s'.", authData.username());
 
@@ -179,6 +201,7 @@ public class ChessClient implements MessageObserver {
             this.currentAuthData = authData;
             this.loggedIn = true;
             this.currentUser = username;
+            watchLobby();
 
             return String.format("Successfully registered and logged in as '%s'.", authData.username());
 
@@ -201,6 +224,7 @@ public class ChessClient implements MessageObserver {
         }
         try {
             server.logoutUser(currentAuthData.authToken());
+            stopWatchingLobby();
             this.currentAuthData = null;
             this.loggedIn = false;
             this.currentUser = null;
@@ -267,19 +291,14 @@ public class ChessClient implements MessageObserver {
         String authToken = currentAuthData.authToken();
 
         try {
-            List<ShortenedGameData> games = server.listGames(authToken);
-
-            if (games == null || games.isEmpty()) {
-                return "No games found.";
+            List<ShortenedGameData> games;
+            if (liveGames != null && liveGames.isLoaded()) {
+                games = liveGames.games();
+            } else {
+                games = server.listGames(authToken);
             }
-
-            return games.stream()
-                    .map(game -> String.format("ID: %-5d | Name: %-20s | White Player: %-15s | Black Player: %-15s",
-                            game.gameID(),
-                            game.gameName(),
-                            game.whiteUsername() != null ? game.whiteUsername() : "None",
-                            game.blackUsername() != null ? game.blackUsername() : "None"))
-                    .collect(Collectors.joining("\n"));
+            showingGameList = true;
+            return display.gameList(games);
 
         } catch (HttpResponseException e) {
             return String.format("List games failed: %s", e.getMessage());
@@ -288,6 +307,29 @@ public class ChessClient implements MessageObserver {
         }
     }
 
+    private void watchLobby() {
+        stopWatchingLobby();
+        liveGames = server.watchGames(currentAuthData.authToken(), this::gameListChanged);
+    }
+
+    private void stopWatchingLobby() {
+        if (liveGames != null) {
+            liveGames.close();
+            liveGames = null;
+        }
+    }
+
+    /**
+     * Redraws the game list when it changes while it is the last thing shown
+     */
+    private void gameListChanged() {
+        LiveGameList games = liveGames;
+        if (showingGameList && !inGame && !observing && games != null) {
+            System.out.print("\n" + display.screenFormater(currentUser, userColor, gameBoard, loggedIn, inGame, observing,
+                    display.gameList(games.games())));
+        }
+    }
+
     public String joinGame(String... inputs) {
         if (!loggedIn || currentAuthData == null) {
             return "Error: You must be logged in to join a game.";
@@ -327,6 +369,7 @@ public class ChessClient implements MessageObserver {
             observing = false;
             userColor = playerTeamColor;
             currentGameID = gameId;
+            lastSequence = null;
 
             webSocket.joinPlayer(currentAuthData.authToken(), currentGameID, userColor);
 
@@ -375,6 +418,7 @@ public class ChessClient implements MessageObserver {
             inGame = false;
             observing = true;
             currentGameID = gameId;
+            lastSequence = null;
 
             webSocket.joinObserver(currentAuthData.authToken(), currentGameID);
             display.setPrintHeader(false);
@@ -413,6 +457,8 @@ public class ChessClient implements MessageObserver {
             this.inGame = false;
             this.observing = false;
             this.gameBoard = null; // Clean up local state
+            this.liveGame = null;
+            this.lastSequence = null;
 
             webSocket.leave(currentAuthData.authToken(), currentGameID);
 
@@ -498,26 +544,107 @@ public class ChessClient implements MessageObserver {
     }
 
 
+    /**
+     * Reconnects in the background and resumes the game from the last event we saw, so only the
+     * missed events are sent rather than the whole game. Without any event seen yet there is
+     * nothing to resume from, so the game is joined again with a plain CONNECT.
+     */
+    @Override
+    public void connectionLost() {
+        Long resumeFrom = lastSequence;
+        if (!inGame && !observing) {
+            return;
+        }
+        System.out.println("\n" + SET_TEXT_COLOR_RED + "Connection lost, reconnecting..." + RESET_TEXT_COLOR);
+
+        Thread.ofVirtual().start(() -> {
+            for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++) {
+                try {
+                    Thread.sleep(attempt * 1000L);
+                    webSocket.reconnect();
+                    if (resumeFrom != null) {
+                        webSocket.resume(currentAuthData.authToken(), currentGameID, resumeFrom);
+                    } else if (observing) {
+                        webSocket.joinObserver(currentAuthData.authToken(), currentGameID);
+                    } else {
+                        webSocket.joinPlayer(currentAuthData.authToken(), currentGameID, userColor);
+                    }
+                    return;
+                } catch (Exception e) {
+                    System.out.println("\n" + SET_TEXT_COLOR_RED + "Reconnect failed: " + e.getMessage() + RESET_TEXT_COLOR);
+                }
+            }
+            System.out.println("\n" + SET_TEXT_COLOR_RED + "Gave up reconnecting after " + RECONNECT_ATTEMPTS
+                    + " attempts, leave the game and join it again to reconnect" + RESET_TEXT_COLOR);
+        });
+    }
+
+    /**
+     * Plays a MOVE message onto our copy of the game
+     *
+     * @return false if our copy is missing or no longer matches the server's and needs a resync
+     */
+    private boolean applyMove(websocket.messages.MoveMessage move) {
+        if (liveGame == null || move.getPly() != liveGame.getPly() + 1) {
+            return false;
+        }
+        try {
+            liveGame.makeMove(move.getMove());
+        } catch (InvalidMoveException e) {
+            return false;
+        }
+        if (move.endsGame()) {
+            liveGame.setGameOver();
+        }
+        return ChessGameCodec.positionHash(liveGame) == move.getPositionHash();
+    }
+
     @Override
     public void notify(String message) {
+        ServerMessage serverMessage;
         try {
-            Gson gson = new Gson();
-            ServerMessage serverMessage = gson.fromJson(message, ServerMessage.class);
+            serverMessage = messageGson.fromJson(message, ServerMessage.class);
+        } catch (Exception e) {
+            System.out.println("\n" + SET_TEXT_COLOR_RED + "Failed to parse WebSocket message: " + e.getMessage() + RESET_TEXT_COLOR);
+            System.out.print(display.screenFormater(currentUser, userColor, gameBoard, loggedIn, inGame, observing));
+            return;
+        }
 
+        notify(serverMessage);
+    }
+
+    @Override
+    public void notify(ServerMessage serverMessage) {
+        if (serverMessage.getSequence() != null) {
+            lastSequence = serverMessage.getSequence();
+        }
+        try {
             switch (serverMessage.getServerMessageType()) {
                 case NOTIFICATION:
-                    websocket.messages.NotificationMessage notification = gson.fromJson(message, websocket.messages.NotificationMessage.class);
+                    websocket.messages.NotificationMessage notification = (websocket.messages.NotificationMessage) serverMessage;
                     System.out.println("\n" + SET_TEXT_COLOR_YELLOW + notification.getMessage() + RESET_TEXT_COLOR);
                     break;
 
                 case LOAD_GAME:
-                    websocket.messages.LoadGameMessage loadGame = gson.fromJson(message, websocket.messages.LoadGameMessage.class);
-                    this.gameBoard = loadGame.getGame().getBoard();
+                    websocket.messages.LoadGameMessage loadGame = (websocket.messages.LoadGameMessage) serverMessage;
+                    this.liveGame = loadGame.getGame();
+                    this.gameBoard = liveGame.getBoard();
+                    display.setPrintBoard(true);
+                    break;
+
+                case MOVE:
+                    websocket.messages.MoveMessage move = (websocket.messages.MoveMessage) serverMessage;
+                    if (!applyMove(move)) {
+                        liveGame = null;
+                        webSocket.resync(currentAuthData.authToken(), currentGameID);
+                        return;
+                    }
+                    this.gameBoard = liveGame.getBoard();
                     display.setPrintBoard(true);
                     break;
 
                 case ERROR:
-                    websocket.messages.ErrorMessage error = gson.fromJson(message, websocket.messages.ErrorMessage.class);
+                    websocket.messages.ErrorMessage error = (websocket.messages.ErrorMessage) serverMessage;
                     System.out.println("\n" + SET_TEXT_COLOR_RED + "ERROR: " + error.getErrorMessage() + RESET_TEXT_COLOR);
                     break;
             }
@@ -525,9 +652,9 @@ public class ChessClient implements MessageObserver {
             System.out.print(display.screenFormater(currentUser, userColor, gameBoard, loggedIn, inGame, observing));
 
         } catch (Exception e) {
-            System.out.println("\n" + SET_TEXT_COLOR_RED + "Failed to parse WebSocket message: " + e.getMessage() + RESET_TEXT_COLOR);
+            System.out.println("\n" + SET_TEXT_COLOR_RED + "Failed to handle WebSocket message: " + e.getMessage() + RESET_TEXT_COLOR);
             System.out.print(display.screenFormater(currentUser, userColor, gameBoard, loggedIn, inGame, observing));
         }
     }
 
-}
\ No newline at end of file
+}
@@ -5,8 +5,12 @@ import chess.ChessGame;
 import chess.ChessMove;
 import chess.ChessPosition;
 
+import model.gameservicerecords.ShortenedGameData;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static chess.EscapeSequences.*;
 import static chess.EscapeSequences.SET_BG_COLOR_DARK_GREEN;
@@ -192,7 +196,7 @@ public class ClientDisplay {
 
     private final String[] postLogginHelp = {
             textColorPrimary + "Create <NAME>" + RESET_TEXT_COLOR + " - Create Game",
-            textColorPrimary + "List" + RESET_TEXT_COLOR + " - List availible games",
+            textColorPrimary + "List" + RESET_TEXT_COLOR + " - List availible games, kept up to date until your next command",
 
             textColorPrimary + "Join <ID> <WHITE|BLACK>" + RESET_TEXT_COLOR + " - Join chosen game",
             textColorPrimary + "Observe <ID>" + RESET_TEXT_COLOR + " - Observe chosen game",
@@ -222,6 +226,20 @@ public class ClientDisplay {
     };
 
 
+    public String gameList(List<ShortenedGameData> games) {
+        if (games == null || games.isEmpty()) {
+            return "No games found.";
+        }
+
+        return games.stream()
+                .map(game -> String.format("ID: %-5d | Name: %-20s | White Player: %-15s | Black Player: %-15s",
+                        game.gameID(),
+                        game.gameName(),
+                        game.whiteUsername() != null ? game.whiteUsername() : "None",
+                        game.blackUsername() != null ? game.blackUsername() : "None"))
+                .collect(Collectors.joining("\n"));
+    }
+
     public String[] getPreLogginHelp() {
         return preLogginHelp;
     }
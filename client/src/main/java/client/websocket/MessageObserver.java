@@ -4,4 +4,15 @@ import websocket.messages.ServerMessage;
 
 public interface MessageObserver {
     void notify(String message);
+
+    /**
+     * Called with messages that arrive already decoded, such as BinaryProtocol frames
+     */
+    void notify(ServerMessage message);
+
+    /**
+     * Called when the websocket closes without us asking it to
+     */
+    default void connectionLost() {
+    }
 }
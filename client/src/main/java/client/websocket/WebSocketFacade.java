@@ -4,11 +4,14 @@ import chess.ChessGame;
 import chess.ChessMove;
 import com.google.gson.Gson;
 import jakarta.websocket.*;
+import websocket.BinaryProtocol;
+import websocket.WebSocketJson;
 import websocket.commands.*;
 import websocket.messages.ServerMessage;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 @ClientEndpoint
 public class WebSocketFacade {
@@ -16,17 +19,42 @@ public class WebSocketFacade {
     private Session session;
     private MessageObserver observer;
     private Gson gson;
+    private final boolean binary;
+    private final URI uri;
+    private final WebSocketContainer container;
 
     public WebSocketFacade(String url, MessageObserver observer) throws DeploymentException, IOException {
+        this(url, observer, false);
+    }
+
+    /**
+     * @param binary send commands as BinaryProtocol frames, which also makes the server answer in binary
+     */
+    public WebSocketFacade(String url, MessageObserver observer, boolean binary) throws DeploymentException, IOException {
         this.observer = observer;
-        this.gson = new Gson();
+        this.gson = WebSocketJson.newGson();
+        this.binary = binary;
+
+        this.uri = URI.create(url);
+        this.container = ContainerProvider.getWebSocketContainer();
 
-        URI uri = URI.create(url);
-        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        this.session = container.connectToServer(this, uri);
+    }
 
+    /**
+     * Opens a new websocket after the last one dropped; follow with {@link #resume} to rejoin the game
+     */
+    public void reconnect() throws DeploymentException, IOException {
         this.session = container.connectToServer(this, uri);
     }
 
+    @OnClose
+    public void onClose(Session closedSession, CloseReason reason) {
+        if (closedSession == session && reason.getCloseCode() != CloseReason.CloseCodes.NORMAL_CLOSURE) {
+            observer.connectionLost();
+        }
+    }
+
     @OnMessage
     public void onMessage(String message) {
         try {
@@ -37,11 +65,25 @@ public class WebSocketFacade {
         }
     }
 
+    @OnMessage
+    public void onMessage(ByteBuffer frame) {
+        try {
+            observer.notify(BinaryProtocol.decodeMessage(frame));
+
+        } catch (Exception e) {
+            System.err.println("Failed to handle message: " + e.getMessage());
+        }
+    }
+
 
     private void sendCommand(UserGameCommand command) throws IOException {
         if (session != null && session.isOpen()) {
-            String json = gson.toJson(command);
-            session.getBasicRemote().sendText(json);
+            if (binary) {
+                session.getBasicRemote().sendBinary(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+            } else {
+                String json = gson.toJson(command);
+                session.getBasicRemote().sendText(json);
+            }
         } else {
             throw new IOException("Connection is closed");
         }
@@ -49,12 +91,12 @@ public class WebSocketFacade {
 
 
     public void joinPlayer(String authToken, int gameID, ChessGame.TeamColor playerColor) throws IOException {
-        JoinGameCommand command = new JoinGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, playerColor.toString());
+        JoinGameCommand command = new JoinGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, playerColor.toString(), true);
         sendCommand(command);
     }
 
     public void joinObserver(String authToken, int gameID) throws IOException {
-        JoinGameCommand command = new JoinGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, "OBSERVER");
+        JoinGameCommand command = new JoinGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, "OBSERVER", true);
         sendCommand(command);
     }
 
@@ -72,5 +114,21 @@ public class WebSocketFacade {
         ReseignGameCommand command = new ReseignGameCommand(UserGameCommand.CommandType.RESIGN, authToken, gameID);
         sendCommand(command);
     }
+
+    /**
+     * Rejoins the game on a new websocket, asking for only the events after lastSequence
+     */
+    public void resume(String authToken, int gameID, long lastSequence) throws IOException {
+        ResumeGameCommand command = new ResumeGameCommand(UserGameCommand.CommandType.RESUME, authToken, gameID, lastSequence, true);
+        sendCommand(command);
+    }
+
+    /**
+     * Asks the server for the whole game after a MOVE message did not line up with our copy
+     */
+    public void resync(String authToken, int gameID) throws IOException {
+        UserGameCommand command = new UserGameCommand(UserGameCommand.CommandType.RESYNC, authToken, gameID);
+        sendCommand(command);
+    }
 }
 
@@ -0,0 +1,206 @@
+package dataaccess;
+
+import chess.ChessMove;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.ShortenedGameData;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets at most a fixed number of calls into the wrapped store run at once. Handlers on virtual
+ * threads are cheap enough that thousands can be waiting on the database together, so this keeps
+ * the database to the load it can take and makes the rest queue here instead. A call that waits
+ * longer than maxWait fails rather than piling up behind a database that has stopped answering.
+ */
+public class BoundedDataAccess implements DataAccess, AutoCloseable {
+
+    private final DataAccess delegate;
+    private final Semaphore permits;
+    private final long maxWaitNanos;
+
+    public BoundedDataAccess(DataAccess delegate, int maxConcurrentCalls, Duration maxWait) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Concurrent call limit must be positive: " + maxConcurrentCalls);
+        }
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * Calls waiting for a permit right now
+     */
+    public int waitingCalls() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        run(() -> delegate.clear());
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        run(() -> delegate.createUser(user));
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        run(() -> delegate.createUsers(users));
+    }
+
+    @Override
+    public UserData getUser(String userID) throws DataAccessException {
+        return call(() -> delegate.getUser(userID));
+    }
+
+    @Override
+    public boolean userExists(String userID) throws DataAccessException {
+        return call(() -> delegate.userExists(userID));
+    }
+
+    @Override
+    public boolean validatePassword(UserData user) throws DataAccessException {
+        return call(() -> delegate.validatePassword(user));
+    }
+
+    @Override
+    public void addAuth(AuthData authData) throws DataAccessException {
+        run(() -> delegate.addAuth(authData));
+    }
+
+    @Override
+    public boolean validateUserHasAuthdata(AuthData authData) throws DataAccessException {
+        return call(() -> delegate.validateUserHasAuthdata(authData));
+    }
+
+    @Override
+    public AuthData getAuthdataFromAuthtoken(String authToken) throws DataAccessException {
+        return call(() -> delegate.getAuthdataFromAuthtoken(authToken));
+    }
+
+    @Override
+    public boolean validateAuthToken(String authToken) throws DataAccessException {
+        return call(() -> delegate.validateAuthToken(authToken));
+    }
+
+    @Override
+    public boolean authTokenExists(String authToken) throws DataAccessException {
+        return call(() -> delegate.authTokenExists(authToken));
+    }
+
+    @Override
+    public void removeAuth(String authData) throws DataAccessException {
+        run(() -> delegate.removeAuth(authData));
+    }
+
+    @Override
+    public int createGame(GameData game) throws DataAccessException {
+        return call(() -> delegate.createGame(game));
+    }
+
+    @Override
+    public List<Integer> createGames(List<GameData> games) throws DataAccessException {
+        return call(() -> delegate.createGames(games));
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        run(() -> delegate.updateGame(game));
+    }
+
+    @Override
+    public void updateGames(List<GameData> games) throws DataAccessException {
+        run(() -> delegate.updateGames(games));
+    }
+
+    @Override
+    public int numGames() throws DataAccessException {
+        return call(() -> delegate.numGames());
+    }
+
+    @Override
+    public boolean gameIDExists(int gameID) throws DataAccessException {
+        return call(() -> delegate.gameIDExists(gameID));
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return call(() -> delegate.getGame(gameID));
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        return call(() -> delegate.listGames());
+    }
+
+    @Override
+    public List<ShortenedGameData> listGameSummaries(GameListQuery query, String username) throws DataAccessException {
+        return call(() -> delegate.listGameSummaries(query, username));
+    }
+
+    @Override
+    public void appendMove(GameData game, ChessMove move) throws DataAccessException {
+        run(() -> delegate.appendMove(game, move));
+    }
+
+    @Override
+    public List<ChessMove> getMoves(int gameID) throws DataAccessException {
+        return call(() -> delegate.getMoves(gameID));
+    }
+
+    @Override
+    public void close() throws DataAccessException {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new DataAccessException("Failed to close the store", e);
+            }
+        }
+    }
+
+    private <T> T call(Call<T> call) throws DataAccessException {
+        acquire();
+        try {
+            return call.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void run(Action action) throws DataAccessException {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void acquire() throws DataAccessException {
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                throw new DataAccessException("Error: database busy, try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Error: interrupted waiting for the database", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T run() throws DataAccessException;
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws DataAccessException;
+    }
+}
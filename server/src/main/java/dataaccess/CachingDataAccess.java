@@ -0,0 +1,252 @@
+package dataaccess;
+
+import chess.ChessMove;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.ShortenedGameData;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used games in memory in front of the wrapped store, so games being
+ * played are read from the store once rather than on every command. Writes go to the store first
+ * and are only cached once it has accepted them, and the store's version check still decides
+ * whether a write was based on the latest game, so a stale cached copy can cause a conflict but
+ * never overwrite a newer game. Games are evicted when least recently used beyond the capacity,
+ * when an update conflicts, and by {@link #evict(int)} when another node may have changed them.
+ * <p>
+ * Callers change the games they are given in place, so games are copied going in and coming out.
+ */
+public class CachingDataAccess implements DataAccess, AutoCloseable {
+
+    private final DataAccess delegate;
+    private final Map<Integer, GameData> games;
+
+    public CachingDataAccess(DataAccess delegate, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Game cache capacity must be positive: " + capacity);
+        }
+        this.delegate = delegate;
+        this.games = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, GameData> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Drops the cached game so the next read goes to the store
+     */
+    public synchronized void evict(int gameID) {
+        games.remove(gameID);
+    }
+
+    public synchronized void evictAll() {
+        games.clear();
+    }
+
+    public synchronized int cachedGames() {
+        return games.size();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        delegate.clear();
+        evictAll();
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        delegate.createUser(user);
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        delegate.createUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String userID) throws DataAccessException {
+        return delegate.getUser(userID);
+    }
+
+    @Override
+    public boolean userExists(String userID) throws DataAccessException {
+        return delegate.userExists(userID);
+    }
+
+    @Override
+    public boolean validatePassword(UserData user) throws DataAccessException {
+        return delegate.validatePassword(user);
+    }
+
+    @Override
+    public void addAuth(AuthData authData) throws DataAccessException {
+        delegate.addAuth(authData);
+    }
+
+    @Override
+    public boolean validateUserHasAuthdata(AuthData authData) throws DataAccessException {
+        return delegate.validateUserHasAuthdata(authData);
+    }
+
+    @Override
+    public AuthData getAuthdataFromAuthtoken(String authToken) throws DataAccessException {
+        return delegate.getAuthdataFromAuthtoken(authToken);
+    }
+
+    @Override
+    public boolean validateAuthToken(String authToken) throws DataAccessException {
+        return delegate.validateAuthToken(authToken);
+    }
+
+    @Override
+    public boolean authTokenExists(String authToken) throws DataAccessException {
+        return delegate.authTokenExists(authToken);
+    }
+
+    @Override
+    public void removeAuth(String authData) throws DataAccessException {
+        delegate.removeAuth(authData);
+    }
+
+    @Override
+    public int createGame(GameData game) throws DataAccessException {
+        return delegate.createGame(game);
+    }
+
+    @Override
+    public List<Integer> createGames(List<GameData> games) throws DataAccessException {
+        return delegate.createGames(games);
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        try {
+            delegate.updateGame(game);
+        } catch (DataAccessException e) {
+            evict(game.gameID());
+            throw e;
+        }
+        updated(game);
+    }
+
+    @Override
+    public void updateGames(List<GameData> games) throws DataAccessException {
+        try {
+            delegate.updateGames(games);
+        } catch (DataAccessException e) {
+            // which of them were written depends on the store, so none of them are trusted
+            for (GameData game : games) {
+                evict(game.gameID());
+            }
+            throw e;
+        }
+        for (GameData game : games) {
+            updated(game);
+        }
+    }
+
+    @Override
+    public int numGames() throws DataAccessException {
+        return delegate.numGames();
+    }
+
+    @Override
+    public boolean gameIDExists(int gameID) throws DataAccessException {
+        synchronized (this) {
+            if (games.containsKey(gameID)) {
+                return true;
+            }
+        }
+        return delegate.gameIDExists(gameID);
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        GameData cached;
+        synchronized (this) {
+            cached = games.get(gameID);
+        }
+        if (cached != null) {
+            return copy(cached, cached.version());
+        }
+
+        GameData stored = delegate.getGame(gameID);
+        if (stored != null) {
+            cache(copy(stored, stored.version()));
+        }
+        return stored;
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        return delegate.listGames();
+    }
+
+    @Override
+    public List<ShortenedGameData> listGameSummaries(GameListQuery query, String username) throws DataAccessException {
+        return delegate.listGameSummaries(query, username);
+    }
+
+    /**
+     * Moves the cached game, if there is one, to the board after the move and its next version
+     */
+    @Override
+    public void appendMove(GameData game, ChessMove move) throws DataAccessException {
+        try {
+            delegate.appendMove(game, move);
+        } catch (DataAccessException e) {
+            evict(game.gameID());
+            throw e;
+        }
+        synchronized (this) {
+            GameData cached = games.get(game.gameID());
+            if (cached != null) {
+                games.put(game.gameID(), new GameData(cached.gameID(), cached.whiteUsername(), cached.blackUsername(),
+                        cached.gameName(), game.game().deepCopy(), cached.version() + 1));
+            }
+        }
+    }
+
+    @Override
+    public List<ChessMove> getMoves(int gameID) throws DataAccessException {
+        return delegate.getMoves(gameID);
+    }
+
+    @Override
+    public void close() throws DataAccessException {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new DataAccessException("Failed to close the store", e);
+            }
+        }
+    }
+
+    private void updated(GameData game) {
+        if (game.version() == 0) {
+            // written without a version, so the one the store moved it to is not known here
+            evict(game.gameID());
+        } else {
+            cache(copy(game, game.version() + 1));
+        }
+    }
+
+    // keeps whichever copy is newer when two writes to the game finish out of order
+    private synchronized void cache(GameData game) {
+        games.merge(game.gameID(), game, (cached, written) -> written.version() >= cached.version() ? written : cached);
+    }
+
+    private static GameData copy(GameData game, long version) {
+        return new GameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName(),
+                game.game().deepCopy(), version);
+    }
+}
@@ -1,10 +1,15 @@
 package dataaccess;
 
+import chess.ChessMove;
 import model.AuthData;
 import model.GameData;
 import model.UserData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.ShortenedGameData;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 public interface DataAccess {
 
@@ -13,6 +18,16 @@ public interface DataAccess {
 
     void createUser(UserData user) throws DataAccessException;
 
+    /**
+     * Stores many users at once, for seeding and imports. Stores that can do so store them all
+     * or none; by default they are stored one by one.
+     */
+    default void createUsers(List<UserData> users) throws DataAccessException {
+        for (UserData user : users) {
+            createUser(user);
+        }
+    }
+
     UserData getUser(String userID) throws DataAccessException;
 
     boolean userExists(String userID) throws DataAccessException;
@@ -32,10 +47,46 @@ public interface DataAccess {
     void removeAuth(String authData) throws DataAccessException;
 
 
-    void createGame(GameData game) throws DataAccessException;
-
+    /**
+     * Stores a new game. A gameID of 0 or less asks the store to allocate the next free ID.
+     *
+     * @return the ID the game was stored under
+     */
+    int createGame(GameData game) throws DataAccessException;
+
+    /**
+     * Stores many new games at once, as {@link #createGame} would, for tournaments, imports and
+     * seeding. Stores that can do so store them all or none; by default they are stored one by one.
+     *
+     * @return the IDs the games were stored under, in the order the games were given
+     */
+    default List<Integer> createGames(List<GameData> games) throws DataAccessException {
+        List<Integer> gameIDs = new ArrayList<>(games.size());
+        for (GameData game : games) {
+            gameIDs.add(createGame(game));
+        }
+        return gameIDs;
+    }
+
+    /**
+     * Replaces the stored game if it is still at {@code game.version()}, leaving it at the next
+     * version. A game at version 0 was not read from the store and replaces it unconditionally.
+     *
+     * @throws GameConflictException if the game has been written since it was read
+     */
     void updateGame(GameData game) throws DataAccessException;
 
+    /**
+     * Replaces many games at once, each checked against its version as in {@link #updateGame}.
+     * Stores that can do so apply them all or none, so one conflict leaves every game as it was;
+     * by default they are applied one by one.
+     */
+    default void updateGames(List<GameData> games) throws DataAccessException {
+        for (GameData game : games) {
+            updateGame(game);
+        }
+    }
+
     int numGames() throws DataAccessException;
 
     boolean gameIDExists(int gameID) throws DataAccessException;
@@ -44,5 +95,25 @@ public interface DataAccess {
 
     Collection<GameData> listGames() throws DataAccessException;
 
+    /**
+     * Lists games for the lobby without loading their game state, ordered by gameID.
+     * {@code username} is only used when the query asks for the caller's own games. Open games
+     * have a free seat and are not over.
+     */
+    List<ShortenedGameData> listGameSummaries(GameListQuery query, String username) throws DataAccessException;
+
+    /**
+     * Records a single move in the game's move journal. {@code game} is the state after
+     * the move was applied; implementations decide when to also store it as a snapshot.
+     * Each move moves the stored game to its next version. Moves are checked against the
+     * game's ply rather than its version, so seats taken since the game was read are kept.
+     *
+     * @throws GameConflictException if the store already has a move at this ply, because another
+     *                               writer got there first, or the game no longer exists
+     */
+    void appendMove(GameData game, ChessMove move) throws DataAccessException;
+
+    List<ChessMove> getMoves(int gameID) throws DataAccessException;
+
 
 }
@@ -0,0 +1,471 @@
+package dataaccess;
+
+import chess.ChessGameCodec;
+import chess.ChessMove;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * MemoryDataAccess that survives restarts without a database. Every mutation is written to a
+ * write-ahead log in {@code dataDirectory} before the call returns, and once the log grows past
+ * {@link #SNAPSHOT_EVERY} records the whole store is written to a compacted snapshot and the log
+ * is cut down to what came after it. Startup loads the snapshot and replays the log on top of it.
+ * <p>
+ * Each snapshot is numbered. The state is copied under the lock, where a record carrying the
+ * snapshot's number is added to the log, and the copy is written without holding the lock, so
+ * writers keep going meanwhile. Replay skips records logged before the loaded snapshot's number,
+ * which the snapshot already holds, and applies the rest; a crash at any point in between
+ * recovers each change exactly once.
+ * <p>
+ * If the log cannot be written, the change that failed stays in memory but the call throws, and
+ * the store refuses every later change, since it could no longer recover them.
+ */
+public final class DurableMemoryDataAccess extends MemoryDataAccess implements AutoCloseable {
+
+    static final int SNAPSHOT_EVERY = 100_000;
+
+    private static final int SNAPSHOT_MAGIC = 0x43485353;
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final byte CLEARED = 1;
+    private static final byte USER_CREATED = 2;
+    private static final byte AUTH_ADDED = 3;
+    private static final byte AUTH_REMOVED = 4;
+    private static final byte GAME_STORED = 5;
+    private static final byte MOVE_APPENDED = 6;
+    private static final byte LOG_STARTED = 7;
+
+    private final Path snapshotPath;
+    private final WriteAheadLog log;
+
+    // the snapshot loaded or last written, and the number of the last LOG_STARTED record in the log
+    private long snapshotEpoch;
+    private long logEpoch;
+
+    // set while recovering when a user was stored before passwords were hashed
+    private boolean plainPasswordsFound;
+
+    // keeps the order records reach the log identical to the order they were applied in memory
+    private final ReentrantLock mutationLock = new ReentrantLock();
+
+    // one snapshot at a time
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    public DurableMemoryDataAccess(Path dataDirectory, boolean syncOnCommit) throws DataAccessException {
+        this(dataDirectory, syncOnCommit, PasswordHasher.standard());
+    }
+
+    public DurableMemoryDataAccess(Path dataDirectory, boolean syncOnCommit, PasswordHasher passwordHasher) throws DataAccessException {
+        super(passwordHasher);
+        snapshotPath = dataDirectory.resolve("snapshot.dat");
+        try {
+            Files.createDirectories(dataDirectory);
+            loadSnapshot();
+            log = new WriteAheadLog(dataDirectory.resolve("wal.log"), syncOnCommit);
+            log.replay(this::applyRecord);
+            if (plainPasswordsFound) {
+                // rewrites the files without them
+                snapshot();
+            } else if (logEpoch < snapshotEpoch) {
+                // left over from before the loaded snapshot, so records added to it now would be skipped too
+                log.reset(logStartedRecord(snapshotEpoch));
+                logEpoch = snapshotEpoch;
+            }
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to recover data from " + dataDirectory, e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        loggedUnchecked(() -> {
+            super.clear();
+            return null;
+        }, ignored -> record(CLEARED, out -> { }));
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        // hashed before taking the lock, which every other write would otherwise wait behind
+        UserData stored = withHashedPassword(user);
+        logged(() -> {
+            storeUser(stored);
+            return stored;
+        }, DurableMemoryDataAccess::userRecord);
+    }
+
+    @Override
+    public void addAuth(AuthData authData) {
+        loggedUnchecked(() -> {
+            super.addAuth(authData);
+            return authData;
+        }, DurableMemoryDataAccess::authRecord);
+    }
+
+    @Override
+    public void removeAuth(String authData) {
+        loggedUnchecked(() -> {
+            super.removeAuth(authData);
+            return authData;
+        }, token -> record(AUTH_REMOVED, out -> writeNullable(out, token)));
+    }
+
+    @Override
+    public int createGame(GameData game) throws DataAccessException {
+        return logged(() -> {
+            int gameID = super.createGame(game);
+            return getGame(gameID);
+        }, DurableMemoryDataAccess::gameRecord).gameID();
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        logged(() -> {
+            super.updateGame(game);
+            return game;
+        }, DurableMemoryDataAccess::gameRecord);
+    }
+
+    @Override
+    public void appendMove(GameData game, ChessMove move) throws DataAccessException {
+        logged(() -> {
+            super.appendMove(game, move);
+            return game;
+        }, stored -> moveRecord(stored, move));
+    }
+
+    /**
+     * Writes the current state to a fresh snapshot and drops the log records it holds
+     */
+    void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            writeSnapshot();
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private <T> T logged(Mutation<T> mutation, Function<T, byte[]> toRecord) throws DataAccessException {
+        T result;
+        long sequence;
+        boolean snapshotDue;
+
+        mutationLock.lock();
+        try {
+            log.checkWritable();
+            result = mutation.apply();
+            sequence = log.enqueue(toRecord.apply(result));
+            snapshotDue = log.recordCount() >= SNAPSHOT_EVERY;
+        } catch (IOException e) {
+            throw new DataAccessException("Store no longer accepts changes, its write-ahead log failed", e);
+        } finally {
+            mutationLock.unlock();
+        }
+
+        try {
+            log.awaitDurable(sequence);
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to write to the write-ahead log", e);
+        }
+
+        if (snapshotDue) {
+            snapshotIfDue();
+        }
+        return result;
+    }
+
+    // the change is already durable, so a failed snapshot only leaves the log longer until the next one
+    private void snapshotIfDue() {
+        if (!snapshotLock.tryLock()) {
+            return;
+        }
+        try {
+            if (log.recordCount() >= SNAPSHOT_EVERY) {
+                writeSnapshot();
+            }
+        } catch (IOException e) {
+            System.err.println("Snapshot failed: " + e.getMessage());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        Snapshot copy;
+        long checkpoint;
+        mutationLock.lock();
+        try {
+            long epoch = Math.max(snapshotEpoch, logEpoch) + 1;
+            checkpoint = log.checkpoint(logStartedRecord(epoch));
+            logEpoch = epoch;
+            copy = copyState(epoch);
+        } finally {
+            mutationLock.unlock();
+        }
+
+        Path temporary = snapshotPath.resolveSibling("snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            writeSnapshot(out, copy);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        mutationLock.lock();
+        try {
+            snapshotEpoch = copy.epoch();
+            log.compact(checkpoint);
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    private Snapshot copyState(long epoch) {
+        Collection<GameData> games = listGames();
+        Map<Integer, List<ChessMove>> moves = new HashMap<>();
+        for (GameData game : games) {
+            moves.put(game.gameID(), getMoves(game.gameID()));
+        }
+        return new Snapshot(epoch, allUsers(), allAuthData(), games, moves);
+    }
+
+    // for the operations MemoryDataAccess declares without a checked exception
+    private <T> T loggedUnchecked(Mutation<T> mutation, Function<T, byte[]> toRecord) {
+        try {
+            return logged(mutation, toRecord);
+        } catch (DataAccessException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private void applyRecord(DataInputStream in) throws IOException {
+        try {
+            byte type = in.readByte();
+            if (type == LOG_STARTED) {
+                logEpoch = in.readLong();
+                return;
+            }
+            if (logEpoch < snapshotEpoch) {
+                // written before the snapshot that was loaded, which already holds it
+                return;
+            }
+            switch (type) {
+                case CLEARED -> super.clear();
+                case USER_CREATED -> restoreUser(new UserData(readNullable(in), readNullable(in), readNullable(in)));
+                case AUTH_ADDED -> super.addAuth(new AuthData(readNullable(in), readNullable(in)));
+                case AUTH_REMOVED -> super.removeAuth(readNullable(in));
+                case GAME_STORED -> {
+                    GameData game = readGame(in);
+                    if (gameIDExists(game.gameID())) {
+                        super.updateGame(game);
+                    } else {
+                        super.createGame(game);
+                    }
+                }
+                case MOVE_APPENDED -> {
+                    int gameID = in.readInt();
+                    ChessMove move = ChessMove.decode(in.readShort());
+                    // the seats are kept as stored
+                    restoreMove(new GameData(gameID, null, null, null,
+                            ChessGameCodec.decode(in.readNBytes(ChessGameCodec.ENCODED_LENGTH))), move);
+                }
+                default -> throw new IOException("Unknown write-ahead log record type: " + type);
+            }
+        } catch (DataAccessException e) {
+            throw new IOException("Failed to replay write-ahead log", e);
+        }
+    }
+
+    private void restoreUser(UserData user) throws DataAccessException {
+        String password = user.password();
+        if (password != null && (password.length() != 60 || !password.startsWith("$2"))) {
+            // written before passwords were hashed
+            storeUser(withHashedPassword(user));
+            plainPasswordsFound = true;
+        } else {
+            storeUser(user);
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath), 1 << 16))) {
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != SNAPSHOT_MAGIC || version < 1 || version > SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognized snapshot file " + snapshotPath);
+            }
+            // snapshots from before they were numbered are followed by a log without a LOG_STARTED record
+            snapshotEpoch = version > 1 ? in.readLong() : 0;
+
+            int users = in.readInt();
+            for (int i = 0; i < users; i++) {
+                restoreUser(new UserData(readNullable(in), readNullable(in), readNullable(in)));
+            }
+
+            int authTokens = in.readInt();
+            for (int i = 0; i < authTokens; i++) {
+                super.addAuth(new AuthData(readNullable(in), readNullable(in)));
+            }
+
+            int games = in.readInt();
+            for (int i = 0; i < games; i++) {
+                GameData game = readGame(in);
+                super.createGame(game);
+                int moves = in.readInt();
+                for (int j = 0; j < moves; j++) {
+                    restoreMove(game, ChessMove.decode(in.readShort()));
+                }
+            }
+        } catch (DataAccessException e) {
+            throw new IOException("Failed to load snapshot " + snapshotPath, e);
+        }
+    }
+
+    private static void writeSnapshot(DataOutputStream out, Snapshot snapshot) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(snapshot.epoch());
+
+        out.writeInt(snapshot.users().size());
+        for (UserData user : snapshot.users()) {
+            writeUser(out, user);
+        }
+
+        out.writeInt(snapshot.authTokens().size());
+        for (AuthData authData : snapshot.authTokens()) {
+            writeAuth(out, authData);
+        }
+
+        out.writeInt(snapshot.games().size());
+        for (GameData game : snapshot.games()) {
+            writeGame(out, game);
+            List<ChessMove> moves = snapshot.moves().get(game.gameID());
+            out.writeInt(moves.size());
+            for (ChessMove move : moves) {
+                out.writeShort(move.encode());
+            }
+        }
+    }
+
+    private static byte[] logStartedRecord(long epoch) {
+        return record(LOG_STARTED, out -> out.writeLong(epoch));
+    }
+
+    static byte[] userRecord(UserData user) {
+        return record(USER_CREATED, out -> writeUser(out, user));
+    }
+
+    static byte[] authRecord(AuthData authData) {
+        return record(AUTH_ADDED, out -> writeAuth(out, authData));
+    }
+
+    static byte[] gameRecord(GameData game) {
+        return record(GAME_STORED, out -> writeGame(out, game));
+    }
+
+    static byte[] moveRecord(GameData game, ChessMove move) {
+        return record(MOVE_APPENDED, out -> {
+            out.writeInt(game.gameID());
+            out.writeShort(move.encode());
+            out.write(ChessGameCodec.encode(game.game()));
+        });
+    }
+
+    private static byte[] record(byte type, RecordBody body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(type);
+            body.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeUser(DataOutputStream out, UserData user) throws IOException {
+        writeNullable(out, user.username());
+        writeNullable(out, user.email());
+        writeNullable(out, user.password());
+    }
+
+    private static void writeAuth(DataOutputStream out, AuthData authData) throws IOException {
+        writeNullable(out, authData.username());
+        writeNullable(out, authData.authToken());
+    }
+
+    private static void writeGame(DataOutputStream out, GameData game) throws IOException {
+        out.writeInt(game.gameID());
+        writeNullable(out, game.whiteUsername());
+        writeNullable(out, game.blackUsername());
+        writeNullable(out, game.gameName());
+        out.write(ChessGameCodec.encode(game.game()));
+    }
+
+    private static GameData readGame(DataInputStream in) throws IOException {
+        int gameID = in.readInt();
+        String white = readNullable(in);
+        String black = readNullable(in);
+        String name = readNullable(in);
+        return new GameData(gameID, white, black, name, ChessGameCodec.decode(in.readNBytes(ChessGameCodec.ENCODED_LENGTH)));
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // the store as it was when a snapshot was started
+    private record Snapshot(long epoch, Collection<UserData> users, Collection<AuthData> authTokens,
+                            Collection<GameData> games, Map<Integer, List<ChessMove>> moves) {
+    }
+
+    @FunctionalInterface
+    private interface Mutation<T> {
+        T apply() throws DataAccessException;
+    }
+
+    @FunctionalInterface
+    private interface RecordBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
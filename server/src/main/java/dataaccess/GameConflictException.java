@@ -0,0 +1,10 @@
+package dataaccess;
+
+/**
+ * A game update was based on a version of the game that has since been replaced
+ */
+public class GameConflictException extends DataAccessException {
+    public GameConflictException(int gameID) {
+        super("Error: game " + gameID + " changed since it was read, try again");
+    }
+}
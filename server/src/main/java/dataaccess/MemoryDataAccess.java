@@ -1,24 +1,49 @@
 package dataaccess;
 
+import chess.ChessMove;
 import model.AuthData;
 import model.GameData;
 import model.UserData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.ShortenedGameData;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * In-memory store that is safe to share between Jetty's handler threads. Single record reads
+ * and writes go straight to concurrent maps; changes that touch a game and its move journal
+ * together hold one of a fixed set of striped locks chosen by gameID. Games are copied on the
+ * way in and out, so callers never share the stored ChessGame. Passwords are kept as BCrypt
+ * hashes, as SqlDataAccess keeps them.
+ */
 public class MemoryDataAccess implements DataAccess {
 
-    private HashMap<String, UserData> userDB;
-    private HashMap<String, AuthData> authDB;
-    private HashMap<String, GameData> gameDB;
+    private static final int LOCK_STRIPES = 64;
+
+    private final ConcurrentHashMap<String, UserData> userDB = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AuthData> authDB = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, GameData> gameDB = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, List<ChessMove>> moveDB = new ConcurrentHashMap<>();
+    private final AtomicInteger lastGameID = new AtomicInteger();
+    private final ReentrantLock[] gameLocks = new ReentrantLock[LOCK_STRIPES];
+    private final PasswordHasher passwordHasher;
 
     public MemoryDataAccess() {
-        userDB = new HashMap<>();
-        authDB = new HashMap<>();
-        gameDB = new HashMap<>();
+        this(PasswordHasher.standard());
+    }
+
+    public MemoryDataAccess(PasswordHasher passwordHasher) {
+        this.passwordHasher = passwordHasher;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            gameLocks[i] = new ReentrantLock();
+        }
     }
 
     @Override
@@ -26,11 +51,29 @@ public class MemoryDataAccess implements DataAccess {
         userDB.clear();
         authDB.clear();
         gameDB.clear();
+        moveDB.clear();
+        lastGameID.set(0);
     }
 
     @Override
-    public void createUser(UserData user) {
-        userDB.put(user.username(), user);
+    public void createUser(UserData user) throws DataAccessException {
+        storeUser(withHashedPassword(user));
+    }
+
+    /**
+     * The user as it is stored, with the password replaced by its hash
+     */
+    UserData withHashedPassword(UserData user) throws DataAccessException {
+        return new UserData(user.username(), user.email(), passwordHasher.hash(user.password()));
+    }
+
+    /**
+     * Adds a user whose password is already hashed
+     */
+    void storeUser(UserData user) throws DataAccessException {
+        if (userDB.putIfAbsent(user.username(), user) != null) {
+            throw new DataAccessException("Failed to create user:" + user.username());
+        }
     }
 
     @Override
@@ -39,8 +82,9 @@ public class MemoryDataAccess implements DataAccess {
     }
 
     @Override
-    public boolean validatePassword(UserData user) {
-        return Objects.equals(user.password(), userDB.get(user.username()).password());
+    public boolean validatePassword(UserData user) throws DataAccessException {
+        UserData storedUser = userDB.get(user.username());
+        return storedUser != null && user.password() != null && passwordHasher.verify(user.password(), storedUser.password());
     }
 
     @Override
@@ -55,15 +99,13 @@ public class MemoryDataAccess implements DataAccess {
 
     @Override
     public boolean validateUserHasAuthdata(AuthData authData) {
-        if (authDB.get(authData.authToken()) == null) {
-            return false;
-        }
-        return (Objects.equals(authDB.get(authData.authToken()).username(), authData.username()));
+        AuthData storedAuth = authDB.get(authData.authToken());
+        return storedAuth != null && Objects.equals(storedAuth.username(), authData.username());
     }
 
     @Override
     public AuthData getAuthdataFromAuthtoken(String authToken) {
-        return authDB.get(authToken);
+        return authToken == null ? null : authDB.get(authToken);
     }
 
     @Override
@@ -74,23 +116,48 @@ public class MemoryDataAccess implements DataAccess {
 
     @Override
     public boolean authTokenExists(String authToken) {
-        return authDB.containsKey(authToken);
+        return authToken != null && authDB.containsKey(authToken);
     }
 
     @Override
     public void removeAuth(String authData) {
-        authDB.remove(authData);
+        if (authData != null) {
+            authDB.remove(authData);
+        }
     }
 
     @Override
-    public void createGame(GameData game) {
-        gameDB.put(String.valueOf(game.gameID()), game);
+    public int createGame(GameData game) throws DataAccessException {
+        int gameID = game.gameID();
+        if (gameID > 0) {
+            lastGameID.accumulateAndGet(gameID, Math::max);
+            if (gameDB.putIfAbsent(gameID, copy(game, gameID, 1)) != null) {
+                throw new DataAccessException("Failed to create game: " + gameID + " is already taken");
+            }
+            return gameID;
+        }
+
+        // an ID given explicitly by another caller can land on the one just allocated
+        do {
+            gameID = lastGameID.incrementAndGet();
+        } while (gameDB.putIfAbsent(gameID, copy(game, gameID, 1)) != null);
+        return gameID;
     }
 
     @Override
-    public void updateGame(GameData game) {
-        gameDB.remove(String.valueOf(game.gameID()));
-        gameDB.put(String.valueOf(game.gameID()), game);
+    public void updateGame(GameData game) throws DataAccessException {
+        ReentrantLock lock = lockFor(game.gameID());
+        lock.lock();
+        try {
+            GameData stored = gameDB.get(game.gameID());
+            long version = stored != null ? stored.version() : 0;
+            if (game.version() != 0 && game.version() != version) {
+                throw new GameConflictException(game.gameID());
+            }
+            gameDB.put(game.gameID(), copy(game, game.gameID(), version + 1));
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -100,22 +167,108 @@ public class MemoryDataAccess implements DataAccess {
 
     @Override
     public boolean gameIDExists(int gameID) {
-        return gameDB.containsKey(String.valueOf(gameID));
+        return gameDB.containsKey(gameID);
     }
 
     @Override
     public GameData getGame(int gameID) {
-        return gameDB.get(String.valueOf(gameID));
+        GameData game = gameDB.get(gameID);
+        return game == null ? null : copy(game, gameID, game.version());
     }
 
     @Override
     public Collection<GameData> listGames() {
-        if (gameDB.values() != null) {
-            return gameDB.values();
+        List<GameData> games = new ArrayList<>(gameDB.size());
+        for (GameData game : gameDB.values()) {
+            games.add(copy(game, game.gameID(), game.version()));
+        }
+        return games;
+    }
 
-        } else {
-            return Collections.emptyList();
+    @Override
+    public List<ShortenedGameData> listGameSummaries(GameListQuery query, String username) {
+        var games = gameDB.values().stream()
+                .filter(game -> game.gameID() > query.afterGameID())
+                .filter(game -> !query.mineOnly()
+                        || Objects.equals(game.whiteUsername(), username)
+                        || Objects.equals(game.blackUsername(), username))
+                .filter(game -> !query.openSeatsOnly() || isOpen(game))
+                .sorted(Comparator.comparingInt(GameData::gameID));
+
+        if (query.limit() > 0) {
+            games = games.limit(query.limit());
         }
+
+        return games.map(game -> new ShortenedGameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName()))
+                .toList();
+    }
+
+    @Override
+    public void appendMove(GameData game, ChessMove move) throws DataAccessException {
+        journal(game, move, true);
+    }
+
+    /**
+     * Journals a move the store already accepted once, as when loading it again from disk
+     */
+    void restoreMove(GameData game, ChessMove move) throws DataAccessException {
+        journal(game, move, false);
+    }
+
+    private void journal(GameData game, ChessMove move, boolean checkPly) throws DataAccessException {
+        ReentrantLock lock = lockFor(game.gameID());
+        lock.lock();
+        try {
+            GameData stored = gameDB.get(game.gameID());
+            if (stored == null) {
+                throw new GameConflictException(game.gameID());
+            }
+            // another writer already stored a move at this ply
+            if (checkPly && stored.game().getPly() != game.game().getPly() - 1) {
+                throw new GameConflictException(game.gameID());
+            }
+            moveDB.computeIfAbsent(game.gameID(), k -> new ArrayList<>()).add(move);
+            // a move only changes the board, the seats stay as stored in case they changed since the game was read
+            GameData moved = new GameData(game.gameID(), stored.whiteUsername(), stored.blackUsername(), stored.gameName(), game.game());
+            gameDB.put(game.gameID(), copy(moved, game.gameID(), stored.version() + 1));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<ChessMove> getMoves(int gameID) {
+        ReentrantLock lock = lockFor(gameID);
+        lock.lock();
+        try {
+            return new ArrayList<>(moveDB.getOrDefault(gameID, List.of()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Collection<UserData> allUsers() {
+        return new ArrayList<>(userDB.values());
+    }
+
+    Collection<AuthData> allAuthData() {
+        return new ArrayList<>(authDB.values());
+    }
+
+    // a seat is free and the game is still being played, as SqlDataAccess's open status
+    private static boolean isOpen(GameData game) {
+        return (game.whiteUsername() == null || game.blackUsername() == null)
+                && (game.game() == null || !game.game().isGameOver());
+    }
+
+    // ChessGame is mutable, so games are copied going in and coming out and no caller shares the stored one
+    private static GameData copy(GameData game, int gameID, long version) {
+        return new GameData(gameID, game.whiteUsername(), game.blackUsername(), game.gameName(),
+                game.game() == null ? null : game.game().deepCopy(), version);
+    }
+
+    private ReentrantLock lockFor(int gameID) {
+        return gameLocks[Math.floorMod(gameID, LOCK_STRIPES)];
     }
 
 }
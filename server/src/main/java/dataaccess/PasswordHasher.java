@@ -0,0 +1,109 @@
+package dataaccess;
+
+import exceptions.ServiceUnavailableException;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes and checks BCrypt passwords on a small pool of its own instead of on request threads.
+ * BCrypt is slow on purpose, so a burst of logins hashing on request threads would take every
+ * core and leave nothing for cheap requests. Here at most one hash per thread runs at once and a
+ * bounded number wait their turn; past that callers are turned away with a
+ * ServiceUnavailableException rather than joining a queue that only grows.
+ */
+public class PasswordHasher implements AutoCloseable {
+
+    private static PasswordHasher standard;
+
+    private final ThreadPoolExecutor executor;
+    private final int cost;
+
+    /**
+     * @param threads       hashes that can run at once
+     * @param queueCapacity hashes that can wait for a thread
+     * @param cost          BCrypt log2 rounds for new hashes, 4 to 31
+     */
+    public PasswordHasher(int threads, int queueCapacity, int cost) {
+        if (cost < 4 || cost > 31) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 31: " + cost);
+        }
+        this.cost = cost;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().daemon().name("password-hasher-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * The hasher shared by every store, sized from chess.bcrypt.threads (default one
+     * per core), chess.bcrypt.queue (default 16 per thread) and chess.bcrypt.cost (default 10)
+     */
+    public static synchronized PasswordHasher standard() {
+        if (standard == null) {
+            int threads = Integer.getInteger("chess.bcrypt.threads", Runtime.getRuntime().availableProcessors());
+            standard = new PasswordHasher(threads, Integer.getInteger("chess.bcrypt.queue", 16 * threads),
+                    Integer.getInteger("chess.bcrypt.cost", 10));
+        }
+        return standard;
+    }
+
+    public int cost() {
+        return cost;
+    }
+
+    public String hash(String password) throws DataAccessException {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    public boolean verify(String password, String hash) throws DataAccessException {
+        return run(() -> BCrypt.checkpw(password, hash));
+    }
+
+    /**
+     * Whether a stored hash was made at a different cost than new ones are, so it should be
+     * replaced the next time the password is known
+     */
+    public boolean needsRehash(String hash) {
+        // $2a$10$... : the cost is the two digits after the second '$'
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') {
+            return true;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6)) != cost;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private <T> T run(Callable<T> task) throws DataAccessException {
+        try {
+            return executor.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException("Error: server busy, try again", retryAfter());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Error: interrupted waiting for password check", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("Error: password check failed", e.getCause());
+        }
+    }
+
+    // roughly how long the waiting hashes take to clear, at least a second
+    private Duration retryAfter() {
+        long perHashMillis = 1L << Math.max(0, cost - 4);
+        long queuedMillis = perHashMillis * (executor.getQueue().size() + 1) / executor.getMaximumPoolSize();
+        return Duration.ofSeconds(Math.max(1, (queuedMillis + 999) / 1000));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -1,19 +1,38 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessGameCodec;
+import chess.ChessMove;
+import chess.InvalidMoveException;
+import exceptions.ServiceUnavailableException;
 import model.AuthData;
 import model.GameData;
 import model.UserData;
-import org.mindrot.jbcrypt.BCrypt;
-
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.ShortenedGameData;
 import com.google.gson.Gson;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.sql.*;
 
 public class SqlDataAccess implements DataAccess {
 
+    // a full copy of the game is only written to games.gameState every SNAPSHOT_INTERVAL plies,
+    // the moves in between live in game_moves and are replayed on top of the snapshot when read
+    private static final int SNAPSHOT_INTERVAL = 20;
+
+    // rows sent per executeBatch by the bulk methods, which the driver rewrites into multi-row statements
+    private static final int BATCH_SIZE = 1000;
+
+    // games.status, kept in step with the seats and the board by every write so the lobby filters on an index
+    private static final int STATUS_OPEN = 0;
+    private static final int STATUS_FULL = 1;
+    private static final int STATUS_FINISHED = 2;
+
+    // the tables as first created, later changes to them are in migrations
     private final String[] createStatements = {
             """
             CREATE TABLE IF NOT EXISTS users (
@@ -40,18 +59,69 @@ public class SqlDataAccess implements DataAccess {
                 gameName VARCHAR(255) NOT NULL,
                 gameState LONGTEXT NOT NULL
             )
+            """,
+
+            """
+            CREATE TABLE IF NOT EXISTS game_moves (
+                gameID INT NOT NULL,
+                ply INT NOT NULL,
+                move SMALLINT NOT NULL,
+                PRIMARY KEY (gameID, ply)
+            )
+            """,
+
+            """
+            CREATE TABLE IF NOT EXISTS schema_version (
+                version INT PRIMARY KEY,
+                description VARCHAR(255) NOT NULL,
+                applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+            )
             """
     };
 
+    /**
+     * Every change made to the tables since createStatements, in the order it was made. Each runs
+     * once per database and is recorded in schema_version when it finishes. MySQL commits DDL as it
+     * goes, so a migration can be done but not recorded; each checks for its change first so that
+     * running it again is harmless.
+     */
+    private final List<Migration> migrations = List.of(
+            new Migration(1, "store gameState as a blob", this::migrateGameStateColumn),
+            new Migration(2, "version games", this::addVersionColumn),
+            new Migration(3, "index authdata by username", createIndex("authdata", "authdata_username", "username")),
+            new Migration(4, "index games by white player", createIndex("games", "games_white", "whiteUsername")),
+            new Migration(5, "index games by black player", createIndex("games", "games_black", "blackUsername")),
+            new Migration(6, "fixed-width auth tokens", this::narrowAuthTokens),
+            new Migration(7, "add game status", this::addStatusColumn),
+            new Migration(8, "set status of existing games", this::classifyGames));
+
+    private final PasswordHasher passwordHasher;
+
     public SqlDataAccess() {
+        this(PasswordHasher.standard());
+    }
+
+    public SqlDataAccess(PasswordHasher passwordHasher) {
+        this.passwordHasher = passwordHasher;
         configureDatabase();
     }
 
+    /**
+     * Empties every table over one connection, in one batch
+     */
     @Override
     public void clear() throws DataAccessException {
-        clearUsers();
-        clearGames();
-        clearAuthdata();
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            for (String table : new String[]{"users", "games", "authdata", "game_moves"}) {
+                stmt.addBatch("TRUNCATE TABLE " + table);
+            }
+            stmt.executeBatch();
+
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to clear the database", e);
+        }
     }
 
     public void clearUsers() throws DataAccessException {
@@ -96,6 +166,20 @@ public class SqlDataAccess implements DataAccess {
 
     }
 
+    public void clearMoves() throws DataAccessException {
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            String sql = "TRUNCATE TABLE game_moves";
+
+            stmt.executeUpdate(sql);
+
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to trunccate game_moves", e);
+        }
+
+    }
+
     @Override
     public void createUser(UserData user) throws DataAccessException {
         String passwordHash = hashPassword(user.password());
@@ -110,15 +194,34 @@ public class SqlDataAccess implements DataAccess {
             pstmt.setString(2, user.email());
             pstmt.setString(3, passwordHash);
 
-            int rowsAffected = pstmt.executeUpdate();
-
-            System.out.println("User added successfully. Rows affected: " + rowsAffected);
+            pstmt.executeUpdate();
 
         } catch (SQLException e) {
             throw new DataAccessException("Failed to create user:" + user.username(), e);
         }
     }
 
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        List<String> passwordHashes = new ArrayList<>(users.size());
+        for (UserData user : users) {
+            passwordHashes.add(hashPassword(user.password()));
+        }
+
+        String sql = "INSERT INTO users (username, email, password_hash) VALUES (?,?,?)";
+
+        inTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < users.size(); i++) {
+                    pstmt.setString(1, users.get(i).username());
+                    pstmt.setString(2, users.get(i).email());
+                    pstmt.setString(3, passwordHashes.get(i));
+                    addToBatch(pstmt, i, users.size());
+                }
+            }
+        }, "Failed to create " + users.size() + " users");
+    }
+
     @Override
     public UserData getUser(String userID) throws DataAccessException {
 
@@ -182,6 +285,7 @@ public class SqlDataAccess implements DataAccess {
                     String passwordHash = rs.getString("password_hash");
 
                     if (verifyHash(passwordHash, user.password())) {
+                        rehashIfOutdated(conn, user, passwordHash);
                         return true;
                     }
 
@@ -319,49 +423,165 @@ public class SqlDataAccess implements DataAccess {
     }
 
     @Override
-    public void createGame(GameData game) throws DataAccessException {
-        Gson gson = new Gson();
-        String sql = "INSERT INTO games (gameID, whiteUsername, blackUsername, gameName, gameState) VALUES (?,?,?,?,?)";
+    public int createGame(GameData game) throws DataAccessException {
+        String sql = "INSERT INTO games (gameID, whiteUsername, blackUsername, gameName, gameState, status) VALUES (?,?,?,?,?,?)";
 
         try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
-            pstmt.setInt(1, game.gameID());
-            pstmt.setString(2, game.whiteUsername());
-            pstmt.setString(3, game.blackUsername());
-            pstmt.setString(4, game.gameName());
-            pstmt.setString(5, gson.toJson(game.game()));
+            setGameRow(pstmt, game);
 
-            int rowsAffected = pstmt.executeUpdate();
+            pstmt.executeUpdate();
 
-            System.out.println("Game added successfully. Rows affected: " + rowsAffected);
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+            }
+            return game.gameID();
 
         } catch (SQLException e) {
             throw new DataAccessException("Failed to create game:" + game.gameName(), e);
         }
     }
 
+    /**
+     * Games with an ID of their own are inserted first, then the rest in order, so the IDs
+     * MySQL generates for them come back as one consecutive run
+     */
     @Override
-    public void updateGame(GameData game) throws DataAccessException {
-        String sql = "UPDATE games SET whiteUsername = ?, blackUsername = ? ,gameName = ? ,gameState = ? WHERE gameID = ?";
+    public List<Integer> createGames(List<GameData> games) throws DataAccessException {
+        String sql = "INSERT INTO games (gameID, whiteUsername, blackUsername, gameName, gameState, status) VALUES (?,?,?,?,?,?)";
+        List<Integer> gameIDs = new ArrayList<>(games.size());
+        List<GameData> numbered = new ArrayList<>();
+        List<GameData> unnumbered = new ArrayList<>();
+        for (GameData game : games) {
+            (game.gameID() > 0 ? numbered : unnumbered).add(game);
+        }
 
-        Gson gson = new Gson();
+        inTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < numbered.size(); i++) {
+                    setGameRow(pstmt, numbered.get(i));
+                    addToBatch(pstmt, i, numbered.size());
+                }
+            }
 
+            List<Integer> generated = new ArrayList<>(unnumbered.size());
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < unnumbered.size(); i++) {
+                    setGameRow(pstmt, unnumbered.get(i));
+                    pstmt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0 || i + 1 == unnumbered.size()) {
+                        pstmt.executeBatch();
+                        try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                            while (keys.next()) {
+                                generated.add(keys.getInt(1));
+                            }
+                        }
+                    }
+                }
+            }
+
+            int next = 0;
+            for (GameData game : games) {
+                gameIDs.add(game.gameID() > 0 ? game.gameID() : generated.get(next++));
+            }
+        }, "Failed to create " + games.size() + " games");
+
+        return gameIDs;
+    }
+
+    private static void setGameRow(PreparedStatement pstmt, GameData game) throws SQLException {
+        // a NULL gameID lets AUTO_INCREMENT hand out the next ID
+        if (game.gameID() > 0) {
+            pstmt.setInt(1, game.gameID());
+        } else {
+            pstmt.setNull(1, Types.INTEGER);
+        }
+        pstmt.setString(2, game.whiteUsername());
+        pstmt.setString(3, game.blackUsername());
+        pstmt.setString(4, game.gameName());
+        pstmt.setBytes(5, ChessGameCodec.encode(game.game()));
+        pstmt.setInt(6, statusOf(game));
+    }
+
+    private static int statusOf(GameData game) {
+        if (game.game() != null && game.game().isGameOver()) {
+            return STATUS_FINISHED;
+        }
+        return game.whiteUsername() == null || game.blackUsername() == null ? STATUS_OPEN : STATUS_FULL;
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        String sql = "UPDATE games SET whiteUsername = ?, blackUsername = ? ,gameName = ? ,gameState = ?, status = ?, version = version + 1 WHERE gameID = ?";
+        boolean versioned = game.version() != 0;
+        if (versioned) {
+            sql += " AND version = ?";
+        }
+
+        int rowsAffected;
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, game.whiteUsername());
             pstmt.setString(2, game.blackUsername());
             pstmt.setString(3, game.gameName());
-            pstmt.setString(4, gson.toJson(game.game()));
+            pstmt.setBytes(4, ChessGameCodec.encode(game.game()));
+            pstmt.setInt(5, statusOf(game));
 
-            pstmt.setInt(5, game.gameID());
+            pstmt.setInt(6, game.gameID());
+            if (versioned) {
+                pstmt.setLong(7, game.version());
+            }
 
-            pstmt.executeUpdate();
+            rowsAffected = pstmt.executeUpdate();
 
         } catch (SQLException e) {
             throw new DataAccessException("Failed to update game:" + game.gameName(), e);
         }
+
+        if (versioned && rowsAffected == 0) {
+            throw new GameConflictException(game.gameID());
+        }
+    }
+
+    /**
+     * Applies every update in one transaction, rolled back whole if any game has moved past the
+     * version it was read at
+     */
+    @Override
+    public void updateGames(List<GameData> games) throws DataAccessException {
+        String sql = """
+                UPDATE games SET whiteUsername = ?, blackUsername = ?, gameName = ?, gameState = ?, status = ?, version = version + 1
+                WHERE gameID = ? AND (? = 0 OR version = ?)
+                """;
+
+        inTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int start = 0; start < games.size(); start += BATCH_SIZE) {
+                    List<GameData> batch = games.subList(start, Math.min(start + BATCH_SIZE, games.size()));
+                    for (GameData game : batch) {
+                        pstmt.setString(1, game.whiteUsername());
+                        pstmt.setString(2, game.blackUsername());
+                        pstmt.setString(3, game.gameName());
+                        pstmt.setBytes(4, ChessGameCodec.encode(game.game()));
+                        pstmt.setInt(5, statusOf(game));
+                        pstmt.setInt(6, game.gameID());
+                        pstmt.setLong(7, game.version());
+                        pstmt.setLong(8, game.version());
+                        pstmt.addBatch();
+                    }
+                    int[] rowsAffected = pstmt.executeBatch();
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (batch.get(i).version() != 0 && rowsAffected[i] == 0) {
+                            throw new GameConflictException(batch.get(i).gameID());
+                        }
+                    }
+                }
+            }
+        }, "Failed to update " + games.size() + " games");
     }
 
     @Override
@@ -406,8 +626,7 @@ public class SqlDataAccess implements DataAccess {
     @Override
     public GameData getGame(int gameID) throws DataAccessException {
 
-        String sql = "SELECT gameID, whiteUsername , blackUsername,gameName,gameState FROM games WHERE gameID = ?";
-        Gson gson = new Gson();
+        String sql = "SELECT gameID, whiteUsername , blackUsername,gameName,gameState,version FROM games WHERE gameID = ?";
 
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -420,11 +639,14 @@ public class SqlDataAccess implements DataAccess {
                     String white = rs.getString("whiteUsername");
                     String black = rs.getString("blackUsername");
                     String name = rs.getString("gameName");
-                    String gameJson = rs.getString("gameState");
+                    byte[] gameState = rs.getBytes("gameState");
 
-                    ChessGame game = gson.fromJson(gameJson, ChessGame.class);
+                    long version = rs.getLong("version");
 
-                    return new GameData(dbGameID, white, black, name, game);
+                    ChessGame game = readGameState(conn, dbGameID, gameState);
+                    replayJournal(conn, dbGameID, game);
+
+                    return new GameData(dbGameID, white, black, name, game, version);
                 }
             }
 
@@ -438,8 +660,7 @@ public class SqlDataAccess implements DataAccess {
     @Override
     public Collection<GameData> listGames() throws DataAccessException {
 
-        String sql = "SELECT gameID, whiteUsername , blackUsername,gameName,gameState FROM games";
-        Gson gson = new Gson();
+        String sql = "SELECT gameID, whiteUsername , blackUsername,gameName,gameState,version FROM games";
         Collection<GameData> gameList = new ArrayList<>();
 
         try (Connection conn = DatabaseManager.getConnection();
@@ -452,14 +673,19 @@ public class SqlDataAccess implements DataAccess {
                     String white = rs.getString("whiteUsername");
                     String black = rs.getString("blackUsername");
                     String name = rs.getString("gameName");
-                    String gameJson = rs.getString("gameState");
+                    byte[] gameState = rs.getBytes("gameState");
+                    long version = rs.getLong("version");
 
-                    ChessGame game = gson.fromJson(gameJson, ChessGame.class);
+                    ChessGame game = readGameState(conn, dbGameID, gameState);
 
-                    gameList.add(new GameData(dbGameID, white, black, name, game));
+                    gameList.add(new GameData(dbGameID, white, black, name, game, version));
                 }
             }
 
+            for (GameData game : gameList) {
+                replayJournal(conn, game.gameID(), game.game());
+            }
+
             return gameList;
         } catch (SQLException e) {
             throw new DataAccessException("Failed to list Games:", e);
@@ -467,12 +693,237 @@ public class SqlDataAccess implements DataAccess {
 
     }
 
-    private String hashPassword(String password) {
-        return BCrypt.hashpw(password, BCrypt.gensalt());
+    /**
+     * Each page is read in gameID order from an index: games_status for open games, and for the
+     * player's own games games_white and games_black read separately and merged, since an OR across
+     * the two columns can use neither index in order
+     */
+    @Override
+    public List<ShortenedGameData> listGameSummaries(GameListQuery query, String username) throws DataAccessException {
+
+        String sql;
+        if (query.mineOnly()) {
+            sql = "(" + summariesSql(query, "whiteUsername = ? AND ") + ") UNION ("
+                    + summariesSql(query, "blackUsername = ? AND ") + ") ORDER BY gameID"
+                    + (query.limit() > 0 ? " LIMIT ?" : "");
+        } else {
+            sql = summariesSql(query, "");
+        }
+
+        List<ShortenedGameData> gameList = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (int seat = 0; seat < (query.mineOnly() ? 2 : 1); seat++) {
+                if (query.mineOnly()) {
+                    pstmt.setString(index++, username);
+                }
+                pstmt.setInt(index++, query.afterGameID());
+                if (query.limit() > 0) {
+                    pstmt.setInt(index++, query.limit());
+                }
+            }
+            if (query.mineOnly() && query.limit() > 0) {
+                pstmt.setInt(index, query.limit());
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    gameList.add(new ShortenedGameData(rs.getInt("gameID"), rs.getString("whiteUsername"),
+                            rs.getString("blackUsername"), rs.getString("gameName")));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to list Games:", e);
+        }
+
+        return gameList;
     }
 
-    private boolean verifyHash(String hashedPassword, String clearTextPassword) {
-        return BCrypt.checkpw(clearTextPassword, hashedPassword);
+    private static String summariesSql(GameListQuery query, String seatFilter) {
+        return "SELECT gameID, whiteUsername, blackUsername, gameName FROM games WHERE " + seatFilter + "gameID > ?"
+                + (query.openSeatsOnly() ? " AND status = " + STATUS_OPEN : "")
+                + " ORDER BY gameID"
+                + (query.limit() > 0 ? " LIMIT ?" : "");
+    }
+
+    /**
+     * Journals the move and moves the game to its next version in one transaction. The snapshot
+     * written every SNAPSHOT_INTERVAL plies only replaces gameState, so seats taken over HTTP
+     * since the game was read are kept. A move at a ply already journaled collides on the
+     * game_moves primary key, which is how a second writer shows up.
+     */
+    @Override
+    public void appendMove(GameData game, ChessMove move) throws DataAccessException {
+        String insertSql = "INSERT INTO game_moves (gameID, ply, move) VALUES (?,?,?)";
+        int ply = game.game().getPly();
+        boolean snapshot = ply % SNAPSHOT_INTERVAL == 0 || game.game().isGameOver();
+        String versionSql;
+        if (game.game().isGameOver()) {
+            // a move leaves the seats as they are, so the status only changes when it ends the game
+            versionSql = "UPDATE games SET gameState = ?, status = " + STATUS_FINISHED + ", version = version + 1 WHERE gameID = ?";
+        } else if (snapshot) {
+            versionSql = "UPDATE games SET gameState = ?, version = version + 1 WHERE gameID = ?";
+        } else {
+            versionSql = "UPDATE games SET version = version + 1 WHERE gameID = ?";
+        }
+
+        inTransaction(conn -> {
+            try (PreparedStatement insert = conn.prepareStatement(insertSql);
+                 PreparedStatement bump = conn.prepareStatement(versionSql)) {
+
+                insert.setInt(1, game.gameID());
+                insert.setInt(2, ply);
+                insert.setShort(3, (short) move.encode());
+                try {
+                    insert.executeUpdate();
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    throw new GameConflictException(game.gameID());
+                }
+
+                int index = 1;
+                if (snapshot) {
+                    bump.setBytes(index++, ChessGameCodec.encode(game.game()));
+                }
+                bump.setInt(index, game.gameID());
+                if (bump.executeUpdate() == 0) {
+                    throw new GameConflictException(game.gameID());
+                }
+            }
+        }, "Failed to record move for game:" + game.gameName());
+    }
+
+    @Override
+    public List<ChessMove> getMoves(int gameID) throws DataAccessException {
+        String sql = "SELECT move FROM game_moves WHERE gameID = ? ORDER BY ply";
+        List<ChessMove> moves = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, gameID);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    moves.add(ChessMove.decode(rs.getShort("move")));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to get moves for game:" + gameID, e);
+        }
+
+        return moves;
+    }
+
+    /**
+     * Decodes a stored game. Rows written before the binary codec hold Gson JSON, those are
+     * parsed the old way and rewritten in the binary form so the next read is cheap.
+     */
+    private ChessGame readGameState(Connection conn, int gameID, byte[] gameState) throws SQLException {
+        if (ChessGameCodec.isEncoded(gameState)) {
+            return ChessGameCodec.decode(gameState);
+        }
+
+        ChessGame game = new Gson().fromJson(new String(gameState, StandardCharsets.UTF_8), ChessGame.class);
+
+        String sql = "UPDATE games SET gameState = ? WHERE gameID = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBytes(1, ChessGameCodec.encode(game));
+            pstmt.setInt(2, gameID);
+            pstmt.executeUpdate();
+        }
+
+        return game;
+    }
+
+    /**
+     * Brings a snapshot up to date by replaying every journaled move played after it
+     */
+    private void replayJournal(Connection conn, int gameID, ChessGame game) throws SQLException, DataAccessException {
+        String sql = "SELECT move FROM game_moves WHERE gameID = ? AND ply > ? ORDER BY ply";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, gameID);
+            pstmt.setInt(2, game.getPly());
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    game.makeMove(ChessMove.decode(rs.getShort("move")));
+                }
+            }
+
+        } catch (InvalidMoveException e) {
+            throw new DataAccessException("Failed to replay moves for game:" + gameID, e);
+        }
+    }
+
+    /**
+     * Runs the work on one connection as a single transaction, committed if it returns and
+     * rolled back if it throws
+     */
+    private void inTransaction(SqlWork work, String failure) throws DataAccessException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                work.run(conn);
+                conn.commit();
+            } catch (SQLException | DataAccessException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(failure, e);
+        }
+    }
+
+    // sends the batch every BATCH_SIZE rows and after the last one
+    private static void addToBatch(PreparedStatement pstmt, int index, int rows) throws SQLException {
+        pstmt.addBatch();
+        if ((index + 1) % BATCH_SIZE == 0 || index + 1 == rows) {
+            pstmt.executeBatch();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run(Connection conn) throws SQLException, DataAccessException;
+    }
+
+    private String hashPassword(String password) throws DataAccessException {
+        return passwordHasher.hash(password);
+    }
+
+    private boolean verifyHash(String hashedPassword, String clearTextPassword) throws DataAccessException {
+        return passwordHasher.verify(clearTextPassword, hashedPassword);
+    }
+
+    /**
+     * Moves a hash made at an older cost to the current one while the password is at hand. Only
+     * replaces the hash that was checked, and skips the upgrade rather than fail the login when
+     * the hasher is busy.
+     */
+    private void rehashIfOutdated(Connection conn, UserData user, String passwordHash) throws SQLException, DataAccessException {
+        if (!passwordHasher.needsRehash(passwordHash)) {
+            return;
+        }
+        String newHash;
+        try {
+            newHash = hashPassword(user.password());
+        } catch (ServiceUnavailableException e) {
+            return;
+        }
+        String sql = "UPDATE users SET password_hash = ? WHERE username = ? AND password_hash = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, newHash);
+            pstmt.setString(2, user.username());
+            pstmt.setString(3, passwordHash);
+            pstmt.executeUpdate();
+        }
     }
 
     private void configureDatabase() throws RuntimeException {
@@ -489,10 +940,178 @@ public class SqlDataAccess implements DataAccess {
                     preparedStatement.executeUpdate();
                 }
             }
+            migrate(conn);
         } catch (SQLException ex) {
             throw new RuntimeException(String.format("Unable to configure database: %s", ex.getMessage()));
         } catch (DataAccessException e) {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Databases created before the binary codec store gameState as LONGTEXT, widen it to a BLOB.
+     * Existing JSON rows keep their bytes and are converted the first time they are read.
+     */
+    private void migrateGameStateColumn(Connection conn) throws SQLException {
+        String sql = """
+                SELECT DATA_TYPE FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'games' AND COLUMN_NAME = 'gameState'
+                """;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next() && !"longblob".equalsIgnoreCase(rs.getString(1))) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("ALTER TABLE games MODIFY gameState LONGBLOB NOT NULL");
+                }
+            }
+        }
+    }
+
+    /**
+     * Databases created before games were versioned have no version column, every existing game
+     * starts at version 1
+     */
+    private void addVersionColumn(Connection conn) throws SQLException {
+        if (!columnExists(conn, "games", "version")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE games ADD COLUMN version BIGINT NOT NULL DEFAULT 1");
+            }
+        }
+    }
+
+    /**
+     * Applies the migrations this database has not had yet. Servers starting together against one
+     * database take turns under a named lock, so the later ones find nothing left to do.
+     */
+    private void migrate(Connection conn) throws SQLException, DataAccessException {
+        try (PreparedStatement lock = conn.prepareStatement("SELECT GET_LOCK('chess_schema', 60)");
+             ResultSet rs = lock.executeQuery()) {
+            if (!rs.next() || rs.getInt(1) != 1) {
+                throw new DataAccessException("Timed out waiting for another server to migrate the database");
+            }
+        }
+
+        try {
+            int applied = schemaVersion(conn);
+            String recordSql = "INSERT INTO schema_version (version, description) VALUES (?,?)";
+            for (Migration migration : migrations) {
+                if (migration.version() <= applied) {
+                    continue;
+                }
+                migration.work().run(conn);
+                try (PreparedStatement record = conn.prepareStatement(recordSql)) {
+                    record.setInt(1, migration.version());
+                    record.setString(2, migration.description());
+                    record.executeUpdate();
+                }
+            }
+        } finally {
+            try (PreparedStatement unlock = conn.prepareStatement("DO RELEASE_LOCK('chess_schema')")) {
+                unlock.execute();
+            }
+        }
+    }
+
+    private static int schemaVersion(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM schema_version");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static SqlWork createIndex(String table, String index, String column) {
+        return conn -> {
+            if (!indexExists(conn, table, index)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + column + ")");
+                }
+            }
+        };
+    }
+
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        String sql = """
+                SELECT COUNT(*) FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?
+                """;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, index);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        String sql = """
+                SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?
+                """;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, column);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private void addStatusColumn(Connection conn) throws SQLException, DataAccessException {
+        if (!columnExists(conn, "games", "status")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE games ADD COLUMN status TINYINT NOT NULL DEFAULT " + STATUS_OPEN);
+            }
+        }
+        createIndex("games", "games_status", "status").run(conn);
+    }
+
+    /**
+     * Tokens handed out by the server are UUIDs, stored as 36 single-byte characters compared
+     * byte for byte rather than as VARCHAR(255) utf8mb4, which keeps the unique index small. A
+     * longer token cannot have come from the server, so its session is dropped.
+     */
+    private void narrowAuthTokens(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM authdata WHERE CHAR_LENGTH(authToken) > 36");
+            stmt.executeUpdate("ALTER TABLE authdata MODIFY authToken CHAR(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL");
+        }
+    }
+
+    /**
+     * Games stored before the status column all start out open. Full games are found by their
+     * seats, finished ones only by reading their boards.
+     */
+    private void classifyGames(Connection conn) throws SQLException, DataAccessException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE games SET status = " + STATUS_FULL
+                    + " WHERE whiteUsername IS NOT NULL AND blackUsername IS NOT NULL");
+        }
+
+        List<Integer> finished = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT gameID, gameState FROM games");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int gameID = rs.getInt("gameID");
+                ChessGame game = readGameState(conn, gameID, rs.getBytes("gameState"));
+                replayJournal(conn, gameID, game);
+                if (game.isGameOver()) {
+                    finished.add(gameID);
+                }
+            }
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE games SET status = " + STATUS_FINISHED + " WHERE gameID = ?")) {
+            for (int i = 0; i < finished.size(); i++) {
+                pstmt.setInt(1, finished.get(i));
+                addToBatch(pstmt, i, finished.size());
+            }
+        }
+    }
+
+    private record Migration(int version, String description, SqlWork work) {
+    }
+}
@@ -0,0 +1,323 @@
+package dataaccess;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of length prefixed, checksummed records kept in a single file.
+ * <p>
+ * Writers queue a record with {@link #enqueue(byte[])} and then wait in {@link #awaitDurable(long)}.
+ * One flusher thread writes everything that queued up while the previous sync was running with a
+ * single write and a single force, so concurrent writers share the cost of each fsync (group commit).
+ * Once a write fails the log stays failed, and every later wait reports it.
+ */
+class WriteAheadLog implements AutoCloseable {
+
+    private static final int FRAME_HEADER = Integer.BYTES * 2;
+
+    private final Path path;
+    // replaced only by compact, while nothing is being written
+    private volatile FileChannel channel;
+    private final boolean syncOnCommit;
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    private List<byte[]> pending = new ArrayList<>();
+    private long appendedSequence;
+    private long durableSequence;
+    private long recordCount;
+    private IOException failure;
+    private boolean closed;
+
+    WriteAheadLog(Path path, boolean syncOnCommit) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.syncOnCommit = syncOnCommit;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Reads every intact record from the start of the file. A torn or corrupt frame at the end
+     * (a crash in the middle of a write) ends the replay and is cut off so new records follow
+     * the last good one. Must be called before anything is enqueued.
+     *
+     * @return the number of records replayed
+     */
+    long replay(RecordHandler handler) throws IOException {
+        long goodPosition = 0;
+        long records = 0;
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] record;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || length > channel.size()) {
+                    break;
+                }
+                record = new byte[length];
+                in.readFully(record);
+
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+
+            handler.apply(new DataInputStream(new ByteArrayInputStream(record)));
+            goodPosition += FRAME_HEADER + record.length;
+            records++;
+        }
+
+        channel.truncate(goodPosition);
+        channel.position(goodPosition);
+        synchronized (lock) {
+            recordCount = records;
+        }
+        return records;
+    }
+
+    /**
+     * Queues a record to be written by the flusher thread
+     *
+     * @return the sequence number to pass to {@link #awaitDurable(long)}
+     */
+    long enqueue(byte[] record) {
+        synchronized (lock) {
+            pending.add(record);
+            recordCount++;
+            lock.notifyAll();
+            return ++appendedSequence;
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number, and everything before it, has been written
+     */
+    void awaitDurable(long sequence) throws IOException {
+        synchronized (lock) {
+            while (durableSequence < sequence && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the write-ahead log", e);
+                }
+            }
+            if (failure != null) {
+                throw new IOException("Write-ahead log is no longer writable", failure);
+            }
+        }
+    }
+
+    /**
+     * Throws if an earlier write failed, so callers can refuse a change before making it
+     */
+    void checkWritable() throws IOException {
+        synchronized (lock) {
+            if (failure != null) {
+                throw new IOException("Write-ahead log is no longer writable", failure);
+            }
+        }
+    }
+
+    long recordCount() {
+        synchronized (lock) {
+            return recordCount;
+        }
+    }
+
+    /**
+     * Drops every record once they are covered by a snapshot and starts the log again with
+     * {@code firstRecord}, written and synced before this returns. The caller must make sure
+     * nothing new is enqueued until this returns.
+     */
+    void reset(byte[] firstRecord) throws IOException {
+        awaitAll();
+        synchronized (lock) {
+            try {
+                channel.truncate(0);
+                channel.position(0);
+                write(List.of(firstRecord));
+                channel.force(true);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            recordCount = 1;
+        }
+    }
+
+    /**
+     * Writes {@code record} after everything queued so far and syncs it, marking the point a
+     * snapshot is taken from. The caller must make sure nothing new is enqueued until this returns.
+     *
+     * @return the position of the record, to pass to {@link #compact(long)} once the snapshot is written
+     */
+    long checkpoint(byte[] record) throws IOException {
+        awaitAll();
+        synchronized (lock) {
+            try {
+                long position = channel.position();
+                write(List.of(record));
+                channel.force(false);
+                recordCount = 1;
+                return position;
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Drops every record before {@code position}, which a snapshot now holds. The records after
+     * it are copied to a new file that replaces the log in one rename, so a crash leaves either
+     * the old log or the new one. The caller must make sure nothing new is enqueued until this
+     * returns.
+     */
+    void compact(long position) throws IOException {
+        awaitAll();
+        synchronized (lock) {
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                try (FileChannel compacted = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long size = channel.size();
+                    long copied = 0;
+                    while (position + copied < size) {
+                        copied += channel.transferTo(position + copied, size - position - copied, compacted);
+                    }
+                    compacted.force(true);
+                }
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // the old log is still in place and complete
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+
+            try {
+                FileChannel old = channel;
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                old.close();
+            } catch (IOException e) {
+                // records would go to the old file, which is no longer the log
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.force(true);
+        channel.close();
+    }
+
+    private void awaitAll() throws IOException {
+        long sequence;
+        synchronized (lock) {
+            sequence = appendedSequence;
+        }
+        awaitDurable(sequence);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<byte[]> batch;
+            long batchSequence;
+
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                batchSequence = appendedSequence;
+            }
+
+            try {
+                write(batch);
+                if (syncOnCommit) {
+                    channel.force(false);
+                }
+                synchronized (lock) {
+                    durableSequence = batchSequence;
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void write(List<byte[]> batch) throws IOException {
+        int size = 0;
+        for (byte[] record : batch) {
+            size += FRAME_HEADER + record.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (byte[] record : batch) {
+            crc.reset();
+            crc.update(record);
+            buffer.putInt(record.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(record);
+        }
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @FunctionalInterface
+    interface RecordHandler {
+        void apply(DataInputStream record) throws IOException;
+    }
+}
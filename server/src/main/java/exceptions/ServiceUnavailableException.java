@@ -0,0 +1,19 @@
+package exceptions;
+
+import java.time.Duration;
+
+/**
+ * The server is too busy to take the request right now; answered with 503 and a Retry-After
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,133 @@
+package server;
+
+import com.google.gson.Gson;
+import dataaccess.DataAccessException;
+import model.gameservicerecords.GameListData;
+import model.gameservicerecords.GameListQuery;
+import service.Lobby;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Game list responses serialized once per lobby version, so polls between changes are answered
+ * from bytes already built instead of another listing. A page's ETag is the lobby version with a
+ * digest of the page's query and user, so a tag only ever matches the page it came from. Bodies
+ * long enough to be worth it are also kept gzipped.
+ */
+class GameListCache {
+
+    // Javalin's own threshold for compressing responses
+    static final int GZIP_MIN_BYTES = 1500;
+
+    private final Lobby lobby;
+    private final Gson gson;
+    private final int maxPages;
+    private final Map<Key, Versioned> pages = new ConcurrentHashMap<>();
+
+    GameListCache(Lobby lobby, Gson gson, int maxPages) {
+        this.lobby = lobby;
+        this.gson = gson;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * @param json serialized GameListData
+     * @param gzip the same bytes gzipped, or null if json is too short to bother
+     */
+    record Page(String etag, byte[] json, byte[] gzip) {
+    }
+
+    @FunctionalInterface
+    interface Listing {
+        GameListData list() throws DataAccessException;
+    }
+
+    private record Key(GameListQuery query, String username) {
+    }
+
+    private record Versioned(long version, Page page) {
+    }
+
+    /**
+     * ETag of the page a query would get if listed now
+     *
+     * @param username the user a mine only query is for, otherwise null
+     */
+    String currentETag(GameListQuery query, String username) {
+        return etag(new Key(query, username), lobby.version());
+    }
+
+    /**
+     * Whether an If-None-Match header names the page a query would get if listed now
+     */
+    boolean isCurrent(String ifNoneMatch, GameListQuery query, String username) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String current = currentETag(query, username);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(current) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The response to a query, listing the games only if the lobby has changed since it was
+     * last built
+     *
+     * @param username the user a mine only query is for, otherwise null
+     */
+    Page page(GameListQuery query, String username, Listing listing) throws DataAccessException {
+        Key key = new Key(query, username);
+        // read before listing, so a change stored while listing leaves the page already stale
+        long version = lobby.version();
+        Versioned cached = pages.get(key);
+        if (cached != null && cached.version() == version) {
+            return cached.page();
+        }
+
+        byte[] json = gson.toJson(listing.list()).getBytes(StandardCharsets.UTF_8);
+        Page page = new Page(etag(key, version), json, json.length >= GZIP_MIN_BYTES ? gzip(json) : null);
+        if (pages.size() >= maxPages) {
+            pages.clear();
+        }
+        pages.put(key, new Versioned(version, page));
+        return page;
+    }
+
+    private static String etag(Key key, long version) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+        return "\"" + Long.toHexString(version) + "-" + HexFormat.of().formatHex(digest, 0, 8) + "\"";
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,197 @@
+package server;
+
+import com.google.gson.Gson;
+import dataaccess.DataAccessException;
+import io.javalin.http.sse.SseClient;
+import model.gameservicerecords.GameListQuery;
+import service.GameService;
+import service.Lobby;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes lobby changes to clients as server-sent events on GET /lobby/events, so they can keep
+ * their game list current without polling. Each event's ID is the lobby version it brought
+ * about. A client that reconnects with a Last-Event-ID the lobby still remembers is sent only
+ * the changes after it; any other client first gets a "snapshot" event holding the whole list.
+ * <p>
+ * An idle watcher holds no thread, only its connection and a slot in the lobby. Events for each
+ * watcher are written in order on a virtual thread of their own, and a watcher that falls more
+ * than maxPending events behind is disconnected so it can catch up by reconnecting.
+ */
+class LobbyEventStream implements AutoCloseable {
+
+    private final GameService gameService;
+    private final Gson gson;
+    private final int maxPending;
+    private final Set<Watcher> watchers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("lobby-heartbeat").factory());
+
+    /**
+     * @param heartbeatInterval how often idle connections get a comment, to keep Jetty and any
+     *                          proxies in between from closing them
+     */
+    LobbyEventStream(GameService gameService, Gson gson, int maxPending, Duration heartbeatInterval) {
+        this.gameService = gameService;
+        this.gson = gson;
+        this.maxPending = maxPending;
+        long millis = heartbeatInterval.toMillis();
+        heartbeat.scheduleAtFixedRate(() -> watchers.forEach(Watcher::heartbeat), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Watchers connected right now
+     */
+    int watcherCount() {
+        return watchers.size();
+    }
+
+    /**
+     * Handles a new connection whose token has already been checked
+     */
+    void connect(SseClient client) throws DataAccessException {
+        Lobby lobby = gameService.lobby();
+        Watcher watcher = new Watcher(client);
+        // changes from here on queue up behind whatever the client is sent first
+        long version = lobby.watch(watcher);
+        watchers.add(watcher);
+        client.onClose(() -> {
+            lobby.unwatch(watcher);
+            watchers.remove(watcher);
+        });
+        client.keepAlive();
+
+        List<Lobby.Change> missed = null;
+        Long lastEventID = lastEventID(client);
+        if (lastEventID != null && lastEventID <= version) {
+            missed = lobby.since(lastEventID);
+        }
+
+        if (missed != null) {
+            for (Lobby.Change change : missed) {
+                if (change.version() <= version) {
+                    watcher.send(change);
+                }
+            }
+        } else {
+            // may already hold changes that are queued too, which clients can apply twice
+            var games = gameService.listAuthorizedGames(GameListQuery.all(), null);
+            client.sendEvent("snapshot", gson.toJson(games), Long.toString(version));
+        }
+        watcher.start(version);
+    }
+
+    private static Long lastEventID(SseClient client) {
+        String header = client.ctx().header("Last-Event-ID");
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        watchers.forEach(watcher -> watcher.client.close());
+        writers.shutdown();
+    }
+
+    private final class Watcher implements Lobby.Watcher {
+        private final SseClient client;
+        private final ArrayDeque<Lobby.Change> pending = new ArrayDeque<>();
+        private boolean started;
+        private boolean writing;
+        private boolean heartbeatDue;
+        private boolean dropped;
+        // only touched by whichever thread is writing
+        private long sentVersion;
+
+        Watcher(SseClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public synchronized void changed(Lobby.Change change) {
+            if (dropped) {
+                return;
+            }
+            if (pending.size() >= maxPending) {
+                dropped = true;
+                pending.clear();
+                writers.execute(client::close);
+                return;
+            }
+            pending.add(change);
+            schedule();
+        }
+
+        synchronized void heartbeat() {
+            if (started && !dropped && pending.isEmpty()) {
+                heartbeatDue = true;
+                schedule();
+            }
+        }
+
+        /**
+         * Starts writing queued changes after the client has been sent everything up to version
+         */
+        void start(long version) {
+            sentVersion = version;
+            synchronized (this) {
+                started = true;
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (started && !writing && (!pending.isEmpty() || heartbeatDue)) {
+                writing = true;
+                writers.execute(this::write);
+            }
+        }
+
+        private void write() {
+            while (true) {
+                Lobby.Change change;
+                boolean comment = false;
+                synchronized (this) {
+                    change = pending.poll();
+                    if (change == null) {
+                        comment = heartbeatDue;
+                        heartbeatDue = false;
+                    }
+                    if ((change == null && !comment) || client.terminated()) {
+                        writing = false;
+                        return;
+                    }
+                }
+                if (change != null) {
+                    send(change);
+                } else {
+                    client.sendComment("");
+                }
+            }
+        }
+
+        void send(Lobby.Change change) {
+            if (change.version() > sentVersion) {
+                client.sendEvent("lobby", gson.toJson(change.event()), Long.toString(change.version()));
+                sentVersion = change.version();
+            }
+        }
+    }
+}
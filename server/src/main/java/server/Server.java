@@ -1,6 +1,12 @@
 package server;
 
+import dataaccess.BoundedDataAccess;
+import dataaccess.CachingDataAccess;
+import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import dataaccess.DurableMemoryDataAccess;
+import dataaccess.GameConflictException;
+import dataaccess.MemoryDataAccess;
 import dataaccess.SqlDataAccess;
 import exceptions.*;
 import com.google.gson.Gson;
@@ -10,31 +16,92 @@ import io.javalin.*;
 
 import io.javalin.json.JavalinGson;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
 import org.jetbrains.annotations.NotNull;
+import server.cluster.GameEventBus;
+import server.cluster.InProcessGameEventBus;
+import server.cluster.TcpGameEventBus;
 import server.websocket.WebSocketHandler;
 import service.*;
 import model.*;
 import model.gameservicerecords.CreateGameInput;
+import model.gameservicerecords.GameListQuery;
 import model.gameservicerecords.JoinGameInput;
+import model.gameservicerecords.LobbyEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Server {
 
+    private static final String PRINCIPAL = "principal";
+
     private final Javalin javalin;
 
     private final WebSocketHandler webSocketHandler;
 
-    private SqlDataAccess dataAccess;
+    private DataAccess dataAccess;
     private UserService userService;
     private GameService gameService;
+    private final GameListCache gameListCache;
+    private final LobbyEventStream lobbyEventStream;
+    private final GameEventBus gameEventBus;
 
     public Server() {
+        this(createDataAccess(), createGameEventBus());
+    }
+
+    public Server(DataAccess dataAccess) {
+        this(dataAccess, InProcessGameEventBus.standalone());
+    }
 
+    /**
+     * A server node sharing websocket game traffic with the other nodes on the bus. Every node
+     * must use the same storage. Runs on virtual threads when chess.virtualThreads is true.
+     */
+    public Server(DataAccess dataAccess, GameEventBus gameEventBus) {
+        this(dataAccess, gameEventBus, Boolean.getBoolean("chess.virtualThreads"));
+    }
 
-        dataAccess = new SqlDataAccess();
+    /**
+     * @param virtualThreads handle HTTP requests and websocket callbacks on virtual threads instead
+     *                       of Jetty's pool of platform threads. Since that no longer caps how many
+     *                       handlers can be blocked on the database, storage calls are then limited
+     *                       to chess.db.maxConcurrent (default 64) at a time, each waiting at most
+     *                       chess.db.maxWaitMillis (default 5000) for its turn.
+     *                       <p>
+     *                       Either way the chess.cachedGames (default 1000) most recently used games
+     *                       are kept in a {@link CachingDataAccess} in front of the storage.
+     */
+    public Server(DataAccess dataAccess, GameEventBus gameEventBus, boolean virtualThreads) {
+
+        if (virtualThreads) {
+            dataAccess = new BoundedDataAccess(dataAccess, Integer.getInteger("chess.db.maxConcurrent", 64),
+                    Duration.ofMillis(Long.getLong("chess.db.maxWaitMillis", 5000)));
+        }
+        CachingDataAccess gameCache = new CachingDataAccess(dataAccess, Integer.getInteger("chess.cachedGames", 1000));
+        dataAccess = gameCache;
+        this.dataAccess = dataAccess;
+        this.gameEventBus = gameEventBus;
         userService = new UserService(dataAccess);
         gameService = new GameService(dataAccess);
+        gameService.lobby().onChangeElsewhere(event -> {
+            if (event.type() == LobbyEvent.Type.CLEARED) {
+                gameCache.evictAll();
+            } else {
+                gameCache.evict(event.game().gameID());
+            }
+        });
+        gameListCache = new GameListCache(gameService.lobby(), new Gson(), Integer.getInteger("chess.lobby.cachedPages", 1024));
+        lobbyEventStream = new LobbyEventStream(gameService, new Gson(), Integer.getInteger("chess.lobby.maxPendingEvents", 1024),
+                Duration.ofSeconds(Long.getLong("chess.lobby.heartbeatSeconds", 15)));
 
-        webSocketHandler = new WebSocketHandler(userService, gameService, dataAccess);
+        webSocketHandler = new WebSocketHandler(userService, gameService, dataAccess, gameEventBus);
 
         //javalin = Javalin.create(config -> config.staticFiles.add("web"));
 
@@ -42,6 +109,7 @@ public class Server {
         javalin = Javalin.create(config -> {
             config.staticFiles.add("web");
             config.jsonMapper(new JavalinGson()); // Use Javalin's Gson plugin
+            config.useVirtualThreads = virtualThreads;
         });
 
 
@@ -56,12 +124,29 @@ public class Server {
         javalin.exception(AlreadyTakenException.class, (e, ctx) -> {
             ctx.status(403).json(new ErrorResponse(e.getMessage())); // Forbidden status
         });
+        javalin.exception(ServiceUnavailableException.class, (e, ctx) -> {
+            ctx.header("Retry-After", Long.toString(e.getRetryAfter().toSeconds()));
+            ctx.status(503).json(new ErrorResponse(e.getMessage())); // Service Unavailable status
+        });
+        // still conflicting after the service's retries, see ConflictRetry
+        javalin.exception(GameConflictException.class, (e, ctx) -> {
+            ctx.status(409).json(new ErrorResponse(e.getMessage())); // Conflict status
+        });
         javalin.exception(DataAccessException.class, (e, ctx) -> {
             System.err.println("Database Error occurred: " + e.getMessage());
             ctx.status(500).json(new ErrorResponse("Internal server error: " + e.getMessage()));
         });
 
 
+        // every route that needs a logged in user resolves its token here, once, see principal()
+        javalin.before("/game", this::authenticate);
+        javalin.before("/lobby/events", this::authenticate);
+        javalin.before("/session", ctx -> {
+            if (ctx.method() == HandlerType.DELETE) {
+                authenticate(ctx);
+            }
+        });
+
         //JAVALIN EVENTS
         javalin.delete("/db", this::deleteAll);
         javalin.post("/user", this::register);
@@ -70,16 +155,28 @@ public class Server {
         javalin.post("/game", this::createGame);
         javalin.put("/game", this::joinGame);
         javalin.get("/game", this::listGames);
+        javalin.sse("/lobby/events", client -> {
+            try {
+                lobbyEventStream.connect(client);
+            } catch (DataAccessException e) {
+                System.err.println("Database Error occurred: " + e.getMessage());
+                client.close();
+            }
+        });
+        javalin.get("/metrics/websocket", ctx -> ctx.json(webSocketHandler.outboundMetrics()));
+        javalin.get("/metrics/audience", ctx -> ctx.json(webSocketHandler.audience()));
 
         javalin.ws("/ws", ws -> {
             ws.onConnect(webSocketHandler);
             ws.onMessage(webSocketHandler);
+            ws.onBinaryMessage(webSocketHandler);
             ws.onClose(webSocketHandler);
         });
     }
 
     private void deleteAll(@NotNull Context ctx) throws DataAccessException {
         dataAccess.clear();
+        gameService.lobby().changed(LobbyEvent.cleared());
     }
 
     private void register(@NotNull Context ctx) throws DataAccessException {
@@ -102,23 +199,30 @@ public class Server {
         ctx.status(200).json(response);
     }
 
-    private void logout(@NotNull Context ctx) throws DataAccessException {
+    private void authenticate(@NotNull Context ctx) throws DataAccessException {
+        ctx.attribute(PRINCIPAL, userService.authenticate(ctx.header("Authorization")));
+    }
 
-        var req = ctx.header("Authorization");
+    /**
+     * The session of the user making the request, as resolved by the before handler
+     */
+    private static AuthData principal(@NotNull Context ctx) {
+        return ctx.attribute(PRINCIPAL);
+    }
+
+    private void logout(@NotNull Context ctx) throws DataAccessException {
 
-        this.userService.logout(req);
+        this.userService.logout(principal(ctx));
         ctx.status(200).json("{}");
     }
 
     private void createGame(@NotNull Context ctx) throws DataAccessException {
 
-        var authToken = ctx.header("Authorization");
-
         var serializer = new Gson();
         String reqJson = ctx.body();
         var req = serializer.fromJson(reqJson, CreateGameInput.class);
 
-        var response = this.gameService.createGame(authToken, req.gameName());
+        var response = this.gameService.createGame(principal(ctx), req.gameName());
 
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("gameID", response);
@@ -130,38 +234,122 @@ public class Server {
 
     private void joinGame(@NotNull Context ctx) throws DataAccessException {
 
-        var authToken = ctx.header("Authorization");
-
         var serializer = new Gson();
         String reqJson = ctx.body();
         var req = serializer.fromJson(reqJson, JoinGameInput.class);
 
         GameData game;
         if (req.observer()) {
-            game = this.gameService.joinGameObserver(authToken, req.gameID());
+            game = this.gameService.joinGameObserver(principal(ctx), req.gameID());
         } else {
-            game = this.gameService.joinGame(authToken, req.playerColor(), req.gameID());
+            game = this.gameService.joinGame(principal(ctx), req.playerColor(), req.gameID());
         }
         ctx.status(200).json(game);
     }
 
+    /**
+     * Answers with the cached bytes for the current lobby version, or with 304 and no listing at
+     * all when the client already has this page
+     */
     private void listGames(@NotNull Context ctx) throws DataAccessException {
 
-        var authToken = ctx.header("Authorization");
+        var query = new GameListQuery(
+                Boolean.parseBoolean(ctx.queryParam("mine")),
+                Boolean.parseBoolean(ctx.queryParam("open")),
+                intQueryParam(ctx, "after"),
+                intQueryParam(ctx, "limit"));
+
+        String username = this.gameService.authorizeListing(principal(ctx), query);
 
-        var gamesList = this.gameService.listGames(authToken);
+        ctx.header("Vary", "Authorization, Accept-Encoding");
+        if (gameListCache.isCurrent(ctx.header("If-None-Match"), query, username)) {
+            ctx.header("ETag", gameListCache.currentETag(query, username));
+            ctx.status(304);
+            return;
+        }
 
-        if (gamesList == null) {
-            JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("game", "[]");
+        var page = gameListCache.page(query, username, () -> this.gameService.listAuthorizedGames(query, username));
+        ctx.header("ETag", page.etag());
+        ctx.contentType("application/json");
+        String acceptEncoding = ctx.header("Accept-Encoding");
+        if (page.gzip() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ctx.header("Content-Encoding", "gzip");
+            ctx.status(200).result(page.gzip());
+        } else {
+            ctx.status(200).result(page.json());
+        }
+    }
 
-            ctx.status(200).json(jsonObject);
+    private int intQueryParam(@NotNull Context ctx, String name) {
+        String value = ctx.queryParam(name);
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Error: bad request");
         }
+    }
 
-        ctx.status(200).json(gamesList);
 
+    /**
+     * Picks the storage backend from the chess.storage system property: "sql" (the default)
+     * for MySQL, "memory" for a process local store that needs no database, or "durable" for the
+     * in-memory store backed by a snapshot and write-ahead log in the chess.dataDir directory.
+     */
+    private static DataAccess createDataAccess() {
+        String storage = System.getProperty("chess.storage", "sql");
+        return switch (storage) {
+            case "memory" -> new MemoryDataAccess();
+            case "durable" -> createDurableDataAccess();
+            case "sql" -> new SqlDataAccess();
+            default -> throw new IllegalArgumentException("Unknown chess.storage: " + storage);
+        };
     }
 
+    private static DataAccess createDurableDataAccess() {
+        Path dataDirectory = Path.of(System.getProperty("chess.dataDir", "data"));
+        boolean syncOnCommit = Boolean.parseBoolean(System.getProperty("chess.fsync", "true"));
+        try {
+            return new DurableMemoryDataAccess(dataDirectory, syncOnCommit);
+        } catch (DataAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Joins this server to other nodes when chess.cluster.node names this node and
+     * chess.cluster.nodes lists every node as id=host:port, comma separated, this one included.
+     * Without them the server runs on its own.
+     */
+    private static GameEventBus createGameEventBus() {
+        String nodeID = System.getProperty("chess.cluster.node");
+        String nodeList = System.getProperty("chess.cluster.nodes");
+        if (nodeID == null || nodeList == null) {
+            return InProcessGameEventBus.standalone();
+        }
+
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        for (String entry : nodeList.split(",")) {
+            String[] idAndAddress = entry.trim().split("=", 2);
+            int colon = idAndAddress[1].lastIndexOf(':');
+            nodes.put(idAndAddress[0], new InetSocketAddress(idAndAddress[1].substring(0, colon),
+                    Integer.parseInt(idAndAddress[1].substring(colon + 1))));
+        }
+        InetSocketAddress listenAddress = nodes.remove(nodeID);
+        if (listenAddress == null) {
+            throw new IllegalArgumentException("chess.cluster.nodes does not list chess.cluster.node " + nodeID);
+        }
+
+        try {
+            TcpGameEventBus bus = new TcpGameEventBus(nodeID, new InetSocketAddress(listenAddress.getPort()));
+            nodes.forEach(bus::addPeer);
+            return bus;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
     public int run(int desiredPort) {
         javalin.start(desiredPort);
@@ -169,6 +357,16 @@ public class Server {
     }
 
     public void stop() {
+        lobbyEventStream.close();
         javalin.stop();
+        gameEventBus.close();
+        webSocketHandler.close();
+        if (dataAccess instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 }
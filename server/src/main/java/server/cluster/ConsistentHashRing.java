@@ -0,0 +1,67 @@
+package server.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Assigns each gameID to one node. Every node is placed on a hash ring at several points and a
+ * game belongs to the first node point at or after the game's own hash, so adding or removing a
+ * node only moves the games next to its points. Every node builds the same ring from the same
+ * node IDs, so they all agree on the owners without talking to each other.
+ */
+public class ConsistentHashRing {
+
+    static final int POINTS_PER_NODE = 128;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodeIDs;
+
+    public ConsistentHashRing(Collection<String> nodeIDs) {
+        if (nodeIDs.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        this.nodeIDs = Set.copyOf(nodeIDs);
+        for (String nodeID : this.nodeIDs) {
+            for (int point = 0; point < POINTS_PER_NODE; point++) {
+                ring.put(pointHash(nodeID + "#" + point), nodeID);
+            }
+        }
+    }
+
+    public String ownerOf(int gameID) {
+        Map.Entry<Long, String> owner = ring.ceilingEntry(mix(gameID));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> nodeIDs() {
+        return nodeIDs;
+    }
+
+    private static long pointHash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is always available", e);
+        }
+    }
+
+    // murmur3 finalizer, spreads consecutive gameIDs across the whole ring
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
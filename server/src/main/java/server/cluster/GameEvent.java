@@ -0,0 +1,94 @@
+package server.cluster;
+
+/**
+ * A message between server nodes about one game. Messages and commands travel as their
+ * websocket JSON so the receiving node can encode them for its own sessions.
+ *
+ * @param kind         what the event asks the receiving node to do
+ * @param originNode   node that sent the event
+ * @param gameID       game the event belongs to, null for DIRECT, LOBBY_CHANGED and LOGGED_OUT
+ * @param sessionID    the session the event is for, or for BROADCAST the session to skip
+ * @param message      command JSON for COMMAND, server message JSON for DIRECT, BROADCAST and GAME_UPDATE,
+ *                     LobbyEvent JSON for LOBBY_CHANGED, the auth token for LOGGED_OUT
+ * @param move         MOVE message JSON for GAME_UPDATE, sent to sessions that asked for deltas
+ * @param deltaUpdates for JOINED, whether the session asked for delta updates
+ * @param observer     for JOINED, whether the session is watching rather than playing
+ */
+public record GameEvent(Kind kind, String originNode, Integer gameID, String sessionID,
+                        String message, String move, boolean deltaUpdates, boolean observer) {
+
+    public enum Kind {
+        /**
+         * A websocket command forwarded to the game's owner
+         */
+        COMMAND,
+        /**
+         * A session on the origin node closed; sent to the owner of the game it was in
+         */
+        CLOSED,
+        /**
+         * The owner accepted the session into the game
+         */
+        JOINED,
+        /**
+         * The owner removed the session from the game
+         */
+        LEFT,
+        /**
+         * A message for one session
+         */
+        DIRECT,
+        /**
+         * A message for every session in the game on the receiving node
+         */
+        BROADCAST,
+        /**
+         * The state after a move, as a full game or a move depending on each session
+         */
+        GAME_UPDATE,
+        /**
+         * The origin node changed the game list, so listings cached on the receiving node are stale
+         */
+        LOBBY_CHANGED,
+        /**
+         * The origin node logged out a token, so sessions bound to it on the receiving node are not trusted anymore
+         */
+        LOGGED_OUT
+    }
+
+    public static GameEvent command(String originNode, int gameID, String sessionID, String command) {
+        return new GameEvent(Kind.COMMAND, originNode, gameID, sessionID, command, null, false, false);
+    }
+
+    public static GameEvent closed(String originNode, int gameID, String sessionID) {
+        return new GameEvent(Kind.CLOSED, originNode, gameID, sessionID, null, null, false, false);
+    }
+
+    public static GameEvent joined(String originNode, int gameID, String sessionID, boolean deltaUpdates, boolean observer) {
+        return new GameEvent(Kind.JOINED, originNode, gameID, sessionID, null, null, deltaUpdates, observer);
+    }
+
+    public static GameEvent left(String originNode, int gameID, String sessionID) {
+        return new GameEvent(Kind.LEFT, originNode, gameID, sessionID, null, null, false, false);
+    }
+
+    public static GameEvent direct(String originNode, String sessionID, String message) {
+        return new GameEvent(Kind.DIRECT, originNode, null, sessionID, message, null, false, false);
+    }
+
+    public static GameEvent broadcast(String originNode, int gameID, String excludeSessionID, String message) {
+        return new GameEvent(Kind.BROADCAST, originNode, gameID, excludeSessionID, message, null, false, false);
+    }
+
+    public static GameEvent gameUpdate(String originNode, int gameID, String loadGame, String move) {
+        return new GameEvent(Kind.GAME_UPDATE, originNode, gameID, null, loadGame, move, false, false);
+    }
+
+    public static GameEvent lobbyChanged(String originNode, String lobbyEvent) {
+        return new GameEvent(Kind.LOBBY_CHANGED, originNode, null, null, lobbyEvent, null, false, false);
+    }
+
+    public static GameEvent loggedOut(String originNode, String authToken) {
+        return new GameEvent(Kind.LOGGED_OUT, originNode, null, null, authToken, null, false, false);
+    }
+}
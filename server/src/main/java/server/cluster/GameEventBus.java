@@ -0,0 +1,28 @@
+package server.cluster;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Carries GameEvents between the server nodes that share the game traffic. Events from one node
+ * to another are delivered in the order they were sent, one at a time.
+ */
+public interface GameEventBus extends AutoCloseable {
+
+    String nodeID();
+
+    /**
+     * Every node on the bus, this one included
+     */
+    Set<String> nodeIDs();
+
+    void send(String nodeID, GameEvent event);
+
+    /**
+     * Sets the listener events addressed to this node are handed to
+     */
+    void subscribe(Consumer<GameEvent> listener);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,79 @@
+package server.cluster;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Bus between nodes running in the same JVM. A single server uses a {@link #standalone()} bus
+ * that never has anyone to send to; tests join several servers to one {@link Hub}.
+ */
+public class InProcessGameEventBus implements GameEventBus {
+
+    private final Hub hub;
+    private final String nodeID;
+    private final ExecutorService delivery;
+    private volatile Consumer<GameEvent> listener = event -> { };
+
+    private InProcessGameEventBus(Hub hub, String nodeID) {
+        this.hub = hub;
+        this.nodeID = nodeID;
+        this.delivery = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-events-" + nodeID);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static InProcessGameEventBus standalone() {
+        return new Hub().join("local");
+    }
+
+    @Override
+    public String nodeID() {
+        return nodeID;
+    }
+
+    @Override
+    public Set<String> nodeIDs() {
+        return Set.copyOf(hub.nodes.keySet());
+    }
+
+    @Override
+    public void send(String targetNodeID, GameEvent event) {
+        InProcessGameEventBus target = hub.nodes.get(targetNodeID);
+        if (target == null) {
+            throw new IllegalArgumentException("Unknown node: " + targetNodeID);
+        }
+        target.delivery.execute(() -> target.listener.accept(event));
+    }
+
+    @Override
+    public void subscribe(Consumer<GameEvent> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void close() {
+        hub.nodes.remove(nodeID, this);
+        delivery.shutdown();
+    }
+
+    /**
+     * The nodes that can reach each other. Join every node before any of them handles traffic,
+     * since game ownership is worked out from the full set of nodes.
+     */
+    public static class Hub {
+        private final ConcurrentHashMap<String, InProcessGameEventBus> nodes = new ConcurrentHashMap<>();
+
+        public InProcessGameEventBus join(String nodeID) {
+            InProcessGameEventBus bus = new InProcessGameEventBus(this, nodeID);
+            if (nodes.putIfAbsent(nodeID, bus) != null) {
+                throw new IllegalArgumentException("Node already joined: " + nodeID);
+            }
+            return bus;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package server.cluster;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Bus between server nodes over plain TCP. Each node listens on its own port and opens one
+ * connection to every peer the first time it has something to send there. Events are written as
+ * a four byte length followed by the event's JSON, from a single sender thread per peer so they
+ * arrive in the order they were sent.
+ * <p>
+ * Peers are fixed when the nodes start. A peer that cannot be reached loses the events sent to
+ * it until it can be reached again.
+ */
+public class TcpGameEventBus implements GameEventBus {
+
+    private static final int MAX_EVENT_BYTES = 16 * 1024 * 1024;
+
+    private final Gson gson = new Gson();
+    private final String nodeID;
+    private final ServerSocket serverSocket;
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final ExecutorService delivery;
+    private volatile Consumer<GameEvent> listener = event -> { };
+    private volatile boolean closed;
+
+    /**
+     * Starts listening straight away; pass port 0 to pick a free port and read it from {@link #port()}
+     */
+    public TcpGameEventBus(String nodeID, InetSocketAddress listenAddress) throws IOException {
+        this.nodeID = nodeID;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(listenAddress);
+        this.delivery = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "game-events-" + nodeID));
+        daemon(this::acceptLoop, "game-events-accept-" + nodeID).start();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void addPeer(String peerNodeID, InetSocketAddress address) {
+        if (peerNodeID.equals(nodeID)) {
+            throw new IllegalArgumentException("A node is not its own peer: " + peerNodeID);
+        }
+        peers.put(peerNodeID, new Peer(peerNodeID, address));
+    }
+
+    @Override
+    public String nodeID() {
+        return nodeID;
+    }
+
+    @Override
+    public Set<String> nodeIDs() {
+        Set<String> nodeIDs = new HashSet<>(peers.keySet());
+        nodeIDs.add(nodeID);
+        return nodeIDs;
+    }
+
+    @Override
+    public void send(String targetNodeID, GameEvent event) {
+        if (targetNodeID.equals(nodeID)) {
+            delivery.execute(() -> listener.accept(event));
+            return;
+        }
+        Peer peer = peers.get(targetNodeID);
+        if (peer == null) {
+            throw new IllegalArgumentException("Unknown node: " + targetNodeID);
+        }
+        byte[] payload = gson.toJson(event).getBytes(StandardCharsets.UTF_8);
+        peer.sender.execute(() -> peer.write(payload));
+    }
+
+    @Override
+    public void subscribe(Consumer<GameEvent> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Peer peer : peers.values()) {
+            peer.close();
+        }
+        for (Socket socket : inbound) {
+            closeQuietly(socket);
+        }
+        delivery.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                inbound.add(socket);
+                daemon(() -> readLoop(socket), "game-events-read-" + nodeID).start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Game event bus accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (!closed) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_EVENT_BYTES) {
+                    throw new IOException("Bad event length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                GameEvent event = gson.fromJson(new String(payload, StandardCharsets.UTF_8), GameEvent.class);
+                delivery.execute(() -> listener.accept(event));
+            }
+        } catch (EOFException ignored) {
+            // peer closed its end
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Game event bus read failed: " + e.getMessage());
+            }
+        } finally {
+            inbound.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class Peer {
+        private final String peerNodeID;
+        private final InetSocketAddress address;
+        private final ExecutorService sender;
+        private Socket socket;
+        private DataOutputStream out;
+
+        private Peer(String peerNodeID, InetSocketAddress address) {
+            this.peerNodeID = peerNodeID;
+            this.address = address;
+            this.sender = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "game-events-send-" + peerNodeID));
+        }
+
+        // only runs on the sender thread
+        private void write(byte[] payload) {
+            try {
+                if (out == null) {
+                    socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(address);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                }
+                out.writeInt(payload.length);
+                out.write(payload);
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Game event to " + peerNodeID + " lost: " + e.getMessage());
+                if (socket != null) {
+                    closeQuietly(socket);
+                }
+                socket = null;
+                out = null;
+            }
+        }
+
+        private void close() {
+            sender.shutdown();
+            if (socket != null) {
+                closeQuietly(socket);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package server.websocket;
+
+import java.time.Duration;
+
+/**
+ * How a game's watchers are served. Players and the first immediateObservers observers get every
+ * message as it is sent; observers after them get the latest board and the notifications since
+ * their last update once per tick, so a move costs the same however large the audience is.
+ */
+public record AudienceTiers(int immediateObservers, Duration tick) {
+
+    public AudienceTiers {
+        if (immediateObservers < 0 || tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("Bad audience tiers: " + immediateObservers + " observers, " + tick + " tick");
+        }
+    }
+
+    /**
+     * Reads chess.ws.immediateObservers (default 100) and chess.ws.observerTickMillis (default 250)
+     */
+    public static AudienceTiers fromProperties() {
+        return new AudienceTiers(Integer.getInteger("chess.ws.immediateObservers", 100),
+                Duration.ofMillis(Long.getLong("chess.ws.observerTickMillis", 250)));
+    }
+}
@@ -0,0 +1,8 @@
+package server.websocket;
+
+/**
+ * Where a websocket session lives: the node holding it and the session's ID on that node. Lets
+ * a game's actor answer a session that is connected to another server node.
+ */
+public record Connection(String nodeID, String sessionID) {
+}
@@ -2,33 +2,302 @@ package server.websocket;
 
 import com.google.gson.Gson;
 import org.eclipse.jetty.websocket.api.Session;
-import service.GameService;
-import service.UserService;
+import server.cluster.GameEvent;
+import server.cluster.GameEventBus;
+import server.cluster.InProcessGameEventBus;
+import websocket.BinaryProtocol;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
 import websocket.messages.ServerMessage;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Tracks the websocket sessions in each game and queues messages to them. Sessions held by this
+ * node are in {@link #connections}; when another node owns the game, its actor reaches them
+ * through the GameEventBus, and when this node owns it the sessions held elsewhere are kept as
+ * remote members so broadcasts are published once to each node that has some.
+ * <p>
+ * Only players and the first observers of a game, as set by {@link AudienceTiers}, are in
+ * {@link #connections} and get messages as they are sent. Later observers are ticked: their
+ * game's messages are collected and sent to all of them together once per tick.
+ * <p>
+ * Every broadcast is numbered and kept in its game's {@link EventLog}, the last
+ * chess.ws.resumeEvents (default 64) of them, so a client that reconnects can be sent only what
+ * it missed. Logs are kept for the most recently active {@value #MAX_LOGGED_GAMES} games.
+ */
 public class ConnectionManager {
-    public final ConcurrentHashMap<Integer, ArrayList<Session>> connections = new ConcurrentHashMap<>();
+    static final int MAX_LOGGED_GAMES = 10_000;
+
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "observer-ticks");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public final ConcurrentHashMap<Integer, CopyOnWriteArrayList<Session>> connections = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Integer, GameAudience> audiences = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Session, Tier> tiers = new ConcurrentHashMap<>();
+    private final AudienceTiers audienceTiers;
+    private final int resumeEvents = Integer.getInteger("chess.ws.resumeEvents", 64);
+    private final Map<Integer, EventLog<Logged>> logs = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, EventLog<Logged>> eldest) {
+                    return size() > MAX_LOGGED_GAMES;
+                }
+            });
+
+    private final ConcurrentHashMap<Session, Integer> sessionGames = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Session, String> sessionIDs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Session> sessionsByID = new ConcurrentHashMap<>();
+    private final AtomicLong nextSessionID = new AtomicLong();
+    private final ConcurrentHashMap<Integer, Set<Connection>> remoteMembers = new ConcurrentHashMap<>();
+    private final GameEventBus bus;
+
+    private final ConcurrentHashMap<Session, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    private final Set<Session> deltaSessions = ConcurrentHashMap.newKeySet();
+    private final Set<Session> binarySessions = ConcurrentHashMap.newKeySet();
+    private final Gson gson;
+    private final OutboundMetrics metrics = new OutboundMetrics();
+    private final int queueCapacity;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    /**
+     * Reads the outbound queue size from chess.ws.queueCapacity, the slow consumer policy from
+     * chess.ws.slowConsumerPolicy and the observer tiers as in {@link AudienceTiers#fromProperties()}
+     */
+    public ConnectionManager(Gson gson, GameEventBus bus) {
+        this(gson, Integer.getInteger("chess.ws.queueCapacity", 256),
+                SlowConsumerPolicy.valueOf(System.getProperty("chess.ws.slowConsumerPolicy", SlowConsumerPolicy.DROP_OLDEST_LOAD_GAME.name())),
+                AudienceTiers.fromProperties(), bus);
+    }
+
+    public ConnectionManager(Gson gson, int queueCapacity, SlowConsumerPolicy slowConsumerPolicy) {
+        this(gson, queueCapacity, slowConsumerPolicy, AudienceTiers.fromProperties(), InProcessGameEventBus.standalone());
+    }
+
+    public ConnectionManager(Gson gson, int queueCapacity, SlowConsumerPolicy slowConsumerPolicy,
+                             AudienceTiers audienceTiers, GameEventBus bus) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Outbound queue capacity must be positive: " + queueCapacity);
+        }
+        this.gson = gson;
+        this.bus = bus;
+        this.audienceTiers = audienceTiers;
+        this.queueCapacity = queueCapacity;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
 
     public void add(int gameID, Session session) {
-        connections.computeIfAbsent(gameID, k -> new ArrayList<>());
-        connections.get(gameID).add(session);
+        add(gameID, session, false);
+    }
+
+    /**
+     * @param deltaUpdates send this session a MoveMessage after each move instead of the whole game
+     */
+    public void add(int gameID, Session session, boolean deltaUpdates) {
+        add(gameID, session, deltaUpdates, false);
+    }
+
+    /**
+     * @param observer the session is watching the game, so may be put in the ticked tier
+     */
+    public void add(int gameID, Session session, boolean deltaUpdates, boolean observer) {
+        Integer previousGame = sessionGames.put(session, gameID);
+        if (previousGame != null) {
+            detach(previousGame, session);
+        }
+
+        audiences.compute(gameID, (id, audience) -> {
+            GameAudience gameAudience = audience != null ? audience : new GameAudience(id);
+            tiers.put(session, gameAudience.join(session, observer));
+            return gameAudience;
+        });
+        if (tiers.get(session) != Tier.TICKED) {
+            connections.computeIfAbsent(gameID, k -> new CopyOnWriteArrayList<>()).addIfAbsent(session);
+        }
+
+        if (deltaUpdates) {
+            deltaSessions.add(session);
+        } else {
+            deltaSessions.remove(session);
+        }
     }
 
     public void remove(int gameID, Session session) {
-        if (connections.containsKey(gameID)) {
-            connections.get(gameID).remove(session);
+        if (sessionGames.remove(session, gameID)) {
+            detach(gameID, session);
+        }
+    }
 
-            if (connections.get(gameID).isEmpty()) {
-                connections.remove(gameID);
-            }
+    private void detach(int gameID, Session session) {
+        connections.computeIfPresent(gameID, (id, gameSessions) -> {
+            gameSessions.remove(session);
+            return gameSessions.isEmpty() ? null : gameSessions;
+        });
+        Tier tier = tiers.remove(session);
+        if (tier != null) {
+            audiences.computeIfPresent(gameID, (id, audience) -> audience.leave(session, tier) ? null : audience);
         }
     }
 
-    public void broadcast(int gameID, ServerMessage notification, Session excludeSession) throws IOException {
+    /**
+     * The address other nodes use for this session, assigned the first time it is asked for
+     */
+    public Connection connectionFor(Session session) {
+        String sessionID = sessionIDs.computeIfAbsent(session, s -> {
+            String id = bus.nodeID() + "/" + nextSessionID.incrementAndGet();
+            sessionsByID.put(id, s);
+            return id;
+        });
+        return new Connection(bus.nodeID(), sessionID);
+    }
+
+    /**
+     * The game this node's session is in, or null
+     */
+    public Integer gameOf(Session session) {
+        return sessionGames.get(session);
+    }
+
+    /**
+     * Adds the session to the game, telling the node that holds it if that is not this one.
+     * Only the game's owner calls this.
+     */
+    public void join(int gameID, Connection connection, boolean deltaUpdates, boolean observer) {
+        Session session = localSession(connection);
+        if (session != null) {
+            add(gameID, session, deltaUpdates, observer);
+        } else if (!isLocal(connection)) {
+            remoteMembers.computeIfAbsent(gameID, k -> ConcurrentHashMap.newKeySet()).add(connection);
+            bus.send(connection.nodeID(), GameEvent.joined(bus.nodeID(), gameID, connection.sessionID(), deltaUpdates, observer));
+        }
+    }
+
+    /**
+     * Removes the session from the game, telling the node that holds it if that is not this one.
+     * Only the game's owner calls this.
+     */
+    public void leave(int gameID, Connection connection) {
+        Session session = localSession(connection);
+        if (session != null) {
+            remove(gameID, session);
+        } else if (!isLocal(connection)) {
+            forget(gameID, connection);
+            bus.send(connection.nodeID(), GameEvent.left(bus.nodeID(), gameID, connection.sessionID()));
+        }
+    }
+
+    /**
+     * Drops a session on another node that has closed
+     */
+    public void forget(int gameID, Connection connection) {
+        remoteMembers.computeIfPresent(gameID, (id, members) -> {
+            members.remove(connection);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    /**
+     * Switches the session to BinaryProtocol frames, used once its CONNECT arrives as a binary frame
+     */
+    public void useBinary(Session session, boolean binary) {
+        if (binary) {
+            binarySessions.add(session);
+        } else {
+            binarySessions.remove(session);
+        }
+    }
+
+    public boolean hasConnections(int gameID) {
+        return audiences.containsKey(gameID) || remoteMembers.containsKey(gameID);
+    }
+
+    /**
+     * Audience counters for every game with sessions on this node
+     */
+    public Map<Integer, Audience> audience() {
+        Map<Integer, Audience> audience = new HashMap<>();
+        audiences.forEach((gameID, gameAudience) -> audience.put(gameID, gameAudience.counts()));
+        return audience;
+    }
+
+    /**
+     * Queues a message for one session. Every message to a session goes through here or
+     * {@link #broadcast} so they arrive in the order they were sent.
+     */
+    public void send(Session session, ServerMessage message) {
+        send(session, new Encoded(message));
+    }
+
+    /**
+     * Queues a message for a session on this node, or passes it to the node holding the session
+     */
+    public void send(Connection connection, ServerMessage message) {
+        send(connection, new Encoded(message));
+    }
+
+    /**
+     * Queues a message as a binary frame whatever the session asked for, to answer a binary
+     * frame that could not be read
+     */
+    public void sendBinary(Session session, ServerMessage message) {
+        if (session.isOpen()) {
+            outbox(session).offer(message.getServerMessageType(), new Encoded(message).binary());
+        }
+    }
+
+    private void send(Connection connection, Encoded encoded) {
+        Session session = localSession(connection);
+        if (session != null) {
+            send(session, encoded);
+        } else if (!isLocal(connection)) {
+            bus.send(connection.nodeID(), GameEvent.direct(bus.nodeID(), connection.sessionID(), encoded.json()));
+        }
+    }
+
+    public void broadcast(int gameID, ServerMessage notification, Connection exclude) {
+        broadcast(gameID, notification, exclude, null);
+    }
+
+    /**
+     * Queues the message for every open session in the game and returns without waiting for the writes.
+     * The message is serialized once per wire format and the same payload is queued for every session.
+     * Nodes holding remote members of the game get the message once each and deliver it themselves.
+     *
+     * @param excludeUsername the user behind exclude, so the message is not replayed to them either
+     */
+    public void broadcast(int gameID, ServerMessage notification, Connection exclude, String excludeUsername) {
+        var encoded = log(gameID).append(sequence -> {
+            notification.setSequence(sequence);
+            return new Logged(new Encoded(notification), null, excludeUsername);
+        }).message();
+        deliver(gameID, encoded, localSession(exclude));
+
+        for (String nodeID : remoteNodes(gameID)) {
+            String excludeSessionID = exclude != null && exclude.nodeID().equals(nodeID) ? exclude.sessionID() : null;
+            bus.send(nodeID, GameEvent.broadcast(bus.nodeID(), gameID, excludeSessionID, encoded.json()));
+        }
+    }
+
+    private void deliver(int gameID, Encoded encoded, Session excludeSession) {
         var gameSessions = connections.get(gameID);
 
         if (gameSessions != null) {
@@ -38,8 +307,7 @@ public class ConnectionManager {
                 if (session.isOpen()) {
                     // dont send the message to  user who performed the action
                     if (!session.equals(excludeSession)) {
-                        String json = new Gson().toJson(notification);
-                        session.getRemote().sendString(json);
+                        send(session, encoded);
                     }
                 } else {
                     removeList.add(session);
@@ -47,8 +315,338 @@ public class ConnectionManager {
             }
 
             for (var session : removeList) {
-                gameSessions.remove(session);
+                remove(gameID, session);
+                closed(session);
+            }
+        }
+        coalesce(gameID, encoded, excludeSession);
+    }
+
+    /**
+     * Sends the state after a move to every session in the game: the move alone to sessions that
+     * asked for deltas and the whole game to the rest. Each form is serialized at most once.
+     */
+    public void broadcastGameUpdate(int gameID, LoadGameMessage loadGame, MoveMessage move) {
+        // one event in two forms, so both carry the same sequence
+        var logged = log(gameID).append(sequence -> {
+            loadGame.setSequence(sequence);
+            move.setSequence(sequence);
+            return new Logged(new Encoded(loadGame), new Encoded(move), null);
+        });
+        var encodedLoadGame = logged.message();
+        var encodedMove = logged.move();
+        deliverGameUpdate(gameID, encodedLoadGame, encodedMove);
+
+        for (String nodeID : remoteNodes(gameID)) {
+            bus.send(nodeID, GameEvent.gameUpdate(bus.nodeID(), gameID, encodedLoadGame.json(), encodedMove.json()));
+        }
+    }
+
+    private void deliverGameUpdate(int gameID, Encoded loadGame, Encoded move) {
+        var gameSessions = connections.get(gameID);
+
+        if (gameSessions != null) {
+            for (var session : gameSessions) {
+                send(session, deltaSessions.contains(session) ? move : loadGame);
+            }
+        }
+        // ticked observers may miss moves between ticks, so they always get the whole game
+        coalesce(gameID, loadGame, null);
+    }
+
+    /**
+     * Sequence of the game's latest event, to stamp on a LOAD_GAME sent to a single session
+     */
+    public long lastSequence(int gameID) {
+        return log(gameID).lastSequence();
+    }
+
+    /**
+     * Sends a resuming session the game's events after the last one it saw. Sessions without
+     * delta updates get only the newest board among them, since each board replaces the last.
+     *
+     * @return false if those events are no longer all logged and the session needs the whole game
+     */
+    public boolean replay(int gameID, Connection connection, String username, long lastSequence, boolean deltaUpdates) {
+        EventLog<Logged> log = logs.get(gameID);
+        List<Logged> missed = log == null ? null : log.since(lastSequence);
+        if (missed == null) {
+            return false;
+        }
+
+        Logged latestUpdate = null;
+        for (Logged event : missed) {
+            if (event.move() != null) {
+                latestUpdate = event;
+            }
+        }
+        for (Logged event : missed) {
+            if (event.move() != null) {
+                if (deltaUpdates) {
+                    send(connection, event.move());
+                } else if (event == latestUpdate) {
+                    send(connection, event.message());
+                }
+            } else if (event.excludeUsername() == null || !Objects.equals(event.excludeUsername(), username)) {
+                send(connection, event.message());
+            }
+        }
+        return true;
+    }
+
+    private EventLog<Logged> log(int gameID) {
+        return logs.computeIfAbsent(gameID, id -> new EventLog<>(resumeEvents));
+    }
+
+    private void coalesce(int gameID, Encoded encoded, Session excludeSession) {
+        GameAudience audience = audiences.get(gameID);
+        if (audience != null) {
+            audience.coalesce(encoded, excludeSession);
+        }
+    }
+
+    /**
+     * Applies an event from a game's owner to the sessions on this node. Events for sessions that
+     * have since closed are dropped.
+     */
+    public void deliver(GameEvent event) {
+        switch (event.kind()) {
+            case JOINED -> {
+                Session session = sessionsByID.get(event.sessionID());
+                if (session != null) {
+                    add(event.gameID(), session, event.deltaUpdates(), event.observer());
+                }
+            }
+            case LEFT -> {
+                Session session = sessionsByID.get(event.sessionID());
+                if (session != null) {
+                    remove(event.gameID(), session);
+                }
+            }
+            case DIRECT -> {
+                Session session = sessionsByID.get(event.sessionID());
+                if (session != null) {
+                    send(session, decode(event.message()));
+                }
+            }
+            case BROADCAST -> deliver(event.gameID(), new Encoded(decode(event.message()), event.message()),
+                    event.sessionID() == null ? null : sessionsByID.get(event.sessionID()));
+            case GAME_UPDATE -> deliverGameUpdate(event.gameID(), new Encoded(decode(event.message()), event.message()),
+                    new Encoded(decode(event.move()), event.move()));
+            default -> throw new IllegalArgumentException("Not a session event: " + event.kind());
+        }
+    }
+
+    /**
+     * Drops the session's outbound queue once the websocket has closed
+     */
+    public void closed(Session session) {
+        String sessionID = sessionIDs.remove(session);
+        if (sessionID != null) {
+            sessionsByID.remove(sessionID);
+        }
+        deltaSessions.remove(session);
+        binarySessions.remove(session);
+        SessionOutbox outbox = outboxes.remove(session);
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    public OutboundMetrics.Snapshot metrics() {
+        return metrics.snapshot();
+    }
+
+    private boolean isLocal(Connection connection) {
+        return connection.nodeID().equals(bus.nodeID());
+    }
+
+    private Session localSession(Connection connection) {
+        return connection != null && isLocal(connection) ? sessionsByID.get(connection.sessionID()) : null;
+    }
+
+    private Set<String> remoteNodes(int gameID) {
+        Set<Connection> members = remoteMembers.get(gameID);
+        if (members == null) {
+            return Set.of();
+        }
+        Set<String> nodeIDs = new HashSet<>();
+        for (Connection member : members) {
+            nodeIDs.add(member.nodeID());
+        }
+        return nodeIDs;
+    }
+
+    private ServerMessage decode(String json) {
+        return gson.fromJson(json, ServerMessage.class);
+    }
+
+    private SessionOutbox outbox(Session session) {
+        return outboxes.computeIfAbsent(session, s -> new SessionOutbox(s, queueCapacity, slowConsumerPolicy, metrics));
+    }
+
+    private void send(Session session, Encoded encoded) {
+        if (!session.isOpen()) {
+            return;
+        }
+        SessionOutbox outbox = outbox(session);
+        ServerMessage.ServerMessageType type = encoded.message.getServerMessageType();
+        if (binarySessions.contains(session)) {
+            outbox.offer(type, encoded.binary());
+        } else {
+            outbox.offer(type, encoded.json());
+        }
+    }
+
+    /**
+     * @param players          sessions playing the game
+     * @param observers        observers sent every message as it happens
+     * @param tickedObservers  observers sent the latest state once per tick
+     * @param coalescedUpdates boards replaced by a newer one before a tick sent them
+     */
+    public record Audience(int players, int observers, int tickedObservers, long coalescedUpdates) {
+    }
+
+    private enum Tier { PLAYER, OBSERVER, TICKED }
+
+    /**
+     * A logged broadcast: the message, plus the MOVE form of a game update, plus the user it was
+     * not sent to
+     */
+    private record Logged(Encoded message, Encoded move, String excludeUsername) {
+    }
+
+    /**
+     * A message waiting for the next tick, and the session it is not for
+     */
+    private record Pending(Encoded encoded, Session excludeSession) {
+    }
+
+    /**
+     * One game's audience on this node, plus what its ticked observers have waiting
+     */
+    private final class GameAudience {
+        private final int gameID;
+        private final Set<Session> ticked = ConcurrentHashMap.newKeySet();
+        private int players;
+        private int observers;
+        private long coalescedUpdates;
+
+        private Encoded pendingGame;
+        private final List<Pending> pendingMessages = new ArrayList<>();
+        private boolean flushScheduled;
+
+        private GameAudience(int gameID) {
+            this.gameID = gameID;
+        }
+
+        private synchronized Tier join(Session session, boolean observer) {
+            if (!observer) {
+                players++;
+                return Tier.PLAYER;
+            }
+            if (observers < audienceTiers.immediateObservers()) {
+                observers++;
+                return Tier.OBSERVER;
+            }
+            ticked.add(session);
+            return Tier.TICKED;
+        }
+
+        /**
+         * @return true once nobody is left
+         */
+        private synchronized boolean leave(Session session, Tier tier) {
+            switch (tier) {
+                case PLAYER -> players--;
+                case OBSERVER -> observers--;
+                case TICKED -> ticked.remove(session);
+            }
+            return players == 0 && observers == 0 && ticked.isEmpty();
+        }
+
+        private synchronized void coalesce(Encoded encoded, Session excludeSession) {
+            if (ticked.isEmpty()) {
+                return;
+            }
+            if (encoded.message.getServerMessageType() == ServerMessage.ServerMessageType.LOAD_GAME) {
+                if (pendingGame != null) {
+                    coalescedUpdates++;
+                }
+                pendingGame = encoded;
+            } else {
+                pendingMessages.add(new Pending(encoded, excludeSession));
+            }
+            if (!flushScheduled) {
+                flushScheduled = true;
+                TICKER.schedule(this::flush, audienceTiers.tick().toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flush() {
+            Encoded game;
+            List<Pending> messages;
+            synchronized (this) {
+                game = pendingGame;
+                messages = List.copyOf(pendingMessages);
+                pendingGame = null;
+                pendingMessages.clear();
+                flushScheduled = false;
+            }
+
+            var removeList = new ArrayList<Session>();
+            for (Session session : ticked) {
+                if (!session.isOpen()) {
+                    removeList.add(session);
+                    continue;
+                }
+                if (game != null) {
+                    send(session, game);
+                }
+                for (Pending message : messages) {
+                    if (!session.equals(message.excludeSession())) {
+                        send(session, message.encoded());
+                    }
+                }
+            }
+
+            for (var session : removeList) {
+                remove(gameID, session);
+                closed(session);
             }
         }
+
+        private synchronized Audience counts() {
+            return new Audience(players, observers, ticked.size(), coalescedUpdates);
+        }
+    }
+
+    /**
+     * A message plus its JSON and binary forms, both made once when it is created. The same
+     * instance is sent from the game actor and the ticker, so it is never changed afterwards.
+     */
+    private final class Encoded {
+        private final ServerMessage message;
+        private final String json;
+        private final ByteBuffer binary;
+
+        private Encoded(ServerMessage message) {
+            this(message, gson.toJson(message));
+        }
+
+        private Encoded(ServerMessage message, String json) {
+            this.message = message;
+            this.json = json;
+            this.binary = ByteBuffer.wrap(BinaryProtocol.encodeMessage(message));
+        }
+
+        private String json() {
+            return json;
+        }
+
+        // a buffer of its own for each send, so no two writes share a position
+        private ByteBuffer binary() {
+            return binary.duplicate();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package server.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * The most recent events of one game in a fixed size ring, numbered in the order they were
+ * sent, so a client that reconnects can be sent just the ones it missed. Numbering starts from
+ * the log's creation time, so a sequence handed out by a log that has since been dropped, or by
+ * an earlier run of the server, never looks recent to this one.
+ */
+class EventLog<T> {
+
+    private final Object[] ring;
+    private final long startSequence;
+    private long lastSequence;
+
+    EventLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Event log capacity must be positive: " + capacity);
+        }
+        ring = new Object[capacity];
+        startSequence = System.currentTimeMillis() << 20;
+        lastSequence = startSequence;
+    }
+
+    /**
+     * Numbers the next event and stores what the factory builds for that number, overwriting the
+     * oldest event once the ring is full
+     */
+    synchronized T append(LongFunction<T> factory) {
+        long sequence = lastSequence + 1;
+        T event = factory.apply(sequence);
+        ring[index(sequence)] = event;
+        lastSequence = sequence;
+        return event;
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * The events after the given sequence, oldest first
+     *
+     * @return null if some of them have been overwritten or the sequence did not come from this log
+     */
+    @SuppressWarnings("unchecked")
+    synchronized List<T> since(long sequence) {
+        if (sequence < startSequence || sequence > lastSequence || lastSequence - sequence > ring.length) {
+            return null;
+        }
+        List<T> events = new ArrayList<>((int) (lastSequence - sequence));
+        for (long next = sequence + 1; next <= lastSequence; next++) {
+            events.add((T) ring[index(next)]);
+        }
+        return events;
+    }
+
+    private int index(long sequence) {
+        return (int) Math.floorMod(sequence, (long) ring.length);
+    }
+}
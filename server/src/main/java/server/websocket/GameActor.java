@@ -0,0 +1,109 @@
+package server.websocket;
+
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import model.GameData;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs every websocket command for one game, one at a time and in arrival order, while commands
+ * for other games run in parallel on their own actors. The game is loaded once and then kept
+ * here between moves, so only the actor's own tasks may touch it.
+ */
+public class GameActor {
+
+    private final int gameID;
+    private final Executor executor;
+    private final Queue<Runnable> mailbox = new ArrayDeque<>();
+
+    private boolean scheduled;
+    private boolean retired;
+    private GameData gameData;
+
+    public GameActor(int gameID, Executor executor) {
+        this.gameID = gameID;
+        this.executor = executor;
+    }
+
+    public int getGameID() {
+        return gameID;
+    }
+
+    /**
+     * Queues a task behind everything already sent to this game
+     *
+     * @return false if the actor has been retired and the caller needs a new one
+     */
+    public synchronized boolean submit(Runnable task) {
+        if (retired) {
+            return false;
+        }
+        mailbox.add(task);
+        if (!scheduled) {
+            scheduled = true;
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the resident game, reading it from the database the first time
+     */
+    public GameData game(DataAccess dataAccess) throws DataAccessException {
+        if (gameData == null) {
+            gameData = dataAccess.getGame(gameID);
+        }
+        return gameData;
+    }
+
+    /**
+     * Rereads the game, picking up players that joined over HTTP since it was loaded
+     */
+    public GameData reload(DataAccess dataAccess) throws DataAccessException {
+        gameData = dataAccess.getGame(gameID);
+        return gameData;
+    }
+
+    public void replace(GameData gameData) {
+        this.gameData = gameData;
+    }
+
+    /**
+     * Drops the resident game so the next command reads it again, used when a command fails
+     * part way through and the copy here may no longer match what was stored
+     */
+    public void invalidate() {
+        gameData = null;
+    }
+
+    /**
+     * Stops accepting tasks if nothing else is waiting. Only call from one of this actor's own tasks.
+     */
+    public synchronized boolean retireIfIdle() {
+        if (mailbox.isEmpty()) {
+            retired = true;
+        }
+        return retired;
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = mailbox.poll();
+                if (task == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Game " + gameID + " actor error: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package server.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by every session's outbound queue
+ */
+public class OutboundMetrics {
+
+    private final AtomicLong queuedMessages = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder coalescedMessages = new LongAdder();
+    private final LongAdder failedSends = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    private final LongAdder totalSendNanos = new LongAdder();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    void queued(int sessionDepth) {
+        queuedMessages.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(sessionDepth, Math::max);
+    }
+
+    void dequeued(int count) {
+        queuedMessages.addAndGet(-count);
+    }
+
+    void sent(long latencyNanos) {
+        sentMessages.increment();
+        totalSendNanos.add(latencyNanos);
+        maxSendNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    void dropped() {
+        droppedMessages.increment();
+    }
+
+    void coalesced() {
+        coalescedMessages.increment();
+    }
+
+    void failed() {
+        failedSends.increment();
+    }
+
+    void disconnected() {
+        slowConsumerDisconnects.increment();
+    }
+
+    public Snapshot snapshot() {
+        long sent = sentMessages.sum();
+        long totalNanos = totalSendNanos.sum();
+        return new Snapshot(queuedMessages.get(), maxQueueDepth.get(), sent, droppedMessages.sum(),
+                coalescedMessages.sum(), failedSends.sum(), slowConsumerDisconnects.sum(),
+                sent == 0 ? 0 : totalNanos / sent / 1_000, maxSendNanos.get() / 1_000);
+    }
+
+    /**
+     * Send latency is measured from the moment a message is queued until the write completes
+     */
+    public record Snapshot(long queuedMessages, long maxQueueDepth, long sentMessages, long droppedMessages,
+                           long coalescedMessages, long failedSends, long slowConsumerDisconnects,
+                           long averageSendMicros, long maxSendMicros) {
+    }
+}
@@ -0,0 +1,91 @@
+package server.websocket;
+
+import model.AuthData;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who each websocket session authenticated as when it joined its game, kept by the game's owner
+ * so the session's later commands need no trip to the database to find out. A command is taken
+ * as the bound user's only while it carries the same token and names the same game. Logging out
+ * revokes a token's bindings, and a token revoked in the last {@value #REMEMBERED_REVOCATIONS}
+ * logouts cannot be bound again, so a CONNECT that read the token just before its logout does
+ * not outlive it.
+ */
+class SessionBindings {
+    static final int REMEMBERED_REVOCATIONS = 4096;
+
+    /**
+     * @param role WHITE or BLACK for a player, OBSERVER otherwise
+     */
+    record Binding(AuthData principal, int gameID, String role) {
+    }
+
+    private final ConcurrentHashMap<Connection, Binding> bindings = new ConcurrentHashMap<>();
+    private final Map<String, Set<Connection>> byToken = new ConcurrentHashMap<>();
+    private final Set<String> revoked = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > REMEMBERED_REVOCATIONS;
+        }
+    });
+
+    /**
+     * The user the session is bound to, if the command carries its token and is for its game
+     *
+     * @return null if the command has to be authenticated against the store
+     */
+    AuthData principal(Connection connection, String authToken, int gameID) {
+        Binding binding = bindings.get(connection);
+        if (binding == null || binding.gameID() != gameID || !binding.principal().authToken().equals(authToken)) {
+            return null;
+        }
+        return binding.principal();
+    }
+
+    synchronized void bind(Connection connection, AuthData principal, int gameID, String role) {
+        if (revoked.contains(principal.authToken())) {
+            return;
+        }
+        unbind(connection);
+        bindings.put(connection, new Binding(principal, gameID, role));
+        byToken.computeIfAbsent(principal.authToken(), token -> ConcurrentHashMap.newKeySet()).add(connection);
+    }
+
+    synchronized void unbind(Connection connection) {
+        Binding binding = bindings.remove(connection);
+        if (binding != null) {
+            byToken.computeIfPresent(binding.principal().authToken(), (token, connections) -> {
+                connections.remove(connection);
+                return connections.isEmpty() ? null : connections;
+            });
+        }
+    }
+
+    /**
+     * Drops every session bound with the token, which has been logged out
+     */
+    synchronized void revoke(String authToken) {
+        revoked.add(authToken);
+        Set<Connection> connections = byToken.remove(authToken);
+        if (connections != null) {
+            connections.forEach(bindings::remove);
+        }
+    }
+
+    /**
+     * Drops every binding, for when the store has been cleared
+     */
+    synchronized void clear() {
+        bindings.clear();
+        byToken.clear();
+    }
+
+    Binding bindingOf(Connection connection) {
+        return bindings.get(connection);
+    }
+}
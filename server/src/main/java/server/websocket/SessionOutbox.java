@@ -0,0 +1,168 @@
+package server.websocket;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import websocket.messages.ServerMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Bounded queue of messages waiting to be written to one session. Queuing never blocks: at most
+ * one asynchronous write is in flight and its completion starts the next, so messages reach the
+ * client in the order they were queued while the caller moves straight on.
+ */
+public class SessionOutbox {
+
+    private final Session session;
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final OutboundMetrics metrics;
+    private final ArrayDeque<Outbound> queue = new ArrayDeque<>();
+
+    private boolean writing;
+    private boolean closed;
+
+    public SessionOutbox(Session session, int capacity, SlowConsumerPolicy policy, OutboundMetrics metrics) {
+        this.session = session;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    public void offer(ServerMessage.ServerMessageType type, String json) {
+        offer(new Outbound(type, json, null, System.nanoTime()));
+    }
+
+    /**
+     * Queues a binary frame. The buffer may be shared between sessions; each write uses its own view.
+     */
+    public void offer(ServerMessage.ServerMessageType type, ByteBuffer frame) {
+        offer(new Outbound(type, null, frame, System.nanoTime()));
+    }
+
+    private void offer(Outbound message) {
+        ServerMessage.ServerMessageType type = message.type();
+        Outbound next = null;
+        boolean disconnect = false;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            if (policy == SlowConsumerPolicy.COALESCE && type == ServerMessage.ServerMessageType.LOAD_GAME
+                    && removeOldest(ServerMessage.ServerMessageType.LOAD_GAME)) {
+                metrics.coalesced();
+            }
+
+            if (queue.size() >= capacity) {
+                if (policy == SlowConsumerPolicy.DROP_OLDEST_LOAD_GAME && removeOldest(ServerMessage.ServerMessageType.LOAD_GAME)) {
+                    metrics.dropped();
+                } else {
+                    disconnect = true;
+                }
+            }
+
+            if (disconnect) {
+                discardQueue();
+            } else {
+                queue.add(message);
+                metrics.queued(queue.size());
+                if (!writing) {
+                    writing = true;
+                    next = poll();
+                }
+            }
+        }
+
+        if (disconnect) {
+            metrics.disconnected();
+            session.close(StatusCode.POLICY_VIOLATION, "Client is not keeping up with game updates");
+        } else if (next != null) {
+            write(next);
+        }
+    }
+
+    /**
+     * Throws away anything still queued once the session has closed
+     */
+    public synchronized void close() {
+        discardQueue();
+    }
+
+    private void write(Outbound message) {
+        if (!session.isOpen()) {
+            close();
+            return;
+        }
+
+        WriteCallback callback = new WriteCallback() {
+            @Override
+            public void writeSuccess() {
+                metrics.sent(System.nanoTime() - message.queuedAt());
+                writeNext();
+            }
+
+            @Override
+            public void writeFailed(Throwable cause) {
+                metrics.failed();
+                close();
+            }
+        };
+
+        try {
+            if (message.text() != null) {
+                session.getRemote().sendString(message.text(), callback);
+            } else {
+                session.getRemote().sendBytes(message.binary().asReadOnlyBuffer(), callback);
+            }
+        } catch (RuntimeException e) {
+            metrics.failed();
+            close();
+        }
+    }
+
+    private void writeNext() {
+        Outbound next;
+        synchronized (this) {
+            next = poll();
+            if (next == null) {
+                writing = false;
+                return;
+            }
+        }
+        write(next);
+    }
+
+    private Outbound poll() {
+        Outbound next = queue.poll();
+        if (next != null) {
+            metrics.dequeued(1);
+        }
+        return next;
+    }
+
+    private boolean removeOldest(ServerMessage.ServerMessageType type) {
+        Iterator<Outbound> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().type() == type) {
+                iterator.remove();
+                metrics.dequeued(1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void discardQueue() {
+        closed = true;
+        metrics.dequeued(queue.size());
+        queue.clear();
+    }
+
+    private record Outbound(ServerMessage.ServerMessageType type, String text, ByteBuffer binary, long queuedAt) {
+    }
+}
@@ -0,0 +1,21 @@
+package server.websocket;
+
+/**
+ * What a session's outbound queue does when it is full because the client is not reading fast enough
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Drop the oldest board update still waiting, since a newer one replaces it. Disconnects if no
+     * board update is waiting.
+     */
+    DROP_OLDEST_LOAD_GAME,
+    /**
+     * Keep at most one board update waiting at any time, replacing it with each newer one.
+     * Disconnects if the queue is still full.
+     */
+    COALESCE,
+    /**
+     * Close the session as soon as the queue is full
+     */
+    DISCONNECT
+}
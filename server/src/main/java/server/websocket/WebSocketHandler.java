@@ -1,49 +1,100 @@
 package server.websocket;
 
 import chess.ChessGame;
+import chess.ChessGameCodec;
 import chess.ChessMove;
 import chess.InvalidMoveException;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
-import dataaccess.SqlDataAccess;
+import dataaccess.GameConflictException;
+import io.javalin.websocket.WsBinaryMessageContext;
+import io.javalin.websocket.WsBinaryMessageHandler;
 import io.javalin.websocket.WsCloseContext;
 import io.javalin.websocket.WsCloseHandler;
 import io.javalin.websocket.WsConnectContext;
 import io.javalin.websocket.WsConnectHandler;
 import io.javalin.websocket.WsMessageContext;
 import io.javalin.websocket.WsMessageHandler;
+import model.AuthData;
 import model.GameData;
-import model.UserData;
+import model.gameservicerecords.LobbyEvent;
 import org.jetbrains.annotations.NotNull;
+import server.cluster.ConsistentHashRing;
+import server.cluster.GameEvent;
+import server.cluster.GameEventBus;
+import server.cluster.InProcessGameEventBus;
+import service.ConflictRetry;
 import service.GameService;
 import service.UserService;
+import websocket.BinaryProtocol;
+import websocket.WebSocketJson;
 import websocket.commands.*;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
 import websocket.messages.NotificationMessage;
 import websocket.messages.ServerMessage;
 
 import org.eclipse.jetty.websocket.api.Session;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
-
-public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsCloseHandler {
-    private final Gson gson = new Gson();
-    private final ConnectionManager connectionManager = new ConnectionManager();
-
-    private final Map<Session, Integer> sessionGameMap = new ConcurrentHashMap<>();
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs websocket commands on the actor of the game they are for. With several server nodes on a
+ * GameEventBus each game is owned by one node, picked by a ConsistentHashRing over the bus's
+ * nodes; commands for games owned elsewhere are forwarded to the owner, whose actor answers the
+ * sender through the bus.
+ * <p>
+ * A session's CONNECT or RESUME is authenticated against the store and binds the session to its
+ * user and game in {@link SessionBindings}; the session's later commands for that game with the
+ * same token are taken as that user's without asking the store again, until the token is logged
+ * out on any node.
+ */
+public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsBinaryMessageHandler, WsCloseHandler, AutoCloseable {
+    private static final String OBSERVER = "OBSERVER";
+    private static final Duration ACTOR_SHUTDOWN_WAIT = Duration.ofSeconds(5);
+
+    private final Gson gson = WebSocketJson.newGson();
+    private final GameEventBus bus;
+    private final ConnectionManager connectionManager;
+    private final SessionBindings sessionBindings = new SessionBindings();
+    private volatile ConsistentHashRing ring;
+
+    // one actor per game with live connections, each running its commands serially on virtual threads
+    private final Map<Integer, GameActor> actors = new ConcurrentHashMap<>();
+    private final ExecutorService actorExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     private UserService userService;
     private GameService gameService;
-    private final SqlDataAccess dataAccess;
+    private final DataAccess dataAccess;
+
+    public WebSocketHandler(UserService userService, GameService gameService, DataAccess dataAccess) {
+        this(userService, gameService, dataAccess, InProcessGameEventBus.standalone());
+    }
 
-    public WebSocketHandler(UserService userService, GameService gameService, SqlDataAccess dataAccess) {
+    public WebSocketHandler(UserService userService, GameService gameService, DataAccess dataAccess, GameEventBus bus) {
         this.userService = userService;
         this.gameService = gameService;
         this.dataAccess = dataAccess;
+        this.bus = bus;
+        this.connectionManager = new ConnectionManager(gson, bus);
+        bus.subscribe(this::handleEvent);
+        gameService.lobby().onLocalChange(this::announceLobbyChange);
+        gameService.lobby().watch(change -> {
+            if (change.event().type() == LobbyEvent.Type.CLEARED) {
+                sessionBindings.clear();
+            }
+        });
+        userService.onLogout(this::loggedOut);
     }
 
 
@@ -56,130 +107,284 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
     @Override
     public void handleMessage(@NotNull WsMessageContext ctx) {
         try {
-            UserGameCommand command = gson.fromJson(ctx.message(), UserGameCommand.class);
+            handleCommand(ctx.session, parseCommand(ctx.message()), false);
+        } catch (JsonParseException e) {
+            ServerMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "Error: bad request: " + e.getMessage());
+            connectionManager.send(connectionManager.connectionFor(ctx.session), errorMessage);
+        } catch (Exception e) {
+            System.err.println("WebSocket Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Commands sent as BinaryProtocol frames. A session whose CONNECT arrives this way gets
+     * binary frames back instead of JSON.
+     */
+    @Override
+    public void handleBinaryMessage(@NotNull WsBinaryMessageContext ctx) {
+        UserGameCommand command;
+        try {
+            command = BinaryProtocol.decodeCommand(ByteBuffer.wrap(ctx.data(), ctx.offset(), ctx.length()));
+        } catch (IllegalArgumentException e) {
+            // answered in binary, as a client sending binary frames expects them back
+            ServerMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "Error: bad request: " + e.getMessage());
+            connectionManager.sendBinary(ctx.session, errorMessage);
+            return;
+        }
+
+        try {
+            handleCommand(ctx.session, command, true);
+        } catch (Exception e) {
+            System.err.println("WebSocket Error: " + e.getMessage());
+        }
+    }
+
+    private void handleCommand(Session session, UserGameCommand command, boolean binary) {
+        if (command.getCommandType() == UserGameCommand.CommandType.CONNECT) {
+            connectionManager.useBinary(session, binary);
+        }
+
+        Connection connection = connectionManager.connectionFor(session);
+        int gameID = command.getGameID();
+        String owner = ownerOf(gameID);
+        if (owner.equals(bus.nodeID())) {
+            dispatch(gameID, actor -> runCommand(actor, connection, command));
+        } else {
+            bus.send(owner, GameEvent.command(bus.nodeID(), gameID, connection.sessionID(), gson.toJson(command, UserGameCommand.class)));
+        }
+    }
+
+    private void runCommand(GameActor actor, Connection connection, UserGameCommand command) throws Exception {
+        AuthData principal;
+        try {
+            principal = authenticate(connection, command);
+        } catch (Exception e) {
+            ServerMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, e.getMessage());
+            connectionManager.send(connection, errorMessage);
+            throw new InvalidMoveException(e.getMessage());
+        }
 
-            switch (command.getCommandType()) {
-                case CONNECT -> connect(ctx.session, ctx.message());
-                case MAKE_MOVE -> makeMove(ctx.session, ctx.message());
-                case LEAVE -> leave(ctx.session, ctx.message());
-                case RESIGN -> resign(ctx.session, ctx.message());
+        switch (command.getCommandType()) {
+            case CONNECT -> connect(actor, connection, principal, (JoinGameCommand) command);
+            case MAKE_MOVE -> makeMove(actor, connection, principal, (MakeMoveCommand) command);
+            case LEAVE -> leave(actor, connection, principal, (LeaveGameCommand) command);
+            case RESIGN -> resign(actor, connection, principal, (ReseignGameCommand) command);
+            case RESYNC -> resync(actor, connection, principal, command);
+            case RESUME -> resume(actor, connection, principal, (ResumeGameCommand) command);
+        }
+    }
+
+    /**
+     * Events from other nodes: forwarded commands and closes for games this node owns, and
+     * messages for this node's sessions in games owned elsewhere
+     */
+    private void handleEvent(GameEvent event) {
+        try {
+            Connection connection = new Connection(event.originNode(), event.sessionID());
+            switch (event.kind()) {
+                case COMMAND -> {
+                    UserGameCommand command = parseCommand(event.message());
+                    dispatch(event.gameID(), actor -> runCommand(actor, connection, command));
+                }
+                case CLOSED -> dispatch(event.gameID(), actor -> {
+                        sessionBindings.unbind(connection);
+                        connectionManager.forget(event.gameID(), connection);
+                    });
+                case LOBBY_CHANGED -> gameService.lobby().changedElsewhere(gson.fromJson(event.message(), LobbyEvent.class));
+                case LOGGED_OUT -> sessionBindings.revoke(event.message());
+                default -> connectionManager.deliver(event);
             }
         } catch (Exception e) {
             System.err.println("WebSocket Error: " + e.getMessage());
         }
     }
 
+    private void announceLobbyChange(LobbyEvent lobbyEvent) {
+        String json = gson.toJson(lobbyEvent);
+        for (String nodeID : bus.nodeIDs()) {
+            if (!nodeID.equals(bus.nodeID())) {
+                bus.send(nodeID, GameEvent.lobbyChanged(bus.nodeID(), json));
+            }
+        }
+    }
+
+    private void loggedOut(String authToken) {
+        sessionBindings.revoke(authToken);
+        for (String nodeID : bus.nodeIDs()) {
+            if (!nodeID.equals(bus.nodeID())) {
+                bus.send(nodeID, GameEvent.loggedOut(bus.nodeID(), authToken));
+            }
+        }
+    }
+
+    private String ownerOf(int gameID) {
+        ConsistentHashRing current = ring;
+        var nodeIDs = bus.nodeIDs();
+        if (current == null || !current.nodeIDs().equals(nodeIDs)) {
+            current = new ConsistentHashRing(nodeIDs);
+            ring = current;
+        }
+        return current.ownerOf(gameID);
+    }
+
+    // decodes straight into the concrete command class in one pass, see WebSocketJson
+    private UserGameCommand parseCommand(String message) {
+        return gson.fromJson(message, UserGameCommand.class);
+    }
+
     @Override
     public void handleClose(@NotNull WsCloseContext ctx) {
-        Integer gameID = sessionGameMap.get(ctx.session);
+        Session session = ctx.session;
+        Connection connection = connectionManager.connectionFor(session);
+        Integer gameID = connectionManager.gameOf(session);
+        connectionManager.closed(session);
         if (gameID != null) {
-            connectionManager.remove(gameID, ctx.session);
-            sessionGameMap.remove(ctx.session);
+            String owner = ownerOf(gameID);
+            if (owner.equals(bus.nodeID())) {
+                dispatch(gameID, actor -> {
+                    sessionBindings.unbind(connection);
+                    connectionManager.remove(gameID, session);
+                });
+            } else {
+                connectionManager.remove(gameID, session);
+                bus.send(owner, GameEvent.closed(bus.nodeID(), gameID, connection.sessionID()));
+            }
         }
         System.out.println("Websocket closed");
     }
 
-    private void connect(Session session, String jsonMessage) throws Exception {
-        JoinGameCommand command = gson.fromJson(jsonMessage, JoinGameCommand.class);
+    /**
+     * Hands the work to the game's actor, creating one if the game has none. An actor retires
+     * once its game has no connections left, after which a fresh one is created on demand.
+     */
+    private void dispatch(int gameID, GameTask task) {
+        while (true) {
+            GameActor actor = actors.computeIfAbsent(gameID, id -> new GameActor(id, actorExecutor));
+            if (actor.submit(() -> runOnActor(actor, task))) {
+                return;
+            }
+            actors.remove(gameID, actor);
+        }
+    }
 
+    private void runOnActor(GameActor actor, GameTask task) {
         try {
-            verifyInput(session, command);
+            task.run(actor);
         } catch (Exception e) {
-            ServerMessage connectErrorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, e.getMessage());
-            session.getRemote().sendString(gson.toJson(connectErrorMessage));
-            throw new InvalidMoveException(e.getMessage());
+            actor.invalidate();
+            System.err.println("WebSocket Error: " + e.getMessage());
+        } finally {
+            if (!connectionManager.hasConnections(actor.getGameID()) && actor.retireIfIdle()) {
+                actors.remove(actor.getGameID(), actor);
+            }
         }
+    }
 
-        connectionManager.add(command.getGameID(), session);
-        sessionGameMap.put(session, command.getGameID());
+    private void connect(GameActor actor, Connection connection, AuthData principal, JoinGameCommand command) throws Exception {
 
-        var game = dataAccess.getGame(command.getGameID());
+        var game = actor.reload(dataAccess);
 
-        var user = dataAccess.getUser(dataAccess.getAuthdataFromAuthtoken(command.getAuthToken()).username());
+        String role = roleOf(game, principal);
+        connectionManager.join(command.getGameID(), connection, command.wantsDeltaUpdates(), role.equals(OBSERVER));
+        sessionBindings.bind(connection, principal, command.getGameID(), role);
 
         //respond to inital person
         ServerMessage loadGameMessage = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, game);
-        session.getRemote().sendString(gson.toJson(loadGameMessage));
+        loadGameMessage.setSequence(connectionManager.lastSequence(command.getGameID()));
+        connectionManager.send(connection, loadGameMessage);
 
         //notify other people in game
-        var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, user.username() + " joined as " + command.getRole());
-        connectionManager.broadcast(command.getGameID(), notification, session);
+        var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, principal.username() + " joined as " + command.getRole());
+        connectionManager.broadcast(command.getGameID(), notification, connection, principal.username());
     }
 
-    private void makeMove(Session session, String jsonMessage) throws Exception {
-        MakeMoveCommand command = gson.fromJson(jsonMessage, MakeMoveCommand.class);
-
-        try {
-            verifyInput(session, command);
-        } catch (Exception e) {
-            ServerMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, e.getMessage());
-            session.getRemote().sendString(gson.toJson(errorMessage));
-            throw new InvalidMoveException(e.getMessage());
-        }
+    private void makeMove(GameActor actor, Connection connection, AuthData principal, MakeMoveCommand command) throws Exception {
 
-        var gameData = dataAccess.getGame(command.getGameID());
-        var user = dataAccess.getUser(dataAccess.getAuthdataFromAuthtoken(command.getAuthToken()).username());
+        var gameData = actor.game(dataAccess);
 
         try {
-            validateMove(gameData, user, command.getMove());
+            validateMove(gameData, principal, command.getMove());
         } catch (InvalidMoveException e) {
             ServerMessage moveErrorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, e.getMessage());
-            session.getRemote().sendString(gson.toJson(moveErrorMessage));
+            connectionManager.send(connection, moveErrorMessage);
             throw new InvalidMoveException(e.getMessage());
         }
 
-        announceGameStatus(command, gameData, session);
-        dataAccess.updateGame(gameData);
+        GameStatus status = gameStatus(command, gameData, principal);
+        try {
+            dataAccess.appendMove(gameData, command.getMove());
+        } catch (DataAccessException e) {
+            // the copy here has the move but the store never took it, so nobody is shown it
+            actor.invalidate();
+            connectionManager.send(connection, new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "Error: move not saved: " + e.getMessage()));
+            return;
+        }
+        announceGameStatus(command, gameData, connection, principal, status);
+        // moves are refused once a game is over, so this one ended it
+        if (gameData.game().isGameOver()) {
+            gameService.lobby().changed(LobbyEvent.of(LobbyEvent.Type.GAME_FINISHED, gameData));
+        }
     }
 
-    private void announceGameStatus(MakeMoveCommand command, GameData gameData, Session session) throws IOException, DataAccessException {
+    /**
+     * Works out what the move did, marking the game over if it ended it, before the move is stored
+     */
+    private GameStatus gameStatus(MakeMoveCommand command, GameData gameData, AuthData principal) {
         var game = gameData.game();
-        var user = dataAccess.getUser(dataAccess.getAuthdataFromAuthtoken(command.getAuthToken()).username());
         var blackUsername = gameData.blackUsername();
         var whiteUsername = gameData.whiteUsername();
-        var moveMessage = user.username() + " moved: " + command.getMove().toString() + "\n";
+        var moveMessage = principal.username() + " moved: " + command.getMove().toString() + "\n";
 
 
-        LoadGameMessage loadGame = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, gameData);
-        connectionManager.broadcast(command.getGameID(), loadGame, null);
-
+        MoveMessage.GameStatus status;
+        String notificationText;
 
         if (game.isInCheck(ChessGame.TeamColor.BLACK)) {
             if (game.isInCheckmate(ChessGame.TeamColor.BLACK)) {
-                var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                        moveMessage + blackUsername + " is in checkmate, " + whiteUsername + " wins.");
-                connectionManager.broadcast(command.getGameID(), notification, session);
-                game.setGameOver();
+                status = MoveMessage.GameStatus.CHECKMATE;
+                notificationText = moveMessage + blackUsername + " is in checkmate, " + whiteUsername + " wins.";
             } else {
-                var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                        moveMessage + blackUsername + " is in check");
-                connectionManager.broadcast(command.getGameID(), notification, session);
+                status = MoveMessage.GameStatus.CHECK;
+                notificationText = moveMessage + blackUsername + " is in check";
             }
         } else if (game.isInCheck(ChessGame.TeamColor.WHITE)) {
             if (game.isInCheckmate(ChessGame.TeamColor.WHITE)) {
-                var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                        moveMessage + whiteUsername + " is in checkmate, " + blackUsername + " wins.");
-                connectionManager.broadcast(command.getGameID(), notification, session);
-                game.setGameOver();
+                status = MoveMessage.GameStatus.CHECKMATE;
+                notificationText = moveMessage + whiteUsername + " is in checkmate, " + blackUsername + " wins.";
             } else {
-                var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                        moveMessage + whiteUsername + " is in check");
-                connectionManager.broadcast(command.getGameID(), notification, session);
+                status = MoveMessage.GameStatus.CHECK;
+                notificationText = moveMessage + whiteUsername + " is in check";
             }
         } else if (game.isInStalemate(ChessGame.TeamColor.BLACK) || game.isInStalemate(ChessGame.TeamColor.WHITE)) {
-            var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                    moveMessage + "The game is a stalemate and has ended in a draw");
-            connectionManager.broadcast(command.getGameID(), notification, session);
-            game.setGameOver();
+            status = MoveMessage.GameStatus.STALEMATE;
+            notificationText = moveMessage + "The game is a stalemate and has ended in a draw";
         } else {
-            var moveNotification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, moveMessage);
-            connectionManager.broadcast(command.getGameID(), moveNotification, session);
+            status = MoveMessage.GameStatus.IN_PROGRESS;
+            notificationText = moveMessage;
+        }
+
+        if (status == MoveMessage.GameStatus.CHECKMATE || status == MoveMessage.GameStatus.STALEMATE) {
+            game.setGameOver();
         }
+        return new GameStatus(status, notificationText);
+    }
+
+    private void announceGameStatus(MakeMoveCommand command, GameData gameData, Connection connection, AuthData principal, GameStatus status) {
+        var game = gameData.game();
+        var move = new MoveMessage(command.getMove(), game.getPly(), ChessGameCodec.positionHash(game), status.status());
 
+        // full game for most clients, just the move for the ones that asked for deltas
+        LoadGameMessage loadGame = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, gameData);
+        connectionManager.broadcastGameUpdate(command.getGameID(), loadGame, move);
 
+        var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, status.notificationText());
+        connectionManager.broadcast(command.getGameID(), notification, connection, principal.username());
     }
 
-    private void validateMove(GameData gameData, UserData user, ChessMove move) throws InvalidMoveException {
+    private record GameStatus(MoveMessage.GameStatus status, String notificationText) {
+    }
+
+    private void validateMove(GameData gameData, AuthData principal, ChessMove move) throws InvalidMoveException {
         ChessGame.TeamColor movedPieceColor = gameData.game().getBoard().getPiece(move.getStartPosition()).getTeamColor();
         ChessGame game = gameData.game();
         ChessGame gameAfterMove = game.deepCopy();
@@ -189,12 +394,12 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
             throw new InvalidMoveException("Game is over, No further moves may be played");
         }
         if (movedPieceColor == ChessGame.TeamColor.BLACK) {
-            if (!Objects.equals(user.username(), gameData.blackUsername())) {
+            if (!Objects.equals(principal.username(), gameData.blackUsername())) {
                 throw new InvalidMoveException(move + " Targets a " + movedPieceColor + " piece.");
             }
         }
         if (movedPieceColor == ChessGame.TeamColor.WHITE) {
-            if (!Objects.equals(user.username(), gameData.whiteUsername())) {
+            if (!Objects.equals(principal.username(), gameData.whiteUsername())) {
                 throw new InvalidMoveException(move + " Targets a " + movedPieceColor + " piece.");
             }
         }
@@ -208,89 +413,181 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
         game.makeMove(move);
     }
 
-    private void leave(Session session, String jsonMessage) throws Exception {
-        LeaveGameCommand command = gson.fromJson(jsonMessage, LeaveGameCommand.class);
+    /**
+     * Sends the whole game again to a delta client that has fallen out of step
+     */
+    private void resync(GameActor actor, Connection connection, AuthData principal, UserGameCommand command) throws Exception {
 
-        try {
-            verifyInput(session, command);
-        } catch (Exception e) {
-            ServerMessage leaveErrorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, e.getMessage());
-            session.getRemote().sendString(gson.toJson(leaveErrorMessage));
-            throw new InvalidMoveException(e.getMessage());
-        }
+        ServerMessage loadGameMessage = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, actor.game(dataAccess));
+        loadGameMessage.setSequence(connectionManager.lastSequence(command.getGameID()));
+        connectionManager.send(connection, loadGameMessage);
+    }
 
-        var user = dataAccess.getUser(dataAccess.getAuthdataFromAuthtoken(command.getAuthToken()).username());
-        var gameData = dataAccess.getGame(command.getGameID());
-        GameData newGameData;
+    /**
+     * Rejoins a client whose websocket dropped, without telling the others, and sends it the
+     * events it missed, or the whole game if they are no longer all logged
+     */
+    private void resume(GameActor actor, Connection connection, AuthData principal, ResumeGameCommand command) throws Exception {
 
-        if (Objects.equals(gameData.blackUsername(), user.username())) {
-            newGameData = new GameData(gameData.gameID(), gameData.whiteUsername(), null, gameData.gameName(), gameData.game());
-        } else if (Objects.equals(gameData.whiteUsername(), user.username())) {
-            newGameData = new GameData(gameData.gameID(), null, gameData.blackUsername(), gameData.gameName(), gameData.game());
-        } else {
-            newGameData = gameData;
+        var game = actor.game(dataAccess);
+
+        String role = roleOf(game, principal);
+        connectionManager.join(command.getGameID(), connection, command.wantsDeltaUpdates(), role.equals(OBSERVER));
+        sessionBindings.bind(connection, principal, command.getGameID(), role);
+
+        if (!connectionManager.replay(command.getGameID(), connection, principal.username(), command.getLastSequence(), command.wantsDeltaUpdates())) {
+            ServerMessage loadGameMessage = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, game);
+            loadGameMessage.setSequence(connectionManager.lastSequence(command.getGameID()));
+            connectionManager.send(connection, loadGameMessage);
         }
+    }
 
+    private void leave(GameActor actor, Connection connection, AuthData principal, LeaveGameCommand command) throws Exception {
 
-        dataAccess.updateGame(newGameData);
+        GameData openedGame = ConflictRetry.run(() -> giveUpSeat(actor, principal));
+        if (openedGame != null) {
+            gameService.lobby().changed(LobbyEvent.of(LobbyEvent.Type.SEAT_OPENED, openedGame));
+        }
 
-        connectionManager.remove(command.getGameID(), session);
-        sessionGameMap.remove(session);
+        sessionBindings.unbind(connection);
+        connectionManager.leave(command.getGameID(), connection);
 
-        var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, user.username() + " has left the game");
-        connectionManager.broadcast(command.getGameID(), notification, session);
+        var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, principal.username() + " has left the game");
+        connectionManager.broadcast(command.getGameID(), notification, connection, principal.username());
 
     }
 
-    private void resign(Session session, String jsonMessage) throws Exception {
-        ReseignGameCommand command = gson.fromJson(jsonMessage, ReseignGameCommand.class);
+    /**
+     * Empties the leaving player's seat
+     *
+     * @return the game with the seat open, or null for an observer, whose leaving changes nothing stored
+     */
+    private GameData giveUpSeat(GameActor actor, AuthData principal) throws DataAccessException {
+        var gameData = actor.reload(dataAccess);
+        GameData newGameData;
 
-        try {
-            verifyInput(session, command);
-        } catch (Exception e) {
-            ServerMessage resignErrorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, e.getMessage());
-            session.getRemote().sendString(gson.toJson(resignErrorMessage));
-            throw new InvalidMoveException(e.getMessage());
+        if (Objects.equals(gameData.blackUsername(), principal.username())) {
+            newGameData = new GameData(gameData.gameID(), gameData.whiteUsername(), null, gameData.gameName(), gameData.game(), gameData.version());
+        } else if (Objects.equals(gameData.whiteUsername(), principal.username())) {
+            newGameData = new GameData(gameData.gameID(), null, gameData.blackUsername(), gameData.gameName(), gameData.game(), gameData.version());
+        } else {
+            return null;
         }
 
+        dataAccess.updateGame(newGameData);
+        actor.replace(newGameData);
+        return newGameData;
+    }
+
+    // seats may change over HTTP while the game is being ended, the game is over whoever holds them
+    private GameData endGame(GameActor actor) throws DataAccessException {
+        var gameData = actor.reload(dataAccess);
+        gameData.game().setGameOver();
+        dataAccess.updateGame(gameData);
+        return gameData;
+    }
+
+    private void resign(GameActor actor, Connection connection, AuthData principal, ReseignGameCommand command) throws Exception {
 
-        var user = dataAccess.getUser(dataAccess.getAuthdataFromAuthtoken(command.getAuthToken()).username());
-        var gameData = dataAccess.getGame(command.getGameID());
+
+        var gameData = actor.reload(dataAccess);
 
 
         if (gameData.game().isGameOver()) {
             ServerMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "The game is over, you cannot resign.");
-            session.getRemote().sendString(gson.toJson(errorMessage));
+            connectionManager.send(connection, errorMessage);
+
+        } else if (Objects.equals(principal.username(), gameData.whiteUsername()) || Objects.equals(principal.username(), gameData.blackUsername())) {
+            GameData finishedGame;
+            try {
+                finishedGame = ConflictRetry.run(() -> endGame(actor));
+            } catch (GameConflictException e) {
+                // the copy here was marked over but the store never took it
+                actor.invalidate();
+                connectionManager.send(connection, new ErrorMessage(ServerMessage.ServerMessageType.ERROR, e.getMessage()));
+                return;
+            }
 
-        } else if (Objects.equals(user.username(), gameData.whiteUsername()) || Objects.equals(user.username(), gameData.blackUsername())) {
-            var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, user.username() + "has resigned the game");
+            var notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, principal.username() + "has resigned the game");
             connectionManager.broadcast(command.getGameID(), notification, null);
+            gameService.lobby().changed(LobbyEvent.of(LobbyEvent.Type.GAME_FINISHED, finishedGame));
 
-            gameData.game().setGameOver();
-            dataAccess.updateGame(gameData);
-
-            connectionManager.remove(command.getGameID(), session);
-            sessionGameMap.remove(session);
+            sessionBindings.unbind(connection);
+            connectionManager.leave(command.getGameID(), connection);
         } else {
             ServerMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     "You are an observer and cannot resign, if you want to leave use the leave command");
-            session.getRemote().sendString(gson.toJson(errorMessage));
+            connectionManager.send(connection, errorMessage);
 
-            connectionManager.remove(command.getGameID(), session);
-            sessionGameMap.remove(session);
+            sessionBindings.unbind(connection);
+            connectionManager.leave(command.getGameID(), connection);
         }
 
 
     }
 
 
-    private void verifyInput(Session session, UserGameCommand command) throws Exception {
-        if (!dataAccess.authTokenExists(command.getAuthToken())) {
+    /**
+     * The user sending the command: the session's binding if the command matches it, otherwise
+     * the command's token resolved against the store, once for the whole command, after checking
+     * the game it names exists. CONNECT and RESUME always go to the store, as they make the binding.
+     */
+    private AuthData authenticate(Connection connection, UserGameCommand command) throws Exception {
+        UserGameCommand.CommandType type = command.getCommandType();
+        if (type != UserGameCommand.CommandType.CONNECT && type != UserGameCommand.CommandType.RESUME) {
+            AuthData bound = sessionBindings.principal(connection, command.getAuthToken(), command.getGameID());
+            if (bound != null) {
+                return bound;
+            }
+        }
+
+        AuthData principal = dataAccess.getAuthdataFromAuthtoken(command.getAuthToken());
+        if (principal == null) {
             throw new Exception("Error: Unauthorized user data please login again");
         }
         if (!dataAccess.gameIDExists(command.getGameID())) {
             throw new Exception("Error: Invalid Game ID");
         }
+        return principal;
+    }
+
+    private static String roleOf(GameData game, AuthData principal) {
+        if (Objects.equals(principal.username(), game.whiteUsername())) {
+            return ChessGame.TeamColor.WHITE.name();
+        }
+        if (Objects.equals(principal.username(), game.blackUsername())) {
+            return ChessGame.TeamColor.BLACK.name();
+        }
+        return OBSERVER;
+    }
+
+    public OutboundMetrics.Snapshot outboundMetrics() {
+        return connectionManager.metrics();
+    }
+
+    public Map<Integer, ConnectionManager.Audience> audience() {
+        return connectionManager.audience();
+    }
+
+    /**
+     * Stops the game actors taking new commands and gives the ones running a few seconds to
+     * finish, so none of them is still writing when the store is closed
+     */
+    @Override
+    public void close() {
+        actorExecutor.shutdown();
+        try {
+            if (!actorExecutor.awaitTermination(ACTOR_SHUTDOWN_WAIT.toMillis(), TimeUnit.MILLISECONDS)) {
+                actorExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            actorExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    @FunctionalInterface
+    private interface GameTask {
+        void run(GameActor actor) throws Exception;
     }
-}
\ No newline at end of file
+}
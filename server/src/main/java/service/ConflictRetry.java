@@ -0,0 +1,36 @@
+package service;
+
+import dataaccess.DataAccessException;
+import dataaccess.GameConflictException;
+
+/**
+ * Reruns a read-modify-write of a game when the write finds the game changed since it was read.
+ * Only for changes that can safely be made again from a fresh read, such as taking or giving up
+ * a seat: each attempt rereads the game and decides again what to write. A conflict means another
+ * writer got there first, so some writer always makes progress; after chess.conflictRetries
+ * (default 10) attempts the conflict is passed on to the caller.
+ */
+public final class ConflictRetry {
+
+    private static final int ATTEMPTS = Math.max(1, Integer.getInteger("chess.conflictRetries", 10));
+
+    private ConflictRetry() {
+    }
+
+    public static <T> T run(Attempt<T> attempt) throws DataAccessException {
+        for (int tries = 1; ; tries++) {
+            try {
+                return attempt.run();
+            } catch (GameConflictException e) {
+                if (tries >= ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T run() throws DataAccessException;
+    }
+}
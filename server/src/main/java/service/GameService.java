@@ -1,109 +1,153 @@
 package service;
 
+import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
-import dataaccess.SqlDataAccess;
 import exceptions.*;
 import chess.ChessGame;
 import model.*;
 import model.gameservicerecords.GameListData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.LobbyEvent;
 import model.gameservicerecords.ShortenedGameData;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 
 public class GameService {
 
-    private final SqlDataAccess dataAccess;
+    private final DataAccess dataAccess;
+    private final Lobby lobby = new Lobby();
 
-    public GameService(SqlDataAccess dataAccess) {
+    public GameService(DataAccess dataAccess) {
         this.dataAccess = dataAccess;
     }
 
+    /**
+     * Told about every game created or joined here; anything else that changes the game list
+     * has to report it too
+     */
+    public Lobby lobby() {
+        return lobby;
+    }
+
 
     public GameListData listGames(String authToken) throws DataAccessException {
-        if (!dataAccess.validateAuthToken(authToken)) {
-            throw new UnauthorizedException("Error: unauthorized");
-        }
+        return listGames(authToken, GameListQuery.all());
+    }
 
-        Collection<ShortenedGameData> gameList = new ArrayList<>();
+    public GameListData listGames(String authToken, GameListQuery query) throws DataAccessException {
+        return listGames(authenticate(authToken), query);
+    }
+
+    public GameListData listGames(AuthData principal, GameListQuery query) throws DataAccessException {
+        return listAuthorizedGames(query, authorizeListing(principal, query));
+    }
+
+    /**
+     * Checks the query of a listing without listing anything
+     *
+     * @return the user a mine only listing is for, otherwise null
+     */
+    public String authorizeListing(AuthData principal, GameListQuery query) {
+        if (query.afterGameID() < 0 || query.limit() < 0) {
+            throw new BadRequestException("Error: bad request");
+        }
+        return query.mineOnly() ? principal.username() : null;
+    }
 
-        Collection<GameData> unprocessedGames = dataAccess.listGames();
+    /**
+     * Lists games for a query that authorizeListing has accepted
+     */
+    public GameListData listAuthorizedGames(GameListQuery query, String username) throws DataAccessException {
+        List<ShortenedGameData> gameList = dataAccess.listGameSummaries(query, username);
 
-        for (GameData game : unprocessedGames) {
-            gameList.add(new ShortenedGameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName()));
+        Integer nextCursor = null;
+        if (query.limit() > 0 && gameList.size() == query.limit()) {
+            nextCursor = gameList.get(gameList.size() - 1).gameID();
         }
 
-        return new GameListData(gameList);
+        return new GameListData(gameList, nextCursor);
     }
 
     public int createGame(String authToken, String gameName) throws DataAccessException {
-        if (!dataAccess.validateAuthToken(authToken)) {
-            throw new UnauthorizedException("Error: unauthorized");
-        }
+        return createGame(authenticate(authToken), gameName);
+    }
+
+    public int createGame(AuthData principal, String gameName) throws DataAccessException {
         if (gameName == null || gameName.isEmpty()) {
             throw new BadRequestException("Error: bad request");
         }
 
-
-        int gameID = dataAccess.numGames() + 1;
-        dataAccess.createGame(new GameData(gameID, null, null, gameName, new ChessGame()));
-
+        GameData game = new GameData(0, null, null, gameName, new ChessGame());
+        int gameID = dataAccess.createGame(game);
+        lobby.changed(LobbyEvent.of(LobbyEvent.Type.GAME_CREATED, new GameData(gameID, null, null, gameName, game.game())));
         return gameID;
     }
 
 
     public GameData joinGame(String authToken, ChessGame.TeamColor playerColor, int gameID) throws DataAccessException {
-        if (!dataAccess.validateAuthToken(authToken)) {
-            throw new UnauthorizedException("Error: unauthorized");
-        }
+        return joinGame(authenticate(authToken), playerColor, gameID);
+    }
+
+    /**
+     * Takes the seat, trying again from a fresh read if the game changes in between
+     */
+    public GameData joinGame(AuthData principal, ChessGame.TeamColor playerColor, int gameID) throws DataAccessException {
         if (!(playerColor == ChessGame.TeamColor.BLACK || playerColor == ChessGame.TeamColor.WHITE)) {
             throw new BadRequestException("Error: bad request");
         }
-        if (!dataAccess.gameIDExists(gameID)) {
-            throw new BadRequestException("Error: bad request");
-        }
 
+        GameData updatedGame = ConflictRetry.run(() -> takeSeat(principal, playerColor, gameID));
+        lobby.changed(LobbyEvent.of(LobbyEvent.Type.SEAT_FILLED, updatedGame));
+        return updatedGame;
+    }
+
+    private GameData takeSeat(AuthData principal, ChessGame.TeamColor playerColor, int gameID) throws DataAccessException {
         GameData game = dataAccess.getGame(gameID);
-        var userAuthdata = dataAccess.getAuthdataFromAuthtoken(authToken);
-        var userData = dataAccess.getUser(userAuthdata.username());
-        GameData updatedGame = game;
+        if (game == null) {
+            throw new BadRequestException("Error: bad request");
+        }
+        String username = principal.username();
+        GameData updatedGame;
 
 
         if (playerColor == ChessGame.TeamColor.BLACK) {
-            if ((game.blackUsername() != null) && (!game.blackUsername().equals(userAuthdata.username()))) {
+            if ((game.blackUsername() != null) && (!game.blackUsername().equals(username))) {
                 throw new AlreadyTakenException("Error: already taken");
             }
 
-            updatedGame = new GameData(game.gameID(), game.whiteUsername(), userData.username(), game.gameName(), game.game());
+            updatedGame = new GameData(game.gameID(), game.whiteUsername(), username, game.gameName(), game.game(), game.version());
 
-        } else if (playerColor == ChessGame.TeamColor.WHITE) {
-            if ((game.whiteUsername() != null) && (!game.whiteUsername().equals(userAuthdata.username()))) {
+        } else {
+            if ((game.whiteUsername() != null) && (!game.whiteUsername().equals(username))) {
                 throw new AlreadyTakenException("Error: already taken");
             }
-            updatedGame = new GameData(game.gameID(), userData.username(), game.blackUsername(), game.gameName(), game.game());
-        } else {
-            throw new BadRequestException("Error: bad request");
+            updatedGame = new GameData(game.gameID(), username, game.blackUsername(), game.gameName(), game.game(), game.version());
         }
 
         dataAccess.updateGame(updatedGame);
-        return dataAccess.getGame(updatedGame.gameID());
-
+        return updatedGame;
     }
 
 
     public GameData joinGameObserver(String authToken, int gameID) throws DataAccessException {
-        if (!dataAccess.validateAuthToken(authToken)) {
-            throw new UnauthorizedException("Error: unauthorized");
-        }
-        if (!dataAccess.gameIDExists(gameID)) {
-            throw new BadRequestException("Error: bad request");
-        }
+        return joinGameObserver(authenticate(authToken), gameID);
+    }
 
+    public GameData joinGameObserver(AuthData principal, int gameID) throws DataAccessException {
         GameData game = dataAccess.getGame(gameID);
+        if (game == null) {
+            throw new BadRequestException("Error: bad request");
+        }
+        return game;
+    }
 
-        dataAccess.updateGame(game);
-        return dataAccess.getGame(game.gameID());
-
+    // for callers that still pass the token itself rather than a principal resolved up front
+    private AuthData authenticate(String authToken) throws DataAccessException {
+        AuthData principal = dataAccess.getAuthdataFromAuthtoken(authToken);
+        if (principal == null) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+        return principal;
     }
 
 }
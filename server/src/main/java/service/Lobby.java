@@ -0,0 +1,134 @@
+package service;
+
+import model.gameservicerecords.LobbyEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The version of the game list and the changes that made it. Everything that can change what a
+ * listing returns reports a LobbyEvent here once the change is stored, and each event bumps the
+ * version by one, so a listing made at one version stays current until the next and an event's
+ * version doubles as its place in the lobby feed. The most recent events are kept so a watcher
+ * that lost its connection can be sent just the ones it missed.
+ * <p>
+ * Versions start from the creation time, like the websocket event logs, so one handed out by an
+ * earlier run of the server never looks current to this one.
+ */
+public class Lobby {
+
+    /**
+     * An event and the version it brought the lobby to
+     */
+    public record Change(long version, LobbyEvent event) {
+    }
+
+    /**
+     * Told about each change in version order, while the lobby is locked, so it must not block
+     */
+    @FunctionalInterface
+    public interface Watcher {
+        void changed(Change change);
+    }
+
+    private final int recentLimit;
+    private final ArrayDeque<Change> recent = new ArrayDeque<>();
+    private final long startVersion = System.currentTimeMillis() << 20;
+    private long version = startVersion;
+    private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+    private final List<Consumer<LobbyEvent>> localChangeListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<LobbyEvent>> remoteChangeListeners = new CopyOnWriteArrayList<>();
+
+    public Lobby() {
+        this(Integer.getInteger("chess.lobby.resumeEvents", 256));
+    }
+
+    /**
+     * @param recentLimit how many of the latest events to keep for watchers catching up
+     */
+    public Lobby(int recentLimit) {
+        this.recentLimit = recentLimit;
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * A change made on this server node
+     */
+    public void changed(LobbyEvent event) {
+        record(event);
+        localChangeListeners.forEach(listener -> listener.accept(event));
+    }
+
+    /**
+     * A change another node made to the storage this node shares with it
+     */
+    public void changedElsewhere(LobbyEvent event) {
+        record(event);
+        remoteChangeListeners.forEach(listener -> listener.accept(event));
+    }
+
+    private synchronized void record(LobbyEvent event) {
+        Change change = new Change(++version, event);
+        if (recentLimit > 0) {
+            if (recent.size() == recentLimit) {
+                recent.removeFirst();
+            }
+            recent.addLast(change);
+        }
+        watchers.forEach(watcher -> watcher.changed(change));
+    }
+
+    /**
+     * The changes after the given version, oldest first
+     *
+     * @return null if some of them are no longer kept or the version did not come from this lobby
+     */
+    public synchronized List<Change> since(long afterVersion) {
+        if (afterVersion < startVersion || afterVersion > version) {
+            return null;
+        }
+        if (afterVersion < version && (recent.isEmpty() || recent.getFirst().version() > afterVersion + 1)) {
+            return null;
+        }
+        List<Change> changes = new ArrayList<>();
+        for (Change change : recent) {
+            if (change.version() > afterVersion) {
+                changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Starts telling the watcher about every change after the current version, which is returned
+     */
+    public synchronized long watch(Watcher watcher) {
+        watchers.add(watcher);
+        return version;
+    }
+
+    public void unwatch(Watcher watcher) {
+        watchers.remove(watcher);
+    }
+
+    /**
+     * Runs the listener after every change made on this node, to tell the other nodes about it
+     */
+    public void onLocalChange(Consumer<LobbyEvent> listener) {
+        localChangeListeners.add(listener);
+    }
+
+    /**
+     * Runs the listener after every change another node reports, to drop what this node has
+     * cached about the games it changed
+     */
+    public void onChangeElsewhere(Consumer<LobbyEvent> listener) {
+        remoteChangeListeners.add(listener);
+    }
+}
@@ -1,20 +1,23 @@
 package service;
 
 
+import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
-import dataaccess.SqlDataAccess;
 import exceptions.*;
-import dataaccess.MemoryDataAccess;
 import model.*;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 
 public class UserService {
 
-    private final SqlDataAccess dataAccess;
+    private final DataAccess dataAccess;
+    private final List<Consumer<String>> logoutListeners = new CopyOnWriteArrayList<>();
 
-    public UserService(SqlDataAccess dataAccess) {
+    public UserService(DataAccess dataAccess) {
         this.dataAccess = dataAccess;
     }
 
@@ -53,12 +56,33 @@ public class UserService {
     }
 
 
-    public void logout(String authData) throws DataAccessException {
-        //make sure the User exits
-        if (!dataAccess.authTokenExists(authData)) {
+    /**
+     * Resolves a token to the session it belongs to, with a single lookup. Request handlers call
+     * this once and hand the result to the services rather than each service checking the token.
+     */
+    public AuthData authenticate(String authToken) throws DataAccessException {
+        AuthData principal = dataAccess.getAuthdataFromAuthtoken(authToken);
+        if (principal == null) {
             throw new UnauthorizedException("Error: unauthorized");
         }
-        dataAccess.removeAuth(authData);
+        return principal;
+    }
+
+    public void logout(String authData) throws DataAccessException {
+        logout(authenticate(authData));
+    }
+
+    public void logout(AuthData principal) throws DataAccessException {
+        dataAccess.removeAuth(principal.authToken());
+        logoutListeners.forEach(listener -> listener.accept(principal.authToken()));
+    }
+
+    /**
+     * Runs the listener with each token logged out on this node, after it has been removed from
+     * the store, so anything holding on to the token can let it go
+     */
+    public void onLogout(Consumer<String> listener) {
+        logoutListeners.add(listener);
     }
 
     private String generateAuthToken() {
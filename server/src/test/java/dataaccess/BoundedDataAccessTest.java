@@ -0,0 +1,85 @@
+package dataaccess;
+
+import model.UserData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class BoundedDataAccessTest {
+
+    @Test
+    void callsBeyondLimitWait() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        MemoryDataAccess slow = new MemoryDataAccess() {
+            @Override
+            public UserData getUser(String userID) {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return null;
+            }
+        };
+        BoundedDataAccess bounded = new BoundedDataAccess(slow, 4, Duration.ofSeconds(10));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<UserData>> calls = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                calls.add(executor.submit(() -> bounded.getUser("user")));
+            }
+            for (Future<UserData> call : calls) {
+                call.get();
+            }
+        }
+
+        Assertions.assertEquals(4, mostRunning.get());
+    }
+
+    @Test
+    void waitTooLongFails() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryDataAccess stuck = new MemoryDataAccess() {
+            @Override
+            public int numGames() {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0;
+            }
+        };
+        BoundedDataAccess bounded = new BoundedDataAccess(stuck, 1, Duration.ofMillis(50));
+
+        Thread holder = Thread.ofVirtual().start(() -> {
+            try {
+                bounded.numGames();
+            } catch (DataAccessException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        entered.await();
+
+        DataAccessException busy = Assertions.assertThrows(DataAccessException.class, bounded::numGames);
+        Assertions.assertTrue(busy.getMessage().startsWith("Error:"));
+
+        release.countDown();
+        holder.join();
+        Assertions.assertEquals(0, bounded.numGames());
+    }
+}
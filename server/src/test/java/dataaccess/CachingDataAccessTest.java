@@ -0,0 +1,98 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.GameData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class CachingDataAccessTest {
+
+    private final AtomicInteger reads = new AtomicInteger();
+    private final MemoryDataAccess store = new MemoryDataAccess() {
+        @Override
+        public GameData getGame(int gameID) {
+            reads.incrementAndGet();
+            return super.getGame(gameID);
+        }
+    };
+
+    @Test
+    void activeGameIsReadOnce() throws Exception {
+        CachingDataAccess cache = new CachingDataAccess(store, 8);
+        int gameID = cache.createGame(new GameData(0, null, null, "cached", new ChessGame()));
+
+        GameData game = cache.getGame(gameID);
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        game.game().makeMove(move);
+        Assertions.assertEquals(0, cache.getGame(gameID).game().getPly(), "A change not yet stored reached the cache");
+
+        cache.appendMove(game, move);
+        GameData joined = cache.getGame(gameID);
+        cache.updateGame(new GameData(gameID, "white", null, "cached", joined.game(), joined.version()));
+        GameData current = cache.getGame(gameID);
+
+        Assertions.assertEquals(1, reads.get());
+        Assertions.assertEquals(1, current.game().getPly());
+        Assertions.assertEquals("white", current.whiteUsername());
+        Assertions.assertEquals(store.getGame(gameID).version(), current.version());
+    }
+
+    @Test
+    void staleCopyConflictsInsteadOfOverwriting() throws Exception {
+        CachingDataAccess cache = new CachingDataAccess(store, 8);
+        int gameID = cache.createGame(new GameData(0, null, null, "contested", new ChessGame()));
+        GameData cached = cache.getGame(gameID);
+
+        // another node takes a seat through the shared store
+        GameData stored = store.getGame(gameID);
+        store.updateGame(new GameData(gameID, null, "black", "contested", stored.game(), stored.version()));
+
+        Assertions.assertThrows(GameConflictException.class,
+                () -> cache.updateGame(new GameData(gameID, "white", null, "contested", cached.game(), cached.version())));
+        Assertions.assertEquals("black", cache.getGame(gameID).blackUsername(), "The conflict left the stale copy cached");
+    }
+
+    @Test
+    void leastRecentlyUsedGamesEvicted() throws Exception {
+        CachingDataAccess cache = new CachingDataAccess(store, 2);
+        int first = cache.createGame(new GameData(0, null, null, "first", new ChessGame()));
+        int second = cache.createGame(new GameData(0, null, null, "second", new ChessGame()));
+        int third = cache.createGame(new GameData(0, null, null, "third", new ChessGame()));
+
+        cache.getGame(first);
+        cache.getGame(second);
+        cache.getGame(first);
+        cache.getGame(third);
+        Assertions.assertEquals(2, cache.cachedGames());
+
+        reads.set(0);
+        cache.getGame(first);
+        Assertions.assertEquals(0, reads.get());
+        cache.getGame(second);
+        Assertions.assertEquals(1, reads.get(), "The least recently used game was kept");
+    }
+
+    @Test
+    void conflictingBatchEvictsEveryGame() throws Exception {
+        CachingDataAccess cache = new CachingDataAccess(store, 8);
+        List<Integer> gameIDs = cache.createGames(List.of(new GameData(0, null, null, "first", new ChessGame()),
+                new GameData(0, null, null, "second", new ChessGame())));
+        GameData first = cache.getGame(gameIDs.get(0));
+        GameData second = cache.getGame(gameIDs.get(1));
+        GameData stored = store.getGame(second.gameID());
+        store.updateGame(new GameData(second.gameID(), null, "black", "second", stored.game(), stored.version()));
+
+        Assertions.assertThrows(GameConflictException.class, () -> cache.updateGames(List.of(
+                new GameData(first.gameID(), "white", null, "first", first.game(), first.version()),
+                new GameData(second.gameID(), "white", null, "second", second.game(), second.version()))));
+
+        Assertions.assertEquals(0, cache.cachedGames());
+        Assertions.assertEquals("black", cache.getGame(second.gameID()).blackUsername());
+    }
+}
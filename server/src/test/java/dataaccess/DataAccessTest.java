@@ -1,9 +1,14 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
 import model.AuthData;
 import model.GameData;
 import model.UserData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.ShortenedGameData;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -11,6 +16,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class DataAccessTest {
@@ -45,6 +57,36 @@ public class DataAccessTest {
 
     }
 
+    @Test
+    void migrationsAppliedOnce() throws DataAccessException {
+        new SqlDataAccess();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*), MAX(version) FROM schema_version");
+             ResultSet rs = pstmt.executeQuery()) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertTrue(rs.getInt(1) > 0, "No migrations were recorded");
+            Assertions.assertEquals(rs.getInt(2), rs.getInt(1), "A migration was skipped or applied twice");
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to read schema_version", e);
+        }
+    }
+
+    @Test
+    void unrecordedMigrationsRunAgain() throws DataAccessException {
+        // as if each change had been made but the server stopped before recording it
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM schema_version WHERE version > 2")) {
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to forget migrations", e);
+        }
+
+        Assertions.assertDoesNotThrow(() -> new SqlDataAccess());
+        dataAccess.createGame(testgame);
+        Assertions.assertEquals(1, dataAccess.listGameSummaries(new GameListQuery(false, true, 0, 0), null).size());
+    }
+
     @Test
     void clear() throws DataAccessException {
         dataAccess.createUser(testUser);
@@ -54,6 +96,47 @@ public class DataAccessTest {
         Assertions.assertFalse(dataAccess.userExists(testUser.username()));
     }
 
+    @Test
+    void clearEmptiesEveryTable() throws DataAccessException, InvalidMoveException {
+        dataAccess.createUser(testUser);
+        dataAccess.addAuth(testAuth);
+        int gameID = dataAccess.createGame(new GameData(0, null, null, "cleared", new ChessGame()));
+        ChessGame game = new ChessGame();
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        game.makeMove(move);
+        dataAccess.appendMove(new GameData(gameID, null, null, "cleared", game), move);
+
+        dataAccess.clear();
+
+        Assertions.assertFalse(dataAccess.userExists(testUser.username()));
+        Assertions.assertFalse(dataAccess.authTokenExists(testAuth.authToken()));
+        Assertions.assertEquals(0, dataAccess.numGames());
+        Assertions.assertEquals(List.of(), dataAccess.getMoves(gameID));
+    }
+
+    @Test
+    void createUsersInOneBatch() throws DataAccessException {
+        List<UserData> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            users.add(new UserData("user" + i, "email" + i, "password" + i));
+        }
+
+        dataAccess.createUsers(users);
+
+        for (UserData user : users) {
+            Assertions.assertTrue(dataAccess.validatePassword(user));
+        }
+    }
+
+    @Test
+    void createUsersDuplicateStoresNone() {
+        List<UserData> users = List.of(new UserData("first", "first email", "password"),
+                new UserData("first", "second email", "password"));
+
+        Assertions.assertThrows(DataAccessException.class, () -> dataAccess.createUsers(users));
+        Assertions.assertDoesNotThrow(() -> Assertions.assertFalse(dataAccess.userExists("first")));
+    }
+
     @Test
     void getUser() throws DataAccessException {
         dataAccess.createUser(testUser);
@@ -241,6 +324,115 @@ public class DataAccessTest {
         Assertions.assertFalse(dataAccess.numGames() > 0);
     }
 
+    //createGame
+
+    @Test
+    void createGameAllocatesID() throws DataAccessException {
+        int first = dataAccess.createGame(new GameData(0, null, null, "first", new ChessGame()));
+        int second = dataAccess.createGame(new GameData(0, null, null, "second", new ChessGame()));
+
+        Assertions.assertNotEquals(first, second);
+        Assertions.assertEquals("second", dataAccess.getGame(second).gameName());
+    }
+
+    @Test
+    void createGamesInOneBatch() throws DataAccessException {
+        int creates = 10_000;
+        List<GameData> games = new ArrayList<>();
+        games.add(new GameData(50_000, null, null, "numbered", new ChessGame()));
+        for (int i = 0; i < creates - 1; i++) {
+            games.add(new GameData(0, null, null, "game" + i, new ChessGame()));
+        }
+
+        long start = System.nanoTime();
+        List<Integer> gameIDs = dataAccess.createGames(games);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Created " + creates + " games in one batch in " + elapsedMillis + " ms");
+
+        Assertions.assertEquals(creates, gameIDs.size());
+        Assertions.assertEquals(creates, new HashSet<>(gameIDs).size(), "Duplicate game IDs were handed out");
+        Assertions.assertEquals(creates, dataAccess.numGames());
+        Assertions.assertEquals(50_000, gameIDs.getFirst());
+        for (int i = 1; i < creates; i += 997) {
+            Assertions.assertEquals("game" + (i - 1), dataAccess.getGame(gameIDs.get(i)).gameName());
+        }
+    }
+
+    @Test
+    void updateGamesConflictRollsBackAll() throws DataAccessException {
+        List<Integer> gameIDs = dataAccess.createGames(List.of(new GameData(0, null, null, "first", new ChessGame()),
+                new GameData(0, null, null, "second", new ChessGame())));
+        GameData first = dataAccess.getGame(gameIDs.get(0));
+        GameData second = dataAccess.getGame(gameIDs.get(1));
+        dataAccess.updateGame(new GameData(second.gameID(), null, "black", "second", second.game(), second.version()));
+
+        Assertions.assertThrows(GameConflictException.class, () -> dataAccess.updateGames(List.of(
+                new GameData(first.gameID(), "white", null, "first", first.game(), first.version()),
+                new GameData(second.gameID(), "white", null, "second", second.game(), second.version()))));
+
+        Assertions.assertNull(dataAccess.getGame(first.gameID()).whiteUsername(), "Part of a conflicting batch was kept");
+        Assertions.assertEquals("black", dataAccess.getGame(second.gameID()).blackUsername());
+
+        dataAccess.updateGames(List.of(new GameData(first.gameID(), "white", null, "first", first.game(), first.version())));
+        Assertions.assertEquals("white", dataAccess.getGame(first.gameID()).whiteUsername());
+    }
+
+    @Test
+    void listOpenGamesSkipsFullAndFinished() throws DataAccessException {
+        ChessGame over = new ChessGame();
+        over.setGameOver();
+        List<Integer> gameIDs = dataAccess.createGames(List.of(new GameData(0, "white", null, "open", new ChessGame()),
+                new GameData(0, "white", "black", "full", new ChessGame()),
+                new GameData(0, "white", null, "finished", over)));
+
+        List<ShortenedGameData> open = dataAccess.listGameSummaries(new GameListQuery(false, true, 0, 0), null);
+        Assertions.assertEquals(List.of(gameIDs.get(0)), open.stream().map(ShortenedGameData::gameID).toList());
+
+        GameData full = dataAccess.getGame(gameIDs.get(1));
+        dataAccess.updateGame(new GameData(full.gameID(), "white", null, "full", full.game(), full.version()));
+        open = dataAccess.listGameSummaries(new GameListQuery(false, true, 0, 0), null);
+        Assertions.assertEquals(List.of(gameIDs.get(0), gameIDs.get(1)), open.stream().map(ShortenedGameData::gameID).toList());
+    }
+
+    @Test
+    void listMyGamesFromEitherSeat() throws DataAccessException {
+        List<Integer> gameIDs = dataAccess.createGames(List.of(new GameData(0, "me", null, "white", new ChessGame()),
+                new GameData(0, "other", null, "someone else's", new ChessGame()),
+                new GameData(0, null, "me", "black", new ChessGame()),
+                new GameData(0, "me", "me", "both", new ChessGame())));
+
+        List<ShortenedGameData> firstPage = dataAccess.listGameSummaries(new GameListQuery(true, false, 0, 2), "me");
+        Assertions.assertEquals(List.of(gameIDs.get(0), gameIDs.get(2)), firstPage.stream().map(ShortenedGameData::gameID).toList());
+
+        List<ShortenedGameData> secondPage = dataAccess.listGameSummaries(
+                new GameListQuery(true, false, firstPage.getLast().gameID(), 2), "me");
+        Assertions.assertEquals(List.of(gameIDs.get(3)), secondPage.stream().map(ShortenedGameData::gameID).toList());
+    }
+
+    @Test
+    void concurrentCreateGameIDsAreUnique() throws Exception {
+        int creates = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < creates; i++) {
+                String name = "game" + i;
+                results.add(executor.submit(() -> dataAccess.createGame(new GameData(0, null, null, name, new ChessGame()))));
+            }
+
+            Set<Integer> gameIDs = new HashSet<>();
+            for (Future<Integer> result : results) {
+                gameIDs.add(result.get());
+            }
+
+            Assertions.assertEquals(creates, gameIDs.size(), "Duplicate game IDs were handed out");
+            Assertions.assertEquals(creates, dataAccess.numGames());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 //
 //    boolean gameIDExists(int gameID) throws DataAccessException;
 //
@@ -249,4 +441,73 @@ public class DataAccessTest {
 //    Collection<GameData> listGames() throws DataAccessException;
 //
 //
-}
\ No newline at end of file
+
+    //updateGame
+
+    @Test
+    void updateGameStaleVersionConflicts() throws DataAccessException {
+        dataAccess.createGame(testgame);
+        GameData read = dataAccess.getGame(testgame.gameID());
+
+        dataAccess.updateGame(new GameData(read.gameID(), "white", null, read.gameName(), read.game(), read.version()));
+        Assertions.assertThrows(GameConflictException.class,
+                () -> dataAccess.updateGame(new GameData(read.gameID(), null, "black", read.gameName(), read.game(), read.version())));
+
+        GameData stored = dataAccess.getGame(testgame.gameID());
+        Assertions.assertEquals("white", stored.whiteUsername());
+        Assertions.assertNull(stored.blackUsername());
+        Assertions.assertEquals(read.version() + 1, stored.version());
+    }
+
+    //appendMove
+
+    @Test
+    void appendMoveReplaysOnGetGame() throws DataAccessException, InvalidMoveException {
+        dataAccess.createGame(testgame);
+
+        ChessGame game = new ChessGame();
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        game.makeMove(move);
+        dataAccess.appendMove(new GameData(testgame.gameID(), null, null, testgame.gameName(), game), move);
+
+        GameData retrievedGame = dataAccess.getGame(testgame.gameID());
+        Assertions.assertEquals(game, retrievedGame.game());
+        Assertions.assertEquals(1, retrievedGame.game().getPly());
+    }
+
+    @Test
+    void getMovesInOrder() throws DataAccessException, InvalidMoveException {
+        dataAccess.createGame(testgame);
+
+        ChessGame game = new ChessGame();
+        ChessMove first = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        ChessMove second = new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null);
+        game.makeMove(first);
+        dataAccess.appendMove(new GameData(testgame.gameID(), null, null, testgame.gameName(), game), first);
+        game.makeMove(second);
+        dataAccess.appendMove(new GameData(testgame.gameID(), null, null, testgame.gameName(), game), second);
+
+        Assertions.assertEquals(List.of(first, second), dataAccess.getMoves(testgame.gameID()));
+    }
+
+    @Test
+    void appendMoveAtTakenPlyConflicts() throws DataAccessException, InvalidMoveException {
+        dataAccess.createGame(testgame);
+
+        ChessGame game = new ChessGame();
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        game.makeMove(move);
+        GameData moved = new GameData(testgame.gameID(), null, null, testgame.gameName(), game);
+        dataAccess.appendMove(moved, move);
+
+        // a second writer that read the game before the first move was stored
+        Assertions.assertThrows(GameConflictException.class, () -> dataAccess.appendMove(moved, move));
+        Assertions.assertEquals(List.of(move), dataAccess.getMoves(testgame.gameID()));
+    }
+
+    @Test
+    void getMovesNoMoves() throws DataAccessException {
+        dataAccess.createGame(testgame);
+        Assertions.assertTrue(dataAccess.getMoves(testgame.gameID()).isEmpty());
+    }
+}
@@ -0,0 +1,229 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+public class DurableMemoryDataAccessTest {
+
+    @TempDir
+    Path dataDirectory;
+
+    @Test
+    void reopenRecoversEveryMutation() throws Exception {
+        int gameID;
+        try (DurableMemoryDataAccess dataAccess = new DurableMemoryDataAccess(dataDirectory, true)) {
+            dataAccess.createUser(new UserData("username", "email", "password"));
+            dataAccess.addAuth(new AuthData("username", "token"));
+            dataAccess.addAuth(new AuthData("username", "removed"));
+            dataAccess.removeAuth("removed");
+
+            gameID = dataAccess.createGame(new GameData(0, null, null, "recovered", new ChessGame()));
+            GameData joined = new GameData(gameID, "username", null, "recovered", dataAccess.getGame(gameID).game());
+            dataAccess.updateGame(joined);
+            playOpening(dataAccess, joined);
+        }
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertEquals("email", reopened.getUser("username").email());
+            Assertions.assertTrue(reopened.authTokenExists("token"));
+            Assertions.assertFalse(reopened.authTokenExists("removed"));
+
+            GameData game = reopened.getGame(gameID);
+            Assertions.assertEquals("username", game.whiteUsername());
+            Assertions.assertEquals(2, game.game().getPly());
+            Assertions.assertEquals(2, reopened.getMoves(gameID).size());
+            Assertions.assertEquals(gameID + 1, reopened.createGame(new GameData(0, null, null, "next", new ChessGame())));
+        }
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws Exception {
+        try (DurableMemoryDataAccess dataAccess = new DurableMemoryDataAccess(dataDirectory, true)) {
+            dataAccess.createUser(new UserData("username", "email", "password"));
+        }
+
+        // half of a frame left behind by a crash mid-write
+        Files.write(dataDirectory.resolve("wal.log"), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertTrue(reopened.userExists("username"));
+            reopened.createUser(new UserData("second", "email", "password"));
+        }
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertTrue(reopened.userExists("username"));
+            Assertions.assertTrue(reopened.userExists("second"));
+        }
+    }
+
+    @Test
+    void snapshotCompactsLog() throws Exception {
+        int gameID;
+        try (DurableMemoryDataAccess dataAccess = new DurableMemoryDataAccess(dataDirectory, false)) {
+            dataAccess.createUser(new UserData("username", "email", "password"));
+            gameID = dataAccess.createGame(new GameData(0, null, null, "snapshot", new ChessGame()));
+            playOpening(dataAccess, dataAccess.getGame(gameID));
+
+            dataAccess.snapshot();
+            // nothing left but the frame of the record that starts the new log: length, checksum, type and snapshot number
+            Assertions.assertEquals(Integer.BYTES * 2 + 1 + Long.BYTES, Files.size(dataDirectory.resolve("wal.log")));
+
+            dataAccess.addAuth(new AuthData("username", "after snapshot"));
+        }
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertTrue(reopened.userExists("username"));
+            Assertions.assertTrue(reopened.authTokenExists("after snapshot"));
+            Assertions.assertEquals(2, reopened.getGame(gameID).game().getPly());
+            Assertions.assertEquals(2, reopened.getMoves(gameID).size());
+        }
+    }
+
+    @Test
+    void crashBeforeLogEmptiedRecoversOnce() throws Exception {
+        int gameID;
+        Path log = dataDirectory.resolve("wal.log");
+        Path beforeSnapshot = dataDirectory.resolve("wal.before");
+        try (DurableMemoryDataAccess dataAccess = new DurableMemoryDataAccess(dataDirectory, true)) {
+            dataAccess.createUser(new UserData("username", "email", "password"));
+            gameID = dataAccess.createGame(new GameData(0, null, null, "snapshot", new ChessGame()));
+            playOpening(dataAccess, dataAccess.getGame(gameID));
+
+            Files.copy(log, beforeSnapshot);
+            dataAccess.snapshot();
+        }
+        // as if the process died after the snapshot was moved into place but before the log was emptied
+        Files.move(beforeSnapshot, log, StandardCopyOption.REPLACE_EXISTING);
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertTrue(reopened.userExists("username"));
+            Assertions.assertEquals(2, reopened.getGame(gameID).game().getPly());
+            Assertions.assertEquals(2, reopened.getMoves(gameID).size());
+            reopened.createUser(new UserData("second", "email", "password"));
+        }
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertTrue(reopened.userExists("second"));
+            Assertions.assertEquals(2, reopened.getMoves(gameID).size());
+        }
+    }
+
+    @Test
+    void writesDuringSnapshotsAreKept() throws Exception {
+        int tokens = 20_000;
+        try (DurableMemoryDataAccess dataAccess = new DurableMemoryDataAccess(dataDirectory, false)) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < tokens; i++) {
+                    dataAccess.addAuth(new AuthData("username", "token" + i));
+                }
+            });
+            writer.start();
+            while (writer.isAlive()) {
+                dataAccess.snapshot();
+            }
+            writer.join();
+        }
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, false)) {
+            for (int i = 0; i < tokens; i++) {
+                Assertions.assertTrue(reopened.authTokenExists("token" + i), "token" + i + " was lost");
+            }
+        }
+    }
+
+    @Test
+    void passwordsNeverWrittenPlain() throws Exception {
+        try (DurableMemoryDataAccess dataAccess = new DurableMemoryDataAccess(dataDirectory, true)) {
+            dataAccess.createUser(new UserData("logged", "email", "logged secret"));
+            dataAccess.snapshot();
+            dataAccess.createUser(new UserData("after", "email", "later secret"));
+        }
+
+        String files = Files.readString(dataDirectory.resolve("snapshot.dat"), StandardCharsets.ISO_8859_1)
+                + Files.readString(dataDirectory.resolve("wal.log"), StandardCharsets.ISO_8859_1);
+        Assertions.assertFalse(files.contains("logged secret"));
+        Assertions.assertFalse(files.contains("later secret"));
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertTrue(reopened.validatePassword(new UserData("logged", null, "logged secret")));
+            Assertions.assertTrue(reopened.validatePassword(new UserData("after", null, "later secret")));
+        }
+    }
+
+    @Test
+    void plainPasswordsHashedOnRecovery() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(dataDirectory.resolve("wal.log"), true)) {
+            log.replay(record -> { });
+            log.awaitDurable(log.enqueue(DurableMemoryDataAccess.userRecord(new UserData("old", "email", "old secret"))));
+        }
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertTrue(reopened.validatePassword(new UserData("old", null, "old secret")));
+        }
+        Assertions.assertFalse(Files.readString(dataDirectory.resolve("wal.log"), StandardCharsets.ISO_8859_1).contains("old secret"));
+        Assertions.assertFalse(Files.readString(dataDirectory.resolve("snapshot.dat"), StandardCharsets.ISO_8859_1).contains("old secret"));
+    }
+
+    @Test
+    void clearIsDurable() throws Exception {
+        try (DurableMemoryDataAccess dataAccess = new DurableMemoryDataAccess(dataDirectory, true)) {
+            dataAccess.createUser(new UserData("username", "email", "password"));
+            dataAccess.clear();
+        }
+
+        try (DurableMemoryDataAccess reopened = new DurableMemoryDataAccess(dataDirectory, true)) {
+            Assertions.assertFalse(reopened.userExists("username"));
+        }
+    }
+
+    @Test
+    void recoveryTimeForMillionMoves() throws Exception {
+        int moves = 1_000_000;
+        GameData game = new GameData(1, "white", "black", "benchmark", new ChessGame());
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+        try (WriteAheadLog log = new WriteAheadLog(dataDirectory.resolve("wal.log"), false)) {
+            log.replay(record -> { });
+            log.enqueue(DurableMemoryDataAccess.gameRecord(game));
+            byte[] moveRecord = DurableMemoryDataAccess.moveRecord(game, move);
+            long last = 0;
+            for (int i = 0; i < moves; i++) {
+                last = log.enqueue(moveRecord);
+            }
+            log.awaitDurable(last);
+        }
+
+        long start = System.nanoTime();
+        try (DurableMemoryDataAccess recovered = new DurableMemoryDataAccess(dataDirectory, false)) {
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("Recovered " + moves + " moves from the write-ahead log in " + elapsedMillis + " ms");
+
+            Assertions.assertEquals(moves, recovered.getMoves(1).size());
+        }
+    }
+
+    private static void playOpening(DataAccess dataAccess, GameData game) throws Exception {
+        ChessMove[] opening = {
+                new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null),
+                new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null),
+        };
+        for (ChessMove move : opening) {
+            game.game().makeMove(move);
+            dataAccess.appendMove(game, move);
+        }
+    }
+}
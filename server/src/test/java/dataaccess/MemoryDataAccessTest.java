@@ -0,0 +1,217 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.ShortenedGameData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class MemoryDataAccessTest {
+
+    private static final int THREADS = 32;
+
+    private MemoryDataAccess dataAccess;
+
+    @BeforeEach
+    public void setup() {
+        dataAccess = new MemoryDataAccess(new PasswordHasher(THREADS, THREADS, 4));
+    }
+
+    @Test
+    void concurrentCreateGameIDsAreUnique() throws Exception {
+        int creates = 5000;
+        List<Integer> gameIDs = runInParallel(creates,
+                i -> dataAccess.createGame(new GameData(0, null, null, "game" + i, new ChessGame())));
+
+        Set<Integer> uniqueIDs = new HashSet<>(gameIDs);
+        Assertions.assertEquals(creates, uniqueIDs.size(), "Duplicate game IDs were handed out");
+        Assertions.assertEquals(creates, dataAccess.numGames());
+        for (int gameID : uniqueIDs) {
+            Assertions.assertTrue(dataAccess.gameIDExists(gameID));
+        }
+    }
+
+    @Test
+    void concurrentRegistrationsAreAllStored() throws Exception {
+        int users = 2000;
+        runInParallel(users, i -> {
+            dataAccess.createUser(new UserData("user" + i, "email" + i, "password" + i));
+            dataAccess.addAuth(new AuthData("user" + i, "token" + i));
+            return i;
+        });
+
+        for (int i = 0; i < users; i++) {
+            Assertions.assertTrue(dataAccess.userExists("user" + i));
+            Assertions.assertEquals("user" + i, dataAccess.getAuthdataFromAuthtoken("token" + i).username());
+        }
+    }
+
+    @Test
+    void passwordStoredHashed() throws DataAccessException {
+        dataAccess.createUser(new UserData("username", "email", "password"));
+
+        Assertions.assertNotEquals("password", dataAccess.getUser("username").password());
+        Assertions.assertTrue(dataAccess.validatePassword(new UserData("username", null, "password")));
+        Assertions.assertFalse(dataAccess.validatePassword(new UserData("username", null, "wrong")));
+    }
+
+    @Test
+    void duplicateUserRejected() throws DataAccessException {
+        dataAccess.createUser(new UserData("username", "email", "password"));
+        Assertions.assertThrows(DataAccessException.class,
+                () -> dataAccess.createUser(new UserData("username", "other email", "other password")));
+    }
+
+    @Test
+    void concurrentAppendMoveKeepsEveryMove() throws Exception {
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        int games = 5000;
+        List<Integer> gameIDs = runInParallel(games, i -> {
+            int gameID = dataAccess.createGame(new GameData(0, null, null, "journal" + i, new ChessGame()));
+            GameData game = dataAccess.getGame(gameID);
+            game.game().makeMove(move);
+            dataAccess.appendMove(game, move);
+            return gameID;
+        });
+
+        for (int gameID : gameIDs) {
+            Assertions.assertEquals(List.of(move), dataAccess.getMoves(gameID));
+        }
+    }
+
+    @Test
+    void concurrentMovesAtOnePlyKeepOne() throws Exception {
+        int gameID = dataAccess.createGame(new GameData(0, null, null, "journal", new ChessGame()));
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        GameData moved = dataAccess.getGame(gameID);
+        moved.game().makeMove(move);
+
+        // as if every writer read the game before any of them stored the move
+        List<Boolean> stored = runInParallel(500, i -> {
+            try {
+                dataAccess.appendMove(moved, move);
+                return true;
+            } catch (GameConflictException e) {
+                return false;
+            }
+        });
+
+        Assertions.assertEquals(1, stored.stream().filter(Boolean::booleanValue).count());
+        Assertions.assertEquals(1, dataAccess.getMoves(gameID).size());
+        Assertions.assertEquals(1, dataAccess.getGame(gameID).game().getPly());
+    }
+
+    @Test
+    void staleUpdateConflicts() throws DataAccessException {
+        int gameID = dataAccess.createGame(new GameData(0, null, null, "contested", new ChessGame()));
+        GameData read = dataAccess.getGame(gameID);
+
+        dataAccess.updateGame(new GameData(gameID, "white", null, "contested", read.game(), read.version()));
+        Assertions.assertThrows(GameConflictException.class,
+                () -> dataAccess.updateGame(new GameData(gameID, null, "black", "contested", read.game(), read.version())));
+
+        GameData stored = dataAccess.getGame(gameID);
+        Assertions.assertEquals("white", stored.whiteUsername());
+        Assertions.assertNull(stored.blackUsername());
+        Assertions.assertEquals(read.version() + 1, stored.version());
+    }
+
+    @Test
+    void moveKeepsSeatsTakenSinceRead() throws Exception {
+        int gameID = dataAccess.createGame(new GameData(0, null, null, "journal", new ChessGame()));
+        GameData read = dataAccess.getGame(gameID);
+        dataAccess.updateGame(new GameData(gameID, "white", "black", "journal", read.game(), read.version()));
+
+        ChessGame moved = read.game().deepCopy();
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        moved.makeMove(move);
+        dataAccess.appendMove(new GameData(gameID, null, null, "journal", moved, read.version()), move);
+
+        GameData stored = dataAccess.getGame(gameID);
+        Assertions.assertEquals("black", stored.blackUsername());
+        Assertions.assertEquals(1, stored.game().getPly());
+        Assertions.assertEquals(read.version() + 2, stored.version());
+    }
+
+    @Test
+    void clearResetsGameIDs() throws Exception {
+        dataAccess.createGame(new GameData(0, null, null, "first", new ChessGame()));
+        dataAccess.clear();
+
+        Assertions.assertEquals(0, dataAccess.numGames());
+        Assertions.assertEquals(1, dataAccess.createGame(new GameData(0, null, null, "second", new ChessGame())));
+    }
+
+    @Test
+    void openGamesSkipFinished() throws Exception {
+        ChessGame over = new ChessGame();
+        over.setGameOver();
+        int open = dataAccess.createGame(new GameData(0, "white", null, "open", new ChessGame()));
+        dataAccess.createGame(new GameData(0, "white", "black", "full", new ChessGame()));
+        dataAccess.createGame(new GameData(0, "white", null, "finished", over));
+
+        List<ShortenedGameData> games = dataAccess.listGameSummaries(new GameListQuery(false, true, 0, 0), null);
+        Assertions.assertEquals(List.of(open), games.stream().map(ShortenedGameData::gameID).toList());
+    }
+
+    @Test
+    void takenGameIDRejected() throws Exception {
+        int gameID = dataAccess.createGame(new GameData(0, null, null, "first", new ChessGame()));
+
+        Assertions.assertThrows(DataAccessException.class,
+                () -> dataAccess.createGame(new GameData(gameID, null, null, "second", new ChessGame())));
+        Assertions.assertEquals("first", dataAccess.getGame(gameID).gameName());
+    }
+
+    @Test
+    void callersNeverShareStoredGame() throws Exception {
+        ChessGame created = new ChessGame();
+        int gameID = dataAccess.createGame(new GameData(0, null, null, "shared", created));
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+        created.makeMove(move);
+        dataAccess.getGame(gameID).game().makeMove(move);
+        dataAccess.listGames().iterator().next().game().makeMove(move);
+
+        Assertions.assertEquals(0, dataAccess.getGame(gameID).game().getPly());
+    }
+
+    private <T> List<T> runInParallel(int tasks, Task<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> task.run(index)));
+            }
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task<T> {
+        T run(int index) throws Exception;
+    }
+}
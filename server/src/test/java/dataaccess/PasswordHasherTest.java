@@ -0,0 +1,62 @@
+package dataaccess;
+
+import exceptions.ServiceUnavailableException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PasswordHasherTest {
+
+    @Test
+    void hashesAtConfiguredCost() throws Exception {
+        try (PasswordHasher hasher = new PasswordHasher(1, 4, 5)) {
+            String hash = hasher.hash("secret");
+            Assertions.assertTrue(hash.startsWith("$2a$05$"));
+            Assertions.assertTrue(hasher.verify("secret", hash));
+            Assertions.assertFalse(hasher.verify("wrong", hash));
+            Assertions.assertFalse(hasher.needsRehash(hash));
+        }
+    }
+
+    @Test
+    void hashesAtOtherCostNeedRehash() throws Exception {
+        try (PasswordHasher old = new PasswordHasher(1, 4, 4);
+             PasswordHasher current = new PasswordHasher(1, 4, 6)) {
+            String oldHash = old.hash("secret");
+            Assertions.assertTrue(current.verify("secret", oldHash));
+            Assertions.assertTrue(current.needsRehash(oldHash));
+            Assertions.assertTrue(current.needsRehash("not a bcrypt hash"));
+        }
+    }
+
+    @Test
+    void fullQueueTurnsCallersAway() throws Exception {
+        int callers = 8;
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(callers);
+        List<Thread> threads = new ArrayList<>();
+        try (PasswordHasher hasher = new PasswordHasher(1, 1, 12)) {
+            for (int i = 0; i < callers; i++) {
+                threads.add(Thread.ofVirtual().start(() -> {
+                    try {
+                        hasher.hash("secret");
+                    } catch (ServiceUnavailableException e) {
+                        Assertions.assertTrue(e.getRetryAfter().toSeconds() >= 1);
+                        rejected.incrementAndGet();
+                    } catch (DataAccessException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }));
+            }
+            done.await();
+        }
+        // one hashing, one waiting, the rest turned away
+        Assertions.assertEquals(callers - 2, rejected.get());
+    }
+}
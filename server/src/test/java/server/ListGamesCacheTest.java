@@ -0,0 +1,179 @@
+package server;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+import dataaccess.MemoryDataAccess;
+import model.AuthData;
+import model.UserData;
+import model.gameservicerecords.CreateGameInput;
+import model.gameservicerecords.GameListData;
+import model.gameservicerecords.GameListQuery;
+import model.gameservicerecords.JoinGameInput;
+import model.gameservicerecords.ShortenedGameData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import server.cluster.InProcessGameEventBus;
+import serverfacade.ServerFacade;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+public class ListGamesCacheTest {
+
+    private final Gson gson = new Gson();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final AtomicInteger listings = new AtomicInteger();
+    private final MemoryDataAccess dataAccess = new MemoryDataAccess() {
+        @Override
+        public List<ShortenedGameData> listGameSummaries(GameListQuery query, String username) {
+            listings.incrementAndGet();
+            return super.listGameSummaries(query, username);
+        }
+    };
+
+    private Server server;
+    private int port;
+    private ServerFacade facade;
+    private String authToken;
+
+    @BeforeEach
+    void start() {
+        server = new Server(dataAccess);
+        port = server.run(0);
+        facade = new ServerFacade("http://localhost:" + port);
+        authToken = facade.registerUser(new UserData("player", "password", "player@mail.com")).authToken();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void unchangedListIsNotModified() throws Exception {
+        facade.createGame(authToken, new CreateGameInput("first"));
+
+        HttpResponse<String> first = get(null);
+        Assertions.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        Assertions.assertEquals(1, gson.fromJson(first.body(), GameListData.class).games().size());
+
+        HttpResponse<String> again = get(etag);
+        Assertions.assertEquals(304, again.statusCode());
+        Assertions.assertEquals(1, listings.get());
+
+        facade.createGame(authToken, new CreateGameInput("second"));
+        HttpResponse<String> changed = get(etag);
+        Assertions.assertEquals(200, changed.statusCode());
+        Assertions.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+        Assertions.assertEquals(2, gson.fromJson(changed.body(), GameListData.class).games().size());
+    }
+
+    @Test
+    void etagOnlyMatchesItsOwnPage() throws Exception {
+        facade.createGame(authToken, new CreateGameInput("first"));
+        String mineTag = get("/game?mine=true", authToken, null).headers().firstValue("ETag").orElseThrow();
+
+        Assertions.assertEquals(304, get("/game?mine=true", authToken, mineTag).statusCode());
+        Assertions.assertEquals(200, get("/game", authToken, mineTag).statusCode());
+        Assertions.assertEquals(200, get("/game?after=1", authToken, mineTag).statusCode());
+
+        String otherToken = facade.registerUser(new UserData("other", "password", "other@mail.com")).authToken();
+        Assertions.assertEquals(200, get("/game?mine=true", otherToken, mineTag).statusCode());
+    }
+
+    @Test
+    void pollsBetweenChangesListOnce() throws Exception {
+        facade.createGame(authToken, new CreateGameInput("game"));
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(200, get(null).statusCode());
+        }
+        Assertions.assertEquals(1, listings.get());
+
+        facade.joinGame(authToken, new JoinGameInput(ChessGame.TeamColor.WHITE, 1));
+        Assertions.assertTrue(get(null).body().contains("\"whiteUsername\":\"player\""));
+        Assertions.assertEquals(2, listings.get());
+    }
+
+    @Test
+    void largeListIsGzipped() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            facade.createGame(authToken, new CreateGameInput("a game with quite a long name " + i));
+        }
+
+        HttpResponse<byte[]> response = http.send(request(null).setHeader("Accept-Encoding", "gzip").build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElseThrow());
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            Assertions.assertEquals(50, gson.fromJson(json, GameListData.class).games().size());
+        }
+
+        Assertions.assertFalse(get(null).headers().firstValue("Content-Encoding").isPresent());
+    }
+
+    @Test
+    void facadeReusesUnchangedList() throws Exception {
+        facade.createGame(authToken, new CreateGameInput("game"));
+        Assertions.assertEquals(1, facade.listGames(authToken).size());
+        Assertions.assertEquals(1, facade.listGames(authToken).size());
+        Assertions.assertEquals(1, listings.get());
+
+        facade.deleteAll();
+        AuthData auth = facade.registerUser(new UserData("player", "password", "player@mail.com"));
+        Assertions.assertTrue(facade.listGames(auth.authToken()).isEmpty());
+    }
+
+    @Test
+    void changeOnOtherNodeInvalidatesList() throws Exception {
+        InProcessGameEventBus.Hub hub = new InProcessGameEventBus.Hub();
+        Server a = new Server(dataAccess, hub.join("a"));
+        Server b = new Server(dataAccess, hub.join("b"));
+        try {
+            ServerFacade facadeA = new ServerFacade("http://localhost:" + a.run(0));
+            ServerFacade facadeB = new ServerFacade("http://localhost:" + b.run(0));
+
+            Assertions.assertTrue(facadeA.listGames(authToken).isEmpty());
+            facadeB.createGame(authToken, new CreateGameInput("game"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (facadeA.listGames(authToken).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(1, facadeA.listGames(authToken).size());
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+
+    private HttpResponse<String> get(String ifNoneMatch) throws Exception {
+        return get("/game", authToken, ifNoneMatch);
+    }
+
+    private HttpResponse<String> get(String path, String token, String ifNoneMatch) throws Exception {
+        return http.send(request(path, token, ifNoneMatch).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String ifNoneMatch) {
+        return request("/game", authToken, ifNoneMatch);
+    }
+
+    private HttpRequest.Builder request(String path, String token, String ifNoneMatch) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Authorization", token)
+                .GET();
+        if (ifNoneMatch != null) {
+            builder.header("If-None-Match", ifNoneMatch);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,197 @@
+package server;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+import dataaccess.MemoryDataAccess;
+import model.UserData;
+import model.gameservicerecords.CreateGameInput;
+import model.gameservicerecords.GameListData;
+import model.gameservicerecords.JoinGameInput;
+import model.gameservicerecords.LobbyEvent;
+import model.gameservicerecords.ShortenedGameData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import serverfacade.LiveGameList;
+import serverfacade.ServerFacade;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+public class LobbyEventStreamTest {
+
+    private final Gson gson = new Gson();
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    private Server server;
+    private int port;
+    private ServerFacade facade;
+    private String authToken;
+
+    @BeforeEach
+    void start() {
+        server = new Server(new MemoryDataAccess());
+        port = server.run(0);
+        facade = new ServerFacade("http://localhost:" + port);
+        authToken = facade.registerUser(new UserData("player", "password", "player@mail.com")).authToken();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void liveListFollowsChanges() throws Exception {
+        facade.createGame(authToken, new CreateGameInput("first"));
+
+        try (LiveGameList games = facade.watchGames(authToken, () -> { })) {
+            await(games::isLoaded);
+            Assertions.assertEquals(1, games.games().size());
+
+            facade.createGame(authToken, new CreateGameInput("second"));
+            facade.joinGame(authToken, new JoinGameInput(ChessGame.TeamColor.WHITE, 1));
+            await(() -> games.games().size() == 2 && "player".equals(games.games().get(0).whiteUsername()));
+
+            facade.deleteAll();
+            await(() -> games.games().isEmpty());
+        }
+    }
+
+    @Test
+    void reconnectGetsOnlyMissedEvents() throws Exception {
+        String snapshotID;
+        try (Feed feed = new Feed(null)) {
+            Event snapshot = feed.next();
+            Assertions.assertEquals("snapshot", snapshot.name());
+            snapshotID = snapshot.id();
+        }
+
+        facade.createGame(authToken, new CreateGameInput("first"));
+        facade.createGame(authToken, new CreateGameInput("second"));
+
+        try (Feed feed = new Feed(snapshotID)) {
+            Event first = feed.next();
+            Event second = feed.next();
+            Assertions.assertEquals("lobby", first.name());
+            Assertions.assertEquals(Long.parseLong(snapshotID) + 1, Long.parseLong(first.id()));
+            Assertions.assertEquals(LobbyEvent.Type.GAME_CREATED, gson.fromJson(first.data(), LobbyEvent.class).type());
+            Assertions.assertEquals("second", gson.fromJson(second.data(), LobbyEvent.class).game().gameName());
+        }
+    }
+
+    @Test
+    void unknownCursorGetsSnapshot() throws Exception {
+        facade.createGame(authToken, new CreateGameInput("first"));
+
+        try (Feed feed = new Feed("12345")) {
+            Event snapshot = feed.next();
+            Assertions.assertEquals("snapshot", snapshot.name());
+            List<ShortenedGameData> games = new ArrayList<>(gson.fromJson(snapshot.data(), GameListData.class).games());
+            Assertions.assertEquals("first", games.get(0).gameName());
+        }
+    }
+
+    @Test
+    void unauthorizedIsRejected() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/lobby/events"))
+                .header("Accept", "text/event-stream")
+                .header("Authorization", "not a token")
+                .build();
+        Assertions.assertEquals(401, http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void idleWatchersHoldNoThreads() throws Exception {
+        int watchers = 200;
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        List<Feed> feeds = new ArrayList<>();
+        try {
+            for (int i = 0; i < watchers; i++) {
+                Feed feed = new Feed(null);
+                feeds.add(feed);
+                Assertions.assertEquals("snapshot", feed.next().name());
+            }
+            int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+            Assertions.assertTrue(threadsAfter - threadsBefore < watchers / 4,
+                    watchers + " idle watchers took " + (threadsAfter - threadsBefore) + " threads");
+
+            facade.createGame(authToken, new CreateGameInput("seen by all"));
+            for (Feed feed : feeds) {
+                Assertions.assertEquals("lobby", feed.next().name());
+            }
+        } finally {
+            for (Feed feed : feeds) {
+                feed.close();
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private record Event(String name, String id, String data) {
+    }
+
+    /**
+     * A raw connection to the feed, read one event at a time
+     */
+    private class Feed implements AutoCloseable {
+        private final InputStream body;
+        private final BufferedReader lines;
+
+        Feed(String lastEventID) throws Exception {
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/lobby/events"))
+                    .header("Accept", "text/event-stream")
+                    .header("Authorization", authToken);
+            if (lastEventID != null) {
+                request.header("Last-Event-ID", lastEventID);
+            }
+            HttpResponse<InputStream> response = http.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            Assertions.assertEquals(200, response.statusCode());
+            body = response.body();
+            lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        }
+
+        Event next() throws Exception {
+            String name = null;
+            String id = null;
+            String data = null;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isEmpty() && name != null) {
+                    return new Event(name, id, data);
+                } else if (line.startsWith("event: ")) {
+                    name = line.substring(7);
+                } else if (line.startsWith("id: ")) {
+                    id = line.substring(4);
+                } else if (line.startsWith("data: ")) {
+                    data = line.substring(6);
+                }
+            }
+            throw new AssertionError("feed ended");
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package server;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import dataaccess.DataAccess;
+import dataaccess.MemoryDataAccess;
+import model.AuthData;
+import model.UserData;
+import model.gameservicerecords.CreateGameInput;
+import model.gameservicerecords.JoinGameInput;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import serverfacade.ServerFacade;
+import websocket.commands.JoinGameCommand;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the storage calls each request makes, now that the caller's token is looked up once per
+ * request instead of by every step that needs to know who is asking, websocket commands after
+ * CONNECT use the identity bound to their session, and games already read come from the server's
+ * game cache
+ */
+public class QueryCountTest {
+
+    private final Map<String, Integer> calls = new TreeMap<>();
+    private final Gson gson = new Gson();
+
+    private Server server;
+    private int port;
+    private ServerFacade facade;
+    private AuthData auth;
+
+    @BeforeEach
+    void start() {
+        server = new Server(counting(new MemoryDataAccess()));
+        port = server.run(0);
+        facade = new ServerFacade("http://localhost:" + port);
+        auth = facade.registerUser(new UserData("player", "password", "player@mail.com"));
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void httpRequestsLookUpTokenOnce() {
+        Assertions.assertEquals(2, count("create game", () -> facade.createGame(auth.authToken(), new CreateGameInput("game"))));
+        Assertions.assertEquals(3, count("join game", () -> facade.joinGame(auth.authToken(), new JoinGameInput(ChessGame.TeamColor.WHITE, 1))));
+        Assertions.assertEquals(1, count("observe game", () -> facade.joinGame(auth.authToken(), new JoinGameInput(null, 1, true))));
+        Assertions.assertEquals(2, count("list games", () -> facade.listGames(auth.authToken())));
+        Assertions.assertEquals(1, count("list unchanged games", () -> facade.listGames(auth.authToken())));
+        Assertions.assertEquals(2, count("logout", () -> facade.logoutUser(auth.authToken())));
+    }
+
+    @Test
+    void websocketMovesUseSessionBinding() throws Exception {
+        facade.createGame(auth.authToken(), new CreateGameInput("game"));
+        facade.joinGame(auth.authToken(), new JoinGameInput(ChessGame.TeamColor.WHITE, 1));
+
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        WebSocket webSocket = HttpClient.newHttpClient().newWebSocketBuilder()
+                .buildAsync(URI.create("ws://localhost:" + port + "/ws"), new WebSocket.Listener() {
+                    @Override
+                    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                        received.add(data.toString());
+                        webSocket.request(1);
+                        return null;
+                    }
+                }).join();
+        try {
+            int connect = count("websocket connect", () -> {
+                webSocket.sendText(gson.toJson(new JoinGameCommand(UserGameCommand.CommandType.CONNECT, auth.authToken(), 1, "WHITE")), true);
+                Assertions.assertNotNull(received.poll(5, TimeUnit.SECONDS));
+            });
+            Assertions.assertEquals(1, connect);
+
+            ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+            int makeMove = count("websocket move", () -> {
+                webSocket.sendText(gson.toJson(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, auth.authToken(), 1, move)), true);
+                Assertions.assertNotNull(received.poll(5, TimeUnit.SECONDS));
+                // the move is stored after it is sent out
+                awaitCall("appendMove");
+            });
+            Assertions.assertEquals(1, makeMove);
+            Assertions.assertEquals(Map.of("appendMove", 1), calls);
+
+            facade.logoutUser(auth.authToken());
+            ChessMove reply = new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null);
+            webSocket.sendText(gson.toJson(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, auth.authToken(), 1, reply)), true);
+            String refused = received.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(refused);
+            Assertions.assertTrue(refused.contains("Unauthorized"), refused);
+        } finally {
+            webSocket.abort();
+        }
+    }
+
+    private int count(String request, Step step) {
+        synchronized (calls) {
+            calls.clear();
+        }
+        try {
+            step.run();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        synchronized (calls) {
+            int total = calls.values().stream().mapToInt(Integer::intValue).sum();
+            System.out.println(request + ": " + total + " storage calls " + calls);
+            return total;
+        }
+    }
+
+    private void awaitCall(String method) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (calls) {
+                if (calls.containsKey(method)) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        Assertions.fail(method + " was never called");
+    }
+
+    private DataAccess counting(DataAccess delegate) {
+        return (DataAccess) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataAccess.class},
+                (proxy, method, args) -> {
+                    synchronized (calls) {
+                        calls.merge(method.getName(), 1, Integer::sum);
+                    }
+                    try {
+                        return method.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+}
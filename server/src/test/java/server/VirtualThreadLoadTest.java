@@ -0,0 +1,154 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import dataaccess.DataAccess;
+import dataaccess.MemoryDataAccess;
+import model.AuthData;
+import model.UserData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import server.cluster.InProcessGameEventBus;
+import websocket.commands.JoinGameCommand;
+import websocket.commands.UserGameCommand;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the server on Jetty's platform thread pool with the server on virtual threads when
+ * chess.loadTest.clients (default 10,000) clients arrive together. Each lists the games over
+ * HTTP, then opens a websocket and joins a game as an observer, against a store that takes
+ * chess.loadTest.latencyMillis (default 5) per call like a remote database would.
+ * <p>
+ * Opt in with -Dchess.loadTest=true; every client needs a few sockets at each end, so the open
+ * file limit has to allow for them.
+ */
+@EnabledIfSystemProperty(named = "chess.loadTest", matches = "true")
+public class VirtualThreadLoadTest {
+
+    private static final int GAMES = 100;
+
+    private final Gson gson = new Gson();
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        int clients = Integer.getInteger("chess.loadTest.clients", 10_000);
+        long latencyMillis = Long.getLong("chess.loadTest.latencyMillis", 5);
+
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            Server server = new Server(slow(new MemoryDataAccess(), latencyMillis), InProcessGameEventBus.standalone(), virtualThreads);
+            int port = server.run(0);
+            HttpClient http = HttpClient.newHttpClient();
+            try {
+                String authToken = register(http, port);
+                for (int i = 0; i < GAMES; i++) {
+                    createGame(http, port, authToken);
+                }
+
+                int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+                ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+                long start = System.nanoTime();
+
+                List<CompletableFuture<Void>> joined = new ArrayList<>();
+                List<WebSocket> sockets = new ArrayList<>();
+                for (int i = 0; i < clients; i++) {
+                    int gameID = 1 + i % GAMES;
+                    joined.add(http.sendAsync(get(port, "/game", authToken), HttpResponse.BodyHandlers.discarding())
+                            .thenCompose(response -> {
+                                LoadGameListener listener = new LoadGameListener();
+                                return http.newWebSocketBuilder()
+                                        .buildAsync(URI.create("ws://localhost:" + port + "/ws"), listener)
+                                        .thenCompose(webSocket -> {
+                                            synchronized (sockets) {
+                                                sockets.add(webSocket);
+                                            }
+                                            var connect = new JoinGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, "OBSERVER");
+                                            return webSocket.sendText(gson.toJson(connect), true)
+                                                    .thenCompose(sent -> listener.loaded);
+                                        });
+                            }));
+                }
+
+                int failed = 0;
+                for (CompletableFuture<Void> client : joined) {
+                    try {
+                        client.get(2, TimeUnit.MINUTES);
+                    } catch (Exception e) {
+                        failed++;
+                    }
+                }
+                long millis = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.printf("%s threads: %,d clients joined in %,d ms, %d failed, peak %d JVM threads (%d before)%n",
+                        virtualThreads ? "Virtual" : "Platform", clients, millis, failed,
+                        ManagementFactory.getThreadMXBean().getPeakThreadCount(), threadsBefore);
+                Assertions.assertEquals(0, failed);
+
+                for (WebSocket webSocket : sockets) {
+                    webSocket.abort();
+                }
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    private static DataAccess slow(DataAccess delegate, long latencyMillis) {
+        return (DataAccess) Proxy.newProxyInstance(VirtualThreadLoadTest.class.getClassLoader(),
+                new Class<?>[]{DataAccess.class}, (proxy, method, args) -> {
+                    Thread.sleep(latencyMillis);
+                    try {
+                        return method.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private String register(HttpClient http, int port) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/user"))
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(new UserData("load", "password", "load@mail.com"))))
+                .build();
+        return gson.fromJson(http.send(request, HttpResponse.BodyHandlers.ofString()).body(), AuthData.class).authToken();
+    }
+
+    private void createGame(HttpClient http, int port, String authToken) throws Exception {
+        JsonObject body = new JsonObject();
+        body.addProperty("gameName", "load");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/game"))
+                .header("Authorization", authToken)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        Assertions.assertEquals(200, http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    private static HttpRequest get(int port, String path, String authToken) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).header("Authorization", authToken).GET().build();
+    }
+
+    private static class LoadGameListener implements WebSocket.Listener {
+        private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            if (data.toString().contains("LOAD_GAME")) {
+                loaded.complete(null);
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package server.cluster;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import dataaccess.MemoryDataAccess;
+import model.AuthData;
+import model.UserData;
+import model.gameservicerecords.JoinGameInput;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.Server;
+import websocket.commands.JoinGameCommand;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.ResumeGameCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ServerMessage;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two server nodes in one JVM sharing a store, with the players of one game connected to
+ * different nodes
+ */
+public class ClusterTest {
+
+    private final Gson gson = new Gson();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<Server> servers = new ArrayList<>();
+
+    @AfterEach
+    void stopServers() {
+        servers.forEach(Server::stop);
+    }
+
+    @Test
+    void inProcessBusServesOneGameFromTwoNodes() throws Exception {
+        InProcessGameEventBus.Hub hub = new InProcessGameEventBus.Hub();
+        GameEventBus a = hub.join("a");
+        GameEventBus b = hub.join("b");
+
+        playAcrossNodes(a, b);
+    }
+
+    @Test
+    void tcpBusServesOneGameFromTwoNodes() throws Exception {
+        TcpGameEventBus a = new TcpGameEventBus("a", new InetSocketAddress("localhost", 0));
+        TcpGameEventBus b = new TcpGameEventBus("b", new InetSocketAddress("localhost", 0));
+        a.addPeer("b", new InetSocketAddress("localhost", b.port()));
+        b.addPeer("a", new InetSocketAddress("localhost", a.port()));
+
+        playAcrossNodes(a, b);
+    }
+
+    @Test
+    void resumeOnOtherNodeReplaysMissedMove() throws Exception {
+        InProcessGameEventBus.Hub hub = new InProcessGameEventBus.Hub();
+        Setup setup = startGame(hub.join("a"), hub.join("b"));
+
+        Client white = new Client(setup.otherPort);
+        white.send(new JoinGameCommand(UserGameCommand.CommandType.CONNECT, setup.whiteToken, setup.gameID, "WHITE", true));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, white.next());
+        Client black = new Client(setup.ownerPort);
+        black.send(new JoinGameCommand(UserGameCommand.CommandType.CONNECT, setup.blackToken, setup.gameID, "BLACK"));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, black.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.NOTIFICATION, white.next());
+
+        white.send(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, setup.whiteToken, setup.gameID,
+                new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null)));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.MOVE, white.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, black.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.NOTIFICATION, black.next());
+        long lastSeen = white.lastSequence;
+        white.webSocket.abort();
+
+        black.send(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, setup.blackToken, setup.gameID,
+                new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null)));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, black.next());
+
+        // comes back through the owner this time
+        Client resumed = new Client(setup.ownerPort);
+        resumed.send(new ResumeGameCommand(UserGameCommand.CommandType.RESUME, setup.whiteToken, setup.gameID, lastSeen, true));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.MOVE, resumed.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.NOTIFICATION, resumed.next());
+        Assertions.assertTrue(resumed.nothingMore());
+        Assertions.assertTrue(black.nothingMore(), "Black was told about the resume");
+
+        resumed.send(new ResumeGameCommand(UserGameCommand.CommandType.RESUME, setup.whiteToken, setup.gameID, 1, true));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, resumed.next());
+    }
+
+    private void playAcrossNodes(GameEventBus a, GameEventBus b) throws Exception {
+        Setup setup = startGame(a, b);
+        String whiteToken = setup.whiteToken;
+        String blackToken = setup.blackToken;
+        int gameID = setup.gameID;
+        int ownerPort = setup.ownerPort;
+        int otherPort = setup.otherPort;
+        MemoryDataAccess dataAccess = setup.dataAccess;
+
+        Client white = new Client(otherPort);
+        white.send(new JoinGameCommand(UserGameCommand.CommandType.CONNECT, whiteToken, gameID, "WHITE"));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, white.next());
+
+        Client black = new Client(ownerPort);
+        black.send(new JoinGameCommand(UserGameCommand.CommandType.CONNECT, blackToken, gameID, "BLACK"));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, black.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.NOTIFICATION, white.next());
+
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        white.send(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, whiteToken, gameID, move));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, white.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, black.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.NOTIFICATION, black.next());
+
+        ChessMove reply = new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null);
+        black.send(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, blackToken, gameID, reply));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, black.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME, white.next());
+        Assertions.assertEquals(ServerMessage.ServerMessageType.NOTIFICATION, white.next());
+
+        black.send(new UserGameCommand(UserGameCommand.CommandType.LEAVE, blackToken, gameID));
+        Assertions.assertEquals(ServerMessage.ServerMessageType.NOTIFICATION, white.next());
+        white.close();
+        Assertions.assertTrue(white.nothingMore());
+        Assertions.assertTrue(black.nothingMore());
+        Assertions.assertEquals(2, dataAccess.getGame(gameID).game().getPly());
+    }
+
+    private record Setup(MemoryDataAccess dataAccess, String whiteToken, String blackToken, int gameID, int ownerPort, int otherPort) {
+    }
+
+    private Setup startGame(GameEventBus a, GameEventBus b) throws Exception {
+        MemoryDataAccess dataAccess = new MemoryDataAccess();
+        Server serverA = new Server(dataAccess, a);
+        Server serverB = new Server(dataAccess, b);
+        servers.add(serverA);
+        servers.add(serverB);
+        int portA = serverA.run(0);
+        int portB = serverB.run(0);
+
+        String whiteToken = register(portA, "white");
+        String blackToken = register(portB, "black");
+        int gameID = createGame(portA, whiteToken);
+        join(portA, whiteToken, ChessGame.TeamColor.WHITE, gameID);
+        join(portB, blackToken, ChessGame.TeamColor.BLACK, gameID);
+
+        // white goes through the node that does not own the game, so its commands are forwarded
+        String owner = new ConsistentHashRing(List.of("a", "b")).ownerOf(gameID);
+        return new Setup(dataAccess, whiteToken, blackToken, gameID,
+                owner.equals("a") ? portA : portB, owner.equals("a") ? portB : portA);
+    }
+
+    private String register(int port, String username) throws Exception {
+        String body = post(port, "/user", null, gson.toJson(new UserData(username, "password", username + "@mail.com")));
+        return gson.fromJson(body, AuthData.class).authToken();
+    }
+
+    private int createGame(int port, String authToken) throws Exception {
+        JsonObject request = new JsonObject();
+        request.addProperty("gameName", "split");
+        return gson.fromJson(post(port, "/game", authToken, request.toString()), JsonObject.class).get("gameID").getAsInt();
+    }
+
+    private void join(int port, String authToken, ChessGame.TeamColor color, int gameID) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/game"))
+                .header("Authorization", authToken)
+                .PUT(HttpRequest.BodyPublishers.ofString(gson.toJson(new JoinGameInput(color, gameID))))
+                .build();
+        Assertions.assertEquals(200, http.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private String post(int port, String path, String authToken, String body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (authToken != null) {
+            request.header("Authorization", authToken);
+        }
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), response.body());
+        return response.body();
+    }
+
+    private class Client implements WebSocket.Listener {
+        private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        private final StringBuilder partial = new StringBuilder();
+        private final WebSocket webSocket;
+        private long lastSequence;
+
+        Client(int port) {
+            webSocket = http.newWebSocketBuilder().buildAsync(URI.create("ws://localhost:" + port + "/ws"), this).join();
+        }
+
+        void send(UserGameCommand command) {
+            webSocket.sendText(gson.toJson(command), true).join();
+        }
+
+        ServerMessage.ServerMessageType next() throws InterruptedException {
+            String message = received.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(message, "No message arrived");
+            ServerMessage serverMessage = gson.fromJson(message, ServerMessage.class);
+            if (serverMessage.getSequence() != null) {
+                lastSequence = serverMessage.getSequence();
+            }
+            return serverMessage.getServerMessageType();
+        }
+
+        boolean nothingMore() throws InterruptedException {
+            return received.poll(300, TimeUnit.MILLISECONDS) == null;
+        }
+
+        void close() {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "done").join();
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                received.add(partial.toString());
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+}
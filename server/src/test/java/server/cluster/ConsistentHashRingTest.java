@@ -0,0 +1,53 @@
+package server.cluster;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class ConsistentHashRingTest {
+
+    private static final int GAMES = 30_000;
+
+    @Test
+    void gamesSpreadAcrossNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+        Map<String, Integer> owned = new HashMap<>();
+        for (int gameID = 1; gameID <= GAMES; gameID++) {
+            owned.merge(ring.ownerOf(gameID), 1, Integer::sum);
+        }
+
+        Assertions.assertEquals(3, owned.size());
+        for (int count : owned.values()) {
+            Assertions.assertTrue(count > GAMES / 5 && count < GAMES / 2, "Uneven spread: " + owned);
+        }
+    }
+
+    @Test
+    void everyNodeAgreesOnOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing sameNodes = new ConsistentHashRing(List.of("c", "a", "b"));
+        for (int gameID = 1; gameID <= GAMES; gameID++) {
+            Assertions.assertEquals(ring.ownerOf(gameID), sameNodes.ownerOf(gameID));
+        }
+    }
+
+    @Test
+    void addingNodeOnlyMovesGamesToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"));
+        int moved = 0;
+        for (int gameID = 1; gameID <= GAMES; gameID++) {
+            String owner = after.ownerOf(gameID);
+            if (!owner.equals(before.ownerOf(gameID))) {
+                Assertions.assertEquals("d", owner);
+                moved++;
+            }
+        }
+
+        Assertions.assertTrue(moved > GAMES / 8 && moved < GAMES * 3 / 8, moved + " of " + GAMES + " games moved");
+    }
+}
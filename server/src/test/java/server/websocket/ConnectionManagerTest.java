@@ -0,0 +1,340 @@
+package server.websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import model.GameData;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import server.cluster.InProcessGameEventBus;
+import websocket.BinaryProtocol;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+public class ConnectionManagerTest {
+
+    private final Gson gson = new Gson();
+
+    @Test
+    void broadcastSerializesOnce() {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 8, SlowConsumerPolicy.DISCONNECT);
+        List<String> written = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            connectionManager.add(1, session(written));
+        }
+
+        connectionManager.broadcast(1, loadGame(), null);
+
+        Assertions.assertEquals(100, written.size());
+        for (String json : written) {
+            Assertions.assertSame(written.get(0), json, "Each session got its own serialized copy");
+        }
+    }
+
+    @Test
+    void deltaSessionsGetMoveInsteadOfGame() {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 8, SlowConsumerPolicy.DISCONNECT);
+        List<String> fullWritten = new ArrayList<>();
+        List<String> deltaWritten = new ArrayList<>();
+        connectionManager.add(1, session(fullWritten));
+        connectionManager.add(1, session(deltaWritten), true);
+
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        connectionManager.broadcastGameUpdate(1, loadGame(), new MoveMessage(move, 1, 42, MoveMessage.GameStatus.IN_PROGRESS));
+
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME,
+                gson.fromJson(fullWritten.get(0), ServerMessage.class).getServerMessageType());
+        MoveMessage received = gson.fromJson(deltaWritten.get(0), MoveMessage.class);
+        Assertions.assertEquals(ServerMessage.ServerMessageType.MOVE, received.getServerMessageType());
+        Assertions.assertEquals(move, received.getMove());
+        Assertions.assertTrue(deltaWritten.get(0).length() * 5 < fullWritten.get(0).length());
+    }
+
+    @Test
+    void binarySessionsGetBinaryFrames() {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 8, SlowConsumerPolicy.DISCONNECT);
+        List<String> textWritten = new ArrayList<>();
+        List<String> binaryWritten = new ArrayList<>();
+        Session binarySession = session(binaryWritten);
+        connectionManager.add(1, session(textWritten));
+        connectionManager.add(1, binarySession);
+        connectionManager.useBinary(binarySession, true);
+
+        connectionManager.broadcast(1, loadGame(), null);
+
+        Assertions.assertEquals(ServerMessage.ServerMessageType.LOAD_GAME,
+                gson.fromJson(textWritten.get(0), ServerMessage.class).getServerMessageType());
+        ServerMessage decoded = BinaryProtocol.decodeMessage(ByteBuffer.wrap(binaryWritten.get(0).getBytes(StandardCharsets.ISO_8859_1)));
+        Assertions.assertEquals(new ChessGame(), ((LoadGameMessage) decoded).getGame());
+    }
+
+    @Test
+    void sendBinaryIgnoresTextChoice() {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 8, SlowConsumerPolicy.DISCONNECT);
+        List<String> written = new ArrayList<>();
+        Session session = session(written);
+
+        connectionManager.sendBinary(session, new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "Error: bad request"));
+
+        ServerMessage decoded = BinaryProtocol.decodeMessage(ByteBuffer.wrap(written.get(0).getBytes(StandardCharsets.ISO_8859_1)));
+        Assertions.assertEquals("Error: bad request", ((ErrorMessage) decoded).getErrorMessage());
+    }
+
+    @Test
+    void fanOutBenchmark() {
+        LoadGameMessage message = loadGame();
+        for (int subscribers : new int[]{1, 100, 10_000}) {
+            ConnectionManager connectionManager = new ConnectionManager(gson, 8, SlowConsumerPolicy.DISCONNECT);
+            List<String> written = new ArrayList<>();
+            for (int i = 0; i < subscribers; i++) {
+                connectionManager.add(1, session(written));
+            }
+
+            int rounds = Math.max(10, 100_000 / subscribers);
+            for (int i = 0; i < rounds; i++) {
+                connectionManager.broadcast(1, message, null);
+                written.clear();
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                connectionManager.broadcast(1, message, null);
+                written.clear();
+            }
+            long broadcastNanos = (System.nanoTime() - start) / rounds;
+
+            // what each broadcast used to spend serializing once per subscriber
+            start = System.nanoTime();
+            for (int i = 0; i < Math.max(1, rounds / 10); i++) {
+                for (int j = 0; j < subscribers; j++) {
+                    gson.toJson(message);
+                }
+            }
+            long perSubscriberNanos = (System.nanoTime() - start) / Math.max(1, rounds / 10);
+
+            System.out.println("Fan-out to " + subscribers + " subscribers: " + broadcastNanos / 1_000
+                    + " us per broadcast, serializing per subscriber alone took " + perSubscriberNanos / 1_000 + " us");
+        }
+    }
+
+    @Test
+    void observersPastThresholdAreTicked() throws InterruptedException {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 64, SlowConsumerPolicy.DISCONNECT,
+                new AudienceTiers(2, Duration.ofMillis(50)), InProcessGameEventBus.standalone());
+        List<String> playerWritten = Collections.synchronizedList(new ArrayList<>());
+        List<String> observerWritten = Collections.synchronizedList(new ArrayList<>());
+        List<String> tickedWritten = Collections.synchronizedList(new ArrayList<>());
+        connectionManager.add(1, session(playerWritten), false, false);
+        connectionManager.add(1, session(playerWritten), false, false);
+        connectionManager.add(1, session(observerWritten), false, true);
+        connectionManager.add(1, session(observerWritten), false, true);
+        for (int i = 0; i < 5; i++) {
+            connectionManager.add(1, session(tickedWritten), true, true);
+        }
+
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        for (int i = 0; i < 5; i++) {
+            connectionManager.broadcastGameUpdate(1, loadGame(), new MoveMessage(move, i, 42, MoveMessage.GameStatus.IN_PROGRESS));
+            connectionManager.broadcast(1, new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "move " + i), null);
+        }
+
+        Assertions.assertEquals(20, playerWritten.size());
+        Assertions.assertEquals(20, observerWritten.size());
+        Assertions.assertEquals(0, tickedWritten.size(), "Ticked observers were sent updates before the tick");
+
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (tickedWritten.size() < 30 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // one board, the latest, and every notification
+        Assertions.assertEquals(30, tickedWritten.size());
+        Assertions.assertEquals(5, tickedWritten.stream()
+                .filter(json -> gson.fromJson(json, ServerMessage.class).getServerMessageType() == ServerMessage.ServerMessageType.LOAD_GAME)
+                .count());
+
+        Assertions.assertEquals(new ConnectionManager.Audience(2, 2, 5, 4), connectionManager.audience().get(1));
+    }
+
+    @Test
+    void excludedTickedObserverGetsNothing() throws InterruptedException {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 64, SlowConsumerPolicy.DISCONNECT,
+                new AudienceTiers(0, Duration.ofMillis(20)), InProcessGameEventBus.standalone());
+        List<String> excludedWritten = Collections.synchronizedList(new ArrayList<>());
+        List<String> otherWritten = Collections.synchronizedList(new ArrayList<>());
+        Session excluded = session(excludedWritten);
+        connectionManager.add(1, excluded, false, true);
+        connectionManager.add(1, session(otherWritten), false, true);
+
+        connectionManager.broadcast(1, new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "joined as OBSERVER"),
+                connectionManager.connectionFor(excluded));
+
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (otherWritten.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, otherWritten.size());
+        Assertions.assertEquals(List.of(), excludedWritten);
+    }
+
+    @Test
+    void tieredBroadcastBenchmark() {
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        MoveMessage moveMessage = new MoveMessage(move, 1, 42, MoveMessage.GameStatus.IN_PROGRESS);
+        LoadGameMessage message = loadGame();
+        for (int observers : new int[]{100, 1_000, 10_000}) {
+            long[] nanos = new long[2];
+            for (int tiered = 0; tiered < 2; tiered++) {
+                AudienceTiers tiers = new AudienceTiers(tiered == 1 ? 100 : Integer.MAX_VALUE, Duration.ofMillis(250));
+                ConnectionManager connectionManager = new ConnectionManager(gson, 8, SlowConsumerPolicy.DISCONNECT,
+                        tiers, InProcessGameEventBus.standalone());
+                List<String> written = new NullList();
+                connectionManager.add(1, session(written), false, false);
+                connectionManager.add(1, session(written), false, false);
+                for (int i = 0; i < observers; i++) {
+                    connectionManager.add(1, session(written), false, true);
+                }
+
+                int rounds = Math.max(10, 100_000 / observers);
+                long start = 0;
+                for (int i = 0; i < rounds * 2; i++) {
+                    if (i == rounds) {
+                        start = System.nanoTime();
+                    }
+                    connectionManager.broadcastGameUpdate(1, message, moveMessage);
+                }
+                nanos[tiered] = (System.nanoTime() - start) / rounds;
+            }
+
+            System.out.println("Move to 2 players and " + observers + " observers: " + nanos[0] / 1_000
+                    + " us all immediate, " + nanos[1] / 1_000 + " us with observers past 100 ticked");
+            if (observers >= 1_000) {
+                Assertions.assertTrue(nanos[1] < nanos[0]);
+            }
+        }
+    }
+
+    @Test
+    void resumeReplaysOnlyMissedEvents() {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 64, SlowConsumerPolicy.DISCONNECT);
+        List<String> dropped = new ArrayList<>();
+        Session droppedSession = session(dropped);
+        connectionManager.add(1, droppedSession, true);
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+        connectionManager.broadcastGameUpdate(1, loadGame(), new MoveMessage(move, 1, 42, MoveMessage.GameStatus.IN_PROGRESS));
+        long lastSeen = gson.fromJson(dropped.get(0), ServerMessage.class).getSequence();
+        connectionManager.remove(1, droppedSession);
+        connectionManager.closed(droppedSession);
+
+        for (int i = 2; i <= 3; i++) {
+            connectionManager.broadcastGameUpdate(1, loadGame(), new MoveMessage(move, i, 42, MoveMessage.GameStatus.IN_PROGRESS));
+            connectionManager.broadcast(1, new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "white moved"), null, "white");
+            connectionManager.broadcast(1, new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "black moved"), null, "black");
+        }
+
+        List<String> deltaResumed = new ArrayList<>();
+        Assertions.assertTrue(connectionManager.replay(1, connectionManager.connectionFor(session(deltaResumed)), "white", lastSeen, true));
+        Assertions.assertEquals(List.of(ServerMessage.ServerMessageType.MOVE, ServerMessage.ServerMessageType.NOTIFICATION,
+                ServerMessage.ServerMessageType.MOVE, ServerMessage.ServerMessageType.NOTIFICATION), types(deltaResumed));
+        Assertions.assertTrue(deltaResumed.stream().noneMatch(json -> json.contains("white moved")),
+                "White was replayed a notification it was never sent");
+
+        List<String> fullResumed = new ArrayList<>();
+        Assertions.assertTrue(connectionManager.replay(1, connectionManager.connectionFor(session(fullResumed)), "black", lastSeen, false));
+        Assertions.assertEquals(List.of(ServerMessage.ServerMessageType.NOTIFICATION, ServerMessage.ServerMessageType.LOAD_GAME,
+                ServerMessage.ServerMessageType.NOTIFICATION), types(fullResumed));
+        Assertions.assertEquals(connectionManager.lastSequence(1) - 2,
+                gson.fromJson(fullResumed.get(1), ServerMessage.class).getSequence());
+
+        int replayedBytes = deltaResumed.stream().mapToInt(String::length).sum();
+        int snapshotBytes = gson.toJson(loadGame()).length();
+        System.out.println("Resume after 2 missed moves: " + replayedBytes + " bytes replayed for a delta client, "
+                + snapshotBytes + " bytes for a full game load");
+    }
+
+    @Test
+    void resumeAfterLongGapNeedsSnapshot() {
+        ConnectionManager connectionManager = new ConnectionManager(gson, 64, SlowConsumerPolicy.DISCONNECT);
+        long lastSeen = connectionManager.lastSequence(1);
+        for (int i = 0; i < 100; i++) {
+            connectionManager.broadcast(1, new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "event " + i), null);
+        }
+
+        List<String> resumed = new ArrayList<>();
+        Assertions.assertFalse(connectionManager.replay(1, connectionManager.connectionFor(session(resumed)), "white", lastSeen, true));
+        Assertions.assertFalse(connectionManager.replay(2, connectionManager.connectionFor(session(resumed)), "white", lastSeen, true));
+        Assertions.assertTrue(resumed.isEmpty());
+    }
+
+    private List<ServerMessage.ServerMessageType> types(List<String> written) {
+        return written.stream().map(json -> gson.fromJson(json, ServerMessage.class).getServerMessageType()).toList();
+    }
+
+    private static LoadGameMessage loadGame() {
+        return new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME,
+                new GameData(1, "white", "black", "benchmark", new ChessGame()));
+    }
+
+    // drops what is written, for benchmarks
+    private static class NullList extends AbstractList<String> {
+        @Override
+        public boolean add(String value) {
+            return true;
+        }
+
+        @Override
+        public String get(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+
+    // a session whose writes complete immediately
+    private static Session session(List<String> written) {
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(ConnectionManagerTest.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("sendString") && args.length == 2) {
+                        written.add((String) args[0]);
+                        ((WriteCallback) args[1]).writeSuccess();
+                    } else if (method.getName().equals("sendBytes") && args.length == 2) {
+                        // binary frames are recorded one char per byte
+                        ByteBuffer frame = (ByteBuffer) args[0];
+                        byte[] bytes = new byte[frame.remaining()];
+                        frame.get(bytes);
+                        written.add(new String(bytes, StandardCharsets.ISO_8859_1));
+                        ((WriteCallback) args[1]).writeSuccess();
+                    }
+                    return null;
+                });
+
+        return (Session) Proxy.newProxyInstance(ConnectionManagerTest.class.getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> true;
+                    case "getRemote" -> remote;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+}
@@ -0,0 +1,47 @@
+package server.websocket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+
+public class EventLogTest {
+
+    @Test
+    void returnsEventsAfterSequence() {
+        EventLog<String> log = new EventLog<>(4);
+        long start = log.lastSequence();
+        for (int i = 1; i <= 3; i++) {
+            String event = "event " + i;
+            Assertions.assertEquals(event, log.append(sequence -> event));
+        }
+
+        Assertions.assertEquals(start + 3, log.lastSequence());
+        Assertions.assertEquals(List.of("event 2", "event 3"), log.since(start + 1));
+        Assertions.assertEquals(List.of(), log.since(start + 3));
+        Assertions.assertEquals(List.of("event 1", "event 2", "event 3"), log.since(start));
+    }
+
+    @Test
+    void gapTooLargeNeedsSnapshot() {
+        EventLog<Long> log = new EventLog<>(4);
+        long start = log.lastSequence();
+        for (int i = 0; i < 10; i++) {
+            log.append(sequence -> sequence);
+        }
+
+        Assertions.assertNull(log.since(start + 5), "Overwritten events were treated as still logged");
+        Assertions.assertEquals(List.of(start + 7, start + 8, start + 9, start + 10), log.since(start + 6));
+    }
+
+    @Test
+    void foreignSequencesNeedSnapshot() {
+        EventLog<String> log = new EventLog<>(4);
+        long start = log.lastSequence();
+        log.append(sequence -> "event");
+
+        Assertions.assertNull(log.since(start - 1), "Sequence from before the log was created");
+        Assertions.assertNull(log.since(start + 2), "Sequence the log never handed out");
+    }
+}
@@ -0,0 +1,80 @@
+package server.websocket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class GameActorTest {
+
+    @Test
+    void tasksRunOneAtATimeInOrder() throws InterruptedException {
+        int tasks = 10_000;
+        List<Integer> order = new ArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(tasks);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GameActor actor = new GameActor(1, executor);
+            for (int i = 0; i < tasks; i++) {
+                int index = i;
+                actor.submit(() -> {
+                    Assertions.assertEquals(1, running.incrementAndGet(), "Two tasks ran at once");
+                    order.add(index);
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+
+        for (int i = 0; i < tasks; i++) {
+            Assertions.assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    void differentGamesRunInParallel() throws InterruptedException {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int gameID = 1; gameID <= 2; gameID++) {
+                new GameActor(gameID, executor).submit(() -> {
+                    bothStarted.countDown();
+                    try {
+                        if (bothStarted.await(5, TimeUnit.SECONDS)) {
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS), "One game's task blocked the other game");
+        }
+    }
+
+    @Test
+    void retiredActorRejectsTasks() throws InterruptedException {
+        CountDownLatch retired = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            GameActor actor = new GameActor(1, executor);
+            actor.submit(() -> {
+                if (actor.retireIfIdle()) {
+                    retired.countDown();
+                }
+            });
+            Assertions.assertTrue(retired.await(5, TimeUnit.SECONDS));
+            Assertions.assertFalse(actor.submit(() -> { }));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package server.websocket;
+
+import model.AuthData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+public class SessionBindingsTest {
+
+    private final SessionBindings bindings = new SessionBindings();
+    private final Connection connection = new Connection("node", "node/1");
+    private final AuthData principal = new AuthData("player", "token");
+
+    @Test
+    void matchingCommandsUseBinding() {
+        bindings.bind(connection, principal, 4, "WHITE");
+
+        Assertions.assertEquals(principal, bindings.principal(connection, "token", 4));
+        Assertions.assertEquals("WHITE", bindings.bindingOf(connection).role());
+        Assertions.assertNull(bindings.principal(connection, "other token", 4), "A different token was taken as the bound one");
+        Assertions.assertNull(bindings.principal(connection, "token", 5), "A command for another game used the binding");
+        Assertions.assertNull(bindings.principal(new Connection("node", "node/2"), "token", 4));
+
+        bindings.unbind(connection);
+        Assertions.assertNull(bindings.principal(connection, "token", 4));
+    }
+
+    @Test
+    void logoutRevokesEverySessionWithToken() {
+        Connection second = new Connection("other node", "other node/1");
+        bindings.bind(connection, principal, 4, "WHITE");
+        bindings.bind(second, principal, 5, "OBSERVER");
+        bindings.bind(new Connection("node", "node/3"), new AuthData("someone", "their token"), 4, "BLACK");
+
+        bindings.revoke("token");
+
+        Assertions.assertNull(bindings.principal(connection, "token", 4));
+        Assertions.assertNull(bindings.principal(second, "token", 5));
+        Assertions.assertNotNull(bindings.principal(new Connection("node", "node/3"), "their token", 4));
+    }
+
+    @Test
+    void revokedTokenCannotBeBound() {
+        bindings.revoke("token");
+        bindings.bind(connection, principal, 4, "WHITE");
+
+        Assertions.assertNull(bindings.principal(connection, "token", 4), "A CONNECT authenticated before logout outlived it");
+    }
+}
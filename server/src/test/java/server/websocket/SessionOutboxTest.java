@@ -0,0 +1,120 @@
+package server.websocket;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import websocket.messages.ServerMessage;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class SessionOutboxTest {
+
+    private static final ServerMessage.ServerMessageType LOAD_GAME = ServerMessage.ServerMessageType.LOAD_GAME;
+    private static final ServerMessage.ServerMessageType NOTIFICATION = ServerMessage.ServerMessageType.NOTIFICATION;
+
+    // writes the client has not acknowledged yet, so the session behaves like a stalled reader
+    private final List<String> written = new ArrayList<>();
+    private final List<WriteCallback> pendingWrites = new ArrayList<>();
+    private boolean open;
+    private OutboundMetrics metrics;
+    private Session session;
+
+    @BeforeEach
+    public void setup() {
+        open = true;
+        metrics = new OutboundMetrics();
+
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("sendString") && args.length == 2) {
+                        written.add((String) args[0]);
+                        pendingWrites.add((WriteCallback) args[1]);
+                    }
+                    return null;
+                });
+
+        session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> open;
+                    case "getRemote" -> remote;
+                    case "close" -> {
+                        open = false;
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    @Test
+    void messagesAreWrittenInOrderOneAtATime() {
+        SessionOutbox outbox = new SessionOutbox(session, 8, SlowConsumerPolicy.DISCONNECT, metrics);
+        outbox.offer(LOAD_GAME, "first");
+        outbox.offer(NOTIFICATION, "second");
+        outbox.offer(NOTIFICATION, "third");
+
+        Assertions.assertEquals(List.of("first"), written);
+        Assertions.assertEquals(2, metrics.snapshot().queuedMessages());
+
+        pendingWrites.get(0).writeSuccess();
+        pendingWrites.get(1).writeSuccess();
+
+        Assertions.assertEquals(List.of("first", "second", "third"), written);
+        Assertions.assertEquals(2, metrics.snapshot().sentMessages());
+        Assertions.assertEquals(0, metrics.snapshot().queuedMessages());
+    }
+
+    @Test
+    void dropOldestLoadGameKeepsNotifications() {
+        SessionOutbox outbox = new SessionOutbox(session, 2, SlowConsumerPolicy.DROP_OLDEST_LOAD_GAME, metrics);
+        outbox.offer(NOTIFICATION, "in flight");
+        outbox.offer(LOAD_GAME, "old board");
+        outbox.offer(NOTIFICATION, "moved");
+        outbox.offer(LOAD_GAME, "new board");
+
+        drain();
+
+        Assertions.assertEquals(List.of("in flight", "moved", "new board"), written);
+        Assertions.assertEquals(1, metrics.snapshot().droppedMessages());
+        Assertions.assertTrue(open);
+    }
+
+    @Test
+    void coalesceKeepsOnlyLatestBoard() {
+        SessionOutbox outbox = new SessionOutbox(session, 8, SlowConsumerPolicy.COALESCE, metrics);
+        outbox.offer(NOTIFICATION, "in flight");
+        outbox.offer(LOAD_GAME, "board 1");
+        outbox.offer(LOAD_GAME, "board 2");
+        outbox.offer(LOAD_GAME, "board 3");
+
+        drain();
+
+        Assertions.assertEquals(List.of("in flight", "board 3"), written);
+        Assertions.assertEquals(2, metrics.snapshot().coalescedMessages());
+    }
+
+    @Test
+    void disconnectWhenFull() {
+        SessionOutbox outbox = new SessionOutbox(session, 1, SlowConsumerPolicy.DISCONNECT, metrics);
+        outbox.offer(NOTIFICATION, "in flight");
+        outbox.offer(NOTIFICATION, "queued");
+        outbox.offer(NOTIFICATION, "overflow");
+
+        Assertions.assertFalse(open);
+        Assertions.assertEquals(1, metrics.snapshot().slowConsumerDisconnects());
+        Assertions.assertEquals(0, metrics.snapshot().queuedMessages());
+    }
+
+    private void drain() {
+        for (int i = 0; i < pendingWrites.size(); i++) {
+            pendingWrites.get(i).writeSuccess();
+        }
+    }
+}
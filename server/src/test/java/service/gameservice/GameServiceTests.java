@@ -4,6 +4,8 @@ import exceptions.*;
 import chess.ChessGame;
 import dataaccess.*;
 import model.GameData;
+import model.gameservicerecords.GameListData;
+import model.gameservicerecords.GameListQuery;
 import org.junit.jupiter.api.*;
 
 import service.GameService;
@@ -118,4 +120,41 @@ public class GameServiceTests {
         assertEquals(4, gameList.size());
     }
 
+    @Test
+    public void listGamesPaged() throws DataAccessException {
+        for (int i = 1; i <= 5; i++) {
+            gameService.createGame(existingUserAuth.authToken(), "exampleGame" + i);
+        }
+
+        GameListData firstPage = gameService.listGames(existingUserAuth.authToken(), new GameListQuery(false, false, 0, 3));
+        assertEquals(3, firstPage.games().size());
+        assertNotNull(firstPage.nextCursor());
+
+        GameListData secondPage = gameService.listGames(existingUserAuth.authToken(),
+                new GameListQuery(false, false, firstPage.nextCursor(), 3));
+        assertEquals(2, secondPage.games().size());
+        assertNull(secondPage.nextCursor());
+    }
+
+    @Test
+    public void listMyOpenGames() throws DataAccessException {
+        int joinedGame = gameService.createGame(existingUserAuth.authToken(), "exampleGame1");
+        gameService.createGame(existingUserAuth.authToken(), "exampleGame2");
+        gameService.joinGame(existingUserAuth.authToken(), BLACK, joinedGame);
+
+        GameListData myGames = gameService.listGames(existingUserAuth.authToken(), new GameListQuery(true, false, 0, 0));
+        assertEquals(1, myGames.games().size());
+        assertEquals(joinedGame, myGames.games().iterator().next().gameID());
+
+        GameListData openGames = gameService.listGames(existingUserAuth.authToken(), new GameListQuery(false, true, 0, 0));
+        assertEquals(2, openGames.games().size());
+    }
+
+    @Test
+    public void listGamesBadCursor() {
+        BadRequestException exception = assertThrows(BadRequestException.class,
+                () -> gameService.listGames(existingUserAuth.authToken(), new GameListQuery(false, false, -1, 0)));
+        assertEquals("Error: bad request", exception.getMessage());
+    }
+
 }
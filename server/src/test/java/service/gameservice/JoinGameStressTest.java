@@ -0,0 +1,135 @@
+package service.gameservice;
+
+import chess.ChessGame;
+import dataaccess.CachingDataAccess;
+import dataaccess.DataAccessException;
+import dataaccess.GameConflictException;
+import dataaccess.MemoryDataAccess;
+import exceptions.AlreadyTakenException;
+import model.AuthData;
+import model.GameData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import service.GameService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Joins that race for the same game each read it before either writes, so without the version
+ * check the second write would put back the seat the first one took
+ */
+public class JoinGameStressTest {
+
+    private static final int GAMES = 300;
+
+    private final AtomicInteger conflicts = new AtomicInteger();
+    private final MemoryDataAccess store = new MemoryDataAccess() {
+        @Override
+        public GameData getGame(int gameID) {
+            GameData game = super.getGame(gameID);
+            // widens the gap between a join's read and its write
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return game;
+        }
+
+        @Override
+        public void updateGame(GameData game) throws DataAccessException {
+            try {
+                super.updateGame(game);
+            } catch (GameConflictException e) {
+                conflicts.incrementAndGet();
+                throw e;
+            }
+        }
+    };
+    private GameService gameService;
+
+    @BeforeEach
+    void setup() {
+        gameService = new GameService(new CachingDataAccess(store, 64));
+    }
+
+    @Test
+    void racingJoinsLoseNoSeats() throws Exception {
+        List<Integer> gameIDs = new ArrayList<>();
+        for (int i = 0; i < GAMES; i++) {
+            gameIDs.add(store.createGame(new GameData(0, null, null, "game " + i, new ChessGame())));
+        }
+
+        try (ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<GameData>> joins = new ArrayList<>();
+            for (int gameID : gameIDs) {
+                CountDownLatch bothReady = new CountDownLatch(2);
+                for (ChessGame.TeamColor color : ChessGame.TeamColor.values()) {
+                    AuthData player = new AuthData(color + " " + gameID, "token");
+                    joins.add(handlers.submit(() -> {
+                        bothReady.countDown();
+                        bothReady.await();
+                        return gameService.joinGame(player, color, gameID);
+                    }));
+                }
+            }
+            for (Future<GameData> join : joins) {
+                join.get();
+            }
+        }
+
+        int lostSeats = 0;
+        for (int gameID : gameIDs) {
+            GameData game = store.getGame(gameID);
+            if (!("WHITE " + gameID).equals(game.whiteUsername()) || !("BLACK " + gameID).equals(game.blackUsername())) {
+                lostSeats++;
+            }
+        }
+        System.out.println(GAMES * 2 + " racing joins: " + conflicts.get() + " conflicts retried, " + lostSeats + " seats lost");
+        Assertions.assertEquals(0, lostSeats);
+        Assertions.assertTrue(conflicts.get() > 0, "The joins never raced, so nothing was tested");
+    }
+
+    @Test
+    void oneWinnerPerSeat() throws Exception {
+        int gameID = store.createGame(new GameData(0, null, null, "contested", new ChessGame()));
+        int players = 50;
+        CountDownLatch allReady = new CountDownLatch(players);
+        AtomicInteger taken = new AtomicInteger();
+
+        try (ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<GameData>> joins = new ArrayList<>();
+            for (int i = 0; i < players; i++) {
+                AuthData player = new AuthData("player " + i, "token");
+                joins.add(handlers.submit(() -> {
+                    allReady.countDown();
+                    allReady.await();
+                    try {
+                        return gameService.joinGame(player, ChessGame.TeamColor.WHITE, gameID);
+                    } catch (AlreadyTakenException e) {
+                        taken.incrementAndGet();
+                        return null;
+                    }
+                }));
+            }
+            List<String> winners = new ArrayList<>();
+            for (Future<GameData> join : joins) {
+                GameData joined = join.get();
+                if (joined != null) {
+                    winners.add(joined.whiteUsername());
+                }
+            }
+
+            Assertions.assertEquals(1, winners.size(), "More than one player was given the seat: " + winners);
+            Assertions.assertEquals(players - 1, taken.get());
+            Assertions.assertEquals(winners.getFirst(), store.getGame(gameID).whiteUsername());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package service.gameservice;
+
+import model.GameData;
+import model.gameservicerecords.LobbyEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import service.Lobby;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LobbyTest {
+
+    private static LobbyEvent created(int gameID) {
+        return LobbyEvent.of(LobbyEvent.Type.GAME_CREATED, new GameData(gameID, null, null, "game " + gameID, null));
+    }
+
+    @Test
+    void eachChangeBumpsVersionByOne() {
+        Lobby lobby = new Lobby(8);
+        long start = lobby.version();
+        List<Lobby.Change> watched = new ArrayList<>();
+        Assertions.assertEquals(start, lobby.watch(watched::add));
+
+        lobby.changed(created(1));
+        lobby.changedElsewhere(created(2));
+
+        Assertions.assertEquals(start + 2, lobby.version());
+        Assertions.assertEquals(List.of(start + 1, start + 2), watched.stream().map(Lobby.Change::version).toList());
+    }
+
+    @Test
+    void sinceReturnsOnlyMissedChanges() {
+        Lobby lobby = new Lobby(8);
+        long start = lobby.version();
+        for (int i = 1; i <= 5; i++) {
+            lobby.changed(created(i));
+        }
+
+        List<Lobby.Change> missed = lobby.since(start + 3);
+        Assertions.assertEquals(2, missed.size());
+        Assertions.assertEquals(4, missed.get(0).event().game().gameID());
+        Assertions.assertTrue(lobby.since(lobby.version()).isEmpty());
+    }
+
+    @Test
+    void sinceGivesUpOnForgottenOrForeignVersions() {
+        Lobby lobby = new Lobby(3);
+        long start = lobby.version();
+        for (int i = 1; i <= 5; i++) {
+            lobby.changed(created(i));
+        }
+
+        Assertions.assertNull(lobby.since(start + 1));
+        Assertions.assertEquals(3, lobby.since(start + 2).size());
+        Assertions.assertNull(lobby.since(42));
+        Assertions.assertNull(lobby.since(lobby.version() + 1));
+    }
+
+    @Test
+    void localChangesAreAnnounced() {
+        Lobby lobby = new Lobby(8);
+        List<LobbyEvent> announced = new ArrayList<>();
+        lobby.onLocalChange(announced::add);
+
+        lobby.changed(created(1));
+        lobby.changedElsewhere(created(2));
+
+        Assertions.assertEquals(List.of(created(1)), announced);
+    }
+}
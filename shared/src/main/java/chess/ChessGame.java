@@ -17,12 +17,14 @@ public class ChessGame {
     TeamColor teamTurn;
     ChessBoard board;
     private boolean gameOver;
+    private int ply;
 
     public ChessGame() {
         teamTurn = TeamColor.WHITE;
         board = new ChessBoard();
         board.resetBoard();
         gameOver = false;
+        ply = 0;
     }
 
     /**
@@ -50,6 +52,17 @@ public class ChessGame {
         gameOver = true;
     }
 
+    /**
+     * @return the number of half moves that have been played in this game
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    void setPly(int ply) {
+        this.ply = ply;
+    }
+
     /**
      * Enum identifying the 2 possible teams in a chess game
      */
@@ -112,6 +125,7 @@ public class ChessGame {
 
         teamTurn = getOpposingTeam(teamTurn);
         movePiece(board, move);
+        ply++;
 
     }
 
@@ -296,6 +310,8 @@ public class ChessGame {
 
         copy.gameOver = this.gameOver;
 
+        copy.ply = this.ply;
+
         return copy;
     }
 
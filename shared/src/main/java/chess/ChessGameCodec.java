@@ -0,0 +1,127 @@
+package chess;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Converts a ChessGame to and from a fixed 40 byte binary form.
+ * <p>
+ * Layout (version 1):
+ * <pre>
+ * byte  0      MAGIC, never '{' so old JSON rows can be told apart
+ * byte  1      format version
+ * byte  2      flags: bit 0 black to move, bit 1 game over,
+ *              bits 2-5 castling rights, bit 6 en passant available (reserved)
+ * byte  3      en passant file (reserved)
+ * bytes 4-7    ply
+ * bytes 8-39   one nibble per square, a1 first: 0 empty, piece type ordinal + 1, +8 for black
+ * </pre>
+ */
+public class ChessGameCodec {
+
+    public static final int ENCODED_LENGTH = 40;
+
+    private static final byte MAGIC = (byte) 0xC7;
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_BLACK_TO_MOVE = 1;
+    private static final int FLAG_GAME_OVER = 1 << 1;
+    private static final int BLACK_PIECE = 0x8;
+
+    private ChessGameCodec() {
+    }
+
+    public static byte[] encode(ChessGame game) {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_LENGTH);
+
+        int flags = 0;
+        if (game.getTeamTurn() == ChessGame.TeamColor.BLACK) {
+            flags |= FLAG_BLACK_TO_MOVE;
+        }
+        if (game.isGameOver()) {
+            flags |= FLAG_GAME_OVER;
+        }
+
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+        buffer.put((byte) 0);
+        buffer.putInt(game.getPly());
+
+        ChessPiece[][] squares = game.getBoard().squares;
+        for (int square = 0; square < 64; square += 2) {
+            int high = pieceNibble(squares[square / 8][square % 8]);
+            int low = pieceNibble(squares[(square + 1) / 8][(square + 1) % 8]);
+            buffer.put((byte) ((high << 4) | low));
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * CRC32 of the encoded game, so two copies can check they hold the same position, turn and ply
+     */
+    public static long positionHash(ChessGame game) {
+        CRC32 crc = new CRC32();
+        crc.update(encode(game));
+        return crc.getValue();
+    }
+
+    public static ChessGame decode(byte[] encoded) {
+        if (!isEncoded(encoded)) {
+            throw new IllegalArgumentException("Not an encoded chess game");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        buffer.get();
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported chess game encoding version: " + version);
+        }
+
+        int flags = buffer.get();
+        buffer.get();
+        int ply = buffer.getInt();
+
+        ChessBoard board = new ChessBoard();
+        for (int square = 0; square < 64; square += 2) {
+            int packed = buffer.get() & 0xFF;
+            board.squares[square / 8][square % 8] = nibblePiece(packed >> 4);
+            board.squares[(square + 1) / 8][(square + 1) % 8] = nibblePiece(packed & 0xF);
+        }
+
+        ChessGame game = new ChessGame();
+        game.setBoard(board);
+        game.setTeamTurn((flags & FLAG_BLACK_TO_MOVE) != 0 ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE);
+        if ((flags & FLAG_GAME_OVER) != 0) {
+            game.setGameOver();
+        }
+        game.setPly(ply);
+        return game;
+    }
+
+    /**
+     * @return true if the bytes were produced by this codec, false for anything else (such as legacy JSON)
+     */
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length == ENCODED_LENGTH && bytes[0] == MAGIC;
+    }
+
+    private static int pieceNibble(ChessPiece piece) {
+        if (piece == null) {
+            return 0;
+        }
+        int nibble = piece.getPieceType().ordinal() + 1;
+        if (piece.getTeamColor() == ChessGame.TeamColor.BLACK) {
+            nibble |= BLACK_PIECE;
+        }
+        return nibble;
+    }
+
+    private static ChessPiece nibblePiece(int nibble) {
+        if (nibble == 0) {
+            return null;
+        }
+        ChessGame.TeamColor color = (nibble & BLACK_PIECE) != 0 ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+        return new ChessPiece(color, ChessPiece.PieceType.values()[(nibble & 0x7) - 1]);
+    }
+}
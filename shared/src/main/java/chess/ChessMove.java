@@ -66,6 +66,40 @@ public class ChessMove {
         return String.format("%s,%s,%s", startPosition, endPosition, promotionPiece);
     }
 
+    /**
+     * Packs this move into a single int: start square in bits 0-5, end square in
+     * bits 6-11 and the promotion piece (ordinal + 1, 0 for none) in bits 12-14.
+     * The result always fits in a SMALLINT.
+     *
+     * @return the compact form of this move
+     */
+    public int encode() {
+        int promotion = promotionPiece == null ? 0 : promotionPiece.ordinal() + 1;
+        return squareIndex(startPosition) | (squareIndex(endPosition) << 6) | (promotion << 12);
+    }
+
+    /**
+     * Rebuilds a move from the value produced by {@link #encode()}
+     *
+     * @param encoded the compact move
+     * @return the decoded move
+     */
+    public static ChessMove decode(int encoded) {
+        ChessPosition start = squarePosition(encoded & 0x3F);
+        ChessPosition end = squarePosition((encoded >> 6) & 0x3F);
+        int promotion = (encoded >> 12) & 0x7;
+        ChessPiece.PieceType promotionPiece = promotion == 0 ? null : ChessPiece.PieceType.values()[promotion - 1];
+        return new ChessMove(start, end, promotionPiece);
+    }
+
+    private static int squareIndex(ChessPosition position) {
+        return (position.getRow() - 1) * 8 + (position.getColumn() - 1);
+    }
+
+    private static ChessPosition squarePosition(int index) {
+        return new ChessPosition(index / 8 + 1, index % 8 + 1);
+    }
+
     public ChessMove deepCopy() {
         return new ChessMove(this.startPosition, this.endPosition, this.promotionPiece);
     }
@@ -2,6 +2,14 @@ package model;
 
 import chess.ChessGame;
 
-public record GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game) {
-}
+/**
+ * @param version how many times the stored game has been written, 0 for a game that was not read from a store.
+ *                Stores only accept an update carrying the version they hold, so a write based on a stale read
+ *                fails instead of overwriting what happened since.
+ */
+public record GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game, long version) {
 
+    public GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game) {
+        this(gameID, whiteUsername, blackUsername, gameName, game, 0);
+    }
+}
@@ -2,5 +2,8 @@ package model.gameservicerecords;
 
 import java.util.Collection;
 
-public record GameListData(Collection<ShortenedGameData> games) {
+public record GameListData(Collection<ShortenedGameData> games, Integer nextCursor) {
+    public GameListData(Collection<ShortenedGameData> games) {
+        this(games, null);
+    }
 }
@@ -0,0 +1,12 @@
+package model.gameservicerecords;
+
+/**
+ * Filters and keyset pagination for the lobby listing. Only games with an ID greater than
+ * {@code afterGameID} are returned, at most {@code limit} of them (0 for no limit).
+ */
+public record GameListQuery(boolean mineOnly, boolean openSeatsOnly, int afterGameID, int limit) {
+
+    public static GameListQuery all() {
+        return new GameListQuery(false, false, 0, 0);
+    }
+}
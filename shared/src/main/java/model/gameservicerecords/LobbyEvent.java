@@ -0,0 +1,31 @@
+package model.gameservicerecords;
+
+import model.GameData;
+
+/**
+ * One change to the game list, as pushed to clients watching the lobby. Each carries the game's
+ * listing as it stands after the change, so applying an event twice does no harm.
+ *
+ * @param game the changed game's listing, null for CLEARED
+ */
+public record LobbyEvent(Type type, ShortenedGameData game) {
+
+    public enum Type {
+        GAME_CREATED,
+        SEAT_FILLED,
+        SEAT_OPENED,
+        GAME_FINISHED,
+        /**
+         * Every game was deleted
+         */
+        CLEARED
+    }
+
+    public static LobbyEvent of(Type type, GameData game) {
+        return new LobbyEvent(type, new ShortenedGameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName()));
+    }
+
+    public static LobbyEvent cleared() {
+        return new LobbyEvent(Type.CLEARED, null);
+    }
+}
@@ -0,0 +1,173 @@
+package serverfacade;
+
+import com.google.gson.Gson;
+import model.gameservicerecords.GameListData;
+import model.gameservicerecords.LobbyEvent;
+import model.gameservicerecords.ShortenedGameData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The game list kept current by the server's lobby feed instead of by polling GET /game. It
+ * starts from a snapshot of the whole list and then applies each change as it is pushed. After
+ * a dropped connection it reconnects with the ID of the last event it saw, so the server only
+ * has to send what was missed.
+ */
+public class LiveGameList implements AutoCloseable {
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final HttpClient client;
+    private final URI uri;
+    private final String authToken;
+    private final Runnable onChange;
+    private final Gson gson = new Gson();
+    private final ConcurrentSkipListMap<Integer, ShortenedGameData> games = new ConcurrentSkipListMap<>();
+    private final Thread reader;
+
+    private volatile String lastEventID;
+    private volatile boolean loaded;
+    private volatile boolean closed;
+    private volatile InputStream body;
+
+    /**
+     * @param onChange run on the feed's thread after every change
+     */
+    LiveGameList(HttpClient client, String serverUrl, String authToken, Runnable onChange) {
+        this.client = client;
+        this.uri = URI.create(serverUrl + "/lobby/events");
+        this.authToken = authToken;
+        this.onChange = onChange;
+        this.reader = Thread.ofVirtual().name("lobby-feed").start(this::readFeed);
+    }
+
+    /**
+     * Whether the first snapshot has arrived, so games() is the full list
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * The games as of the last event, in ID order
+     */
+    public List<ShortenedGameData> games() {
+        return new ArrayList<>(games.values());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reader.interrupt();
+        InputStream current = body;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // closing only to wake the reader
+            }
+        }
+    }
+
+    private void readFeed() {
+        while (!closed) {
+            try {
+                var request = HttpRequest.newBuilder(uri)
+                        .header("Accept", "text/event-stream")
+                        .header("Authorization", authToken);
+                if (lastEventID != null) {
+                    request.header("Last-Event-ID", lastEventID);
+                }
+                HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+                body = response.body();
+                if (response.statusCode() == 401) {
+                    body.close();
+                    return;
+                }
+                if (response.statusCode() == 200) {
+                    readEvents(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+                } else {
+                    body.close();
+                }
+            } catch (IOException e) {
+                // dropped, reconnect below
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void readEvents(BufferedReader lines) throws IOException {
+        String event = null;
+        String id = null;
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (event != null) {
+                    apply(event, data.toString());
+                    if (id != null) {
+                        lastEventID = id;
+                    }
+                    onChange.run();
+                }
+                event = null;
+                id = null;
+                data.setLength(0);
+            } else if (line.startsWith("event:")) {
+                event = field(line);
+            } else if (line.startsWith("id:")) {
+                id = field(line);
+            } else if (line.startsWith("data:")) {
+                if (!data.isEmpty()) {
+                    data.append('\n');
+                }
+                data.append(field(line));
+            }
+        }
+    }
+
+    private void apply(String event, String data) {
+        switch (event) {
+            case "snapshot" -> {
+                GameListData snapshot = gson.fromJson(data, GameListData.class);
+                games.clear();
+                snapshot.games().forEach(game -> games.put(game.gameID(), game));
+                loaded = true;
+            }
+            case "lobby" -> {
+                LobbyEvent change = gson.fromJson(data, LobbyEvent.class);
+                if (change.type() == LobbyEvent.Type.CLEARED) {
+                    games.clear();
+                } else {
+                    games.put(change.game().gameID(), change.game());
+                }
+            }
+            default -> {
+                // newer event kinds are left to newer clients
+            }
+        }
+    }
+
+    private static String field(String line) {
+        String value = line.substring(line.indexOf(':') + 1);
+        return value.startsWith(" ") ? value.substring(1) : value;
+    }
+}
@@ -7,20 +7,33 @@ import exceptions.HttpResponseException;
 import model.*;
 import model.gameservicerecords.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.*;
 import java.net.http.*;
 import java.net.http.HttpRequest.BodyPublisher;
 import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 public class ServerFacade {
 
     private final HttpClient client = HttpClient.newHttpClient();
     private final String serverUrl;
+
+    // the last game list and its ETag, sent back so an unchanged list is answered with a 304
+    private volatile CachedGameList cachedGameList;
+
+    private record CachedGameList(String authToken, String etag, List<ShortenedGameData> games) {
+    }
+
     public ServerFacade(String url) {
         serverUrl = url;
     }
@@ -57,13 +70,42 @@ public class ServerFacade {
 
     }
 
+    /**
+     * Asks only for changes since the last list fetched with the same token, reusing that list
+     * when the server says nothing has changed
+     */
     public List<ShortenedGameData> listGames(String authToken) throws HttpResponseException {
-        var request = buildRequest("GET", "/game", null, authToken);
-        var response = sendRequest(request);
+        var builder = HttpRequest.newBuilder(URI.create(serverUrl + "/game"))
+                .GET()
+                .setHeader("Accept-Encoding", "gzip");
+        if (authToken != null && !authToken.isEmpty()) {
+            builder.setHeader("Authorization", authToken);
+        }
+        CachedGameList cached = cachedGameList;
+        if (cached != null && cached.authToken().equals(authToken)) {
+            builder.setHeader("If-None-Match", cached.etag());
+        }
+
+        var response = sendRequest(builder.build(), decompressing());
+        if (response.statusCode() == 304 && cached != null) {
+            return new ArrayList<>(cached.games());
+        }
+
         var gameList = handleResponse(response, GameListData.class);
+        var etag = response.headers().firstValue("ETag");
+        cachedGameList = etag.map(tag -> new CachedGameList(authToken, tag, List.copyOf(gameList.games()))).orElse(null);
         return new ArrayList<>(gameList.games());
     }
 
+    /**
+     * Follows the lobby feed until closed, keeping the returned list current
+     *
+     * @param onChange run after every change, on the feed's own thread
+     */
+    public LiveGameList watchGames(String authToken, Runnable onChange) {
+        return new LiveGameList(client, serverUrl, authToken, onChange);
+    }
+
     public GameData joinGame(String authToken, JoinGameInput gameData) throws HttpResponseException {
         var request = buildRequest("PUT", "/game", gameData, authToken);
         var response = sendRequest(request);
@@ -96,10 +138,14 @@ public class ServerFacade {
     }
 
     private HttpResponse<String> sendRequest(HttpRequest request) throws HttpResponseException {
+        return sendRequest(request, BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> sendRequest(HttpRequest request, BodyHandler<String> bodyHandler) throws HttpResponseException {
         HttpResponse<String> response;
 
         try {
-            response = client.send(request, BodyHandlers.ofString());
+            response = client.send(request, bodyHandler);
         } catch (IOException | InterruptedException ex) {
 
             throw new HttpResponseException(404, "Error: Server Unavailable");
@@ -124,6 +170,25 @@ public class ServerFacade {
         return response;
     }
 
+    // HttpClient leaves Content-Encoding to the caller
+    private static BodyHandler<String> decompressing() {
+        return responseInfo -> {
+            boolean gzipped = responseInfo.headers().firstValue("Content-Encoding")
+                    .map("gzip"::equalsIgnoreCase)
+                    .orElse(false);
+            return BodySubscribers.mapping(BodySubscribers.ofByteArray(), bytes -> gzipped ? gunzip(bytes)
+                    : new String(bytes, StandardCharsets.UTF_8));
+        };
+    }
+
+    private static String gunzip(byte[] bytes) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private <T> T handleResponse(HttpResponse<String> response, Class<T> responseClass) throws HttpResponseException {
         var status = response.statusCode();
 
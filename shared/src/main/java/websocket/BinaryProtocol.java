@@ -0,0 +1,221 @@
+package websocket;
+
+import chess.ChessGameCodec;
+import chess.ChessMove;
+import websocket.commands.JoinGameCommand;
+import websocket.commands.LeaveGameCommand;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.ReseignGameCommand;
+import websocket.commands.ResumeGameCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed layout binary frames for websocket commands and server messages, used instead of JSON by
+ * clients that send their commands as binary frames. The server answers a session in whichever
+ * form its CONNECT arrived in.
+ * <p>
+ * Every frame starts with a two byte header, MAGIC and VERSION, followed by the command or
+ * message type ordinal. Strings are an unsigned short byte length followed by UTF-8, with
+ * 0xFFFF meaning null. A message type with its top bit set is followed by a long sequence.
+ * <pre>
+ * command  header, type, int gameID, string authToken, then
+ *            CONNECT    string role, byte flags (bit 0 delta updates)
+ *            MAKE_MOVE  short move (ChessMove.encode)
+ *            RESUME     long last sequence, byte flags (bit 0 delta updates)
+ * message  header, type, [long sequence], then
+ *            LOAD_GAME              40 byte game (ChessGameCodec)
+ *            ERROR, NOTIFICATION    string text
+ *            MOVE                   short move, int ply, int position hash, byte status
+ * </pre>
+ */
+public class BinaryProtocol {
+
+    public static final byte MAGIC = (byte) 0xCB;
+    public static final byte VERSION = 1;
+
+    private static final int HEADER_LENGTH = 3;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int FLAG_DELTA_UPDATES = 1;
+    private static final int HAS_SEQUENCE = 0x80;
+
+    private BinaryProtocol() {
+    }
+
+    public static byte[] encodeCommand(UserGameCommand command) {
+        byte[] authToken = utf8(command.getAuthToken());
+        byte[] role = command instanceof JoinGameCommand join ? utf8(join.getRole()) : null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + Integer.BYTES + stringLength(authToken)
+                + stringLength(role) + 1 + Long.BYTES);
+        putHeader(buffer, command.getCommandType().ordinal());
+        buffer.putInt(command.getGameID() == null ? 0 : command.getGameID());
+        putString(buffer, authToken);
+
+        if (command instanceof JoinGameCommand join) {
+            putString(buffer, role);
+            buffer.put((byte) (join.wantsDeltaUpdates() ? FLAG_DELTA_UPDATES : 0));
+        } else if (command instanceof MakeMoveCommand makeMove) {
+            buffer.putShort((short) makeMove.getMove().encode());
+        } else if (command instanceof ResumeGameCommand resume) {
+            buffer.putLong(resume.getLastSequence());
+            buffer.put((byte) (resume.wantsDeltaUpdates() ? FLAG_DELTA_UPDATES : 0));
+        }
+
+        return trimmed(buffer);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is not a well formed command
+     */
+    public static UserGameCommand decodeCommand(ByteBuffer frame) {
+        try {
+            UserGameCommand.CommandType type = UserGameCommand.CommandType.values()[readHeader(frame)];
+            int gameID = frame.getInt();
+            String authToken = getString(frame);
+
+            return switch (type) {
+                case CONNECT -> {
+                    String role = getString(frame);
+                    boolean deltaUpdates = (frame.get() & FLAG_DELTA_UPDATES) != 0;
+                    yield new JoinGameCommand(type, authToken, gameID, role, deltaUpdates);
+                }
+                case MAKE_MOVE -> new MakeMoveCommand(type, authToken, gameID, ChessMove.decode(frame.getShort() & 0xFFFF));
+                case LEAVE -> new LeaveGameCommand(type, authToken, gameID);
+                case RESIGN -> new ReseignGameCommand(type, authToken, gameID);
+                case RESYNC -> new UserGameCommand(type, authToken, gameID);
+                case RESUME -> {
+                    long lastSequence = frame.getLong();
+                    boolean deltaUpdates = (frame.get() & FLAG_DELTA_UPDATES) != 0;
+                    yield new ResumeGameCommand(type, authToken, gameID, lastSequence, deltaUpdates);
+                }
+            };
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed binary command", e);
+        }
+    }
+
+    public static byte[] encodeMessage(ServerMessage message) {
+        ByteBuffer buffer;
+        int sequenceLength = message.getSequence() == null ? 0 : Long.BYTES;
+        switch (message.getServerMessageType()) {
+            case LOAD_GAME -> {
+                buffer = ByteBuffer.allocate(HEADER_LENGTH + sequenceLength + ChessGameCodec.ENCODED_LENGTH);
+                putMessageHeader(buffer, message);
+                buffer.put(ChessGameCodec.encode(((LoadGameMessage) message).getGame()));
+            }
+            case ERROR, NOTIFICATION -> {
+                byte[] text = utf8(message instanceof ErrorMessage error
+                        ? error.getErrorMessage() : ((NotificationMessage) message).getMessage());
+                buffer = ByteBuffer.allocate(HEADER_LENGTH + sequenceLength + stringLength(text));
+                putMessageHeader(buffer, message);
+                putString(buffer, text);
+            }
+            case MOVE -> {
+                MoveMessage move = (MoveMessage) message;
+                buffer = ByteBuffer.allocate(HEADER_LENGTH + sequenceLength + Short.BYTES + Integer.BYTES * 2 + 1);
+                putMessageHeader(buffer, message);
+                buffer.putShort((short) move.getMove().encode());
+                buffer.putInt(move.getPly());
+                buffer.putInt((int) move.getPositionHash());
+                buffer.put((byte) move.getStatus().ordinal());
+            }
+            default -> throw new IllegalArgumentException("No binary form for " + message.getServerMessageType());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is not a well formed server message
+     */
+    public static ServerMessage decodeMessage(ByteBuffer frame) {
+        try {
+            int typeByte = readHeader(frame) & 0xFF;
+            ServerMessage.ServerMessageType type = ServerMessage.ServerMessageType.values()[typeByte & ~HAS_SEQUENCE];
+            Long sequence = (typeByte & HAS_SEQUENCE) != 0 ? frame.getLong() : null;
+
+            ServerMessage message = switch (type) {
+                case LOAD_GAME -> {
+                    byte[] game = new byte[ChessGameCodec.ENCODED_LENGTH];
+                    frame.get(game);
+                    yield new LoadGameMessage(ChessGameCodec.decode(game));
+                }
+                case ERROR -> new ErrorMessage(type, getString(frame));
+                case NOTIFICATION -> new NotificationMessage(type, getString(frame));
+                case MOVE -> new MoveMessage(ChessMove.decode(frame.getShort() & 0xFFFF), frame.getInt(),
+                        Integer.toUnsignedLong(frame.getInt()), MoveMessage.GameStatus.values()[frame.get()]);
+            };
+            message.setSequence(sequence);
+            return message;
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed binary message", e);
+        }
+    }
+
+    private static void putHeader(ByteBuffer buffer, int type) {
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) type);
+    }
+
+    private static void putMessageHeader(ByteBuffer buffer, ServerMessage message) {
+        if (message.getSequence() == null) {
+            putHeader(buffer, message.getServerMessageType().ordinal());
+        } else {
+            putHeader(buffer, message.getServerMessageType().ordinal() | HAS_SEQUENCE);
+            buffer.putLong(message.getSequence());
+        }
+    }
+
+    private static int readHeader(ByteBuffer frame) {
+        if (frame.get() != MAGIC || frame.get() != VERSION) {
+            throw new IllegalArgumentException("Not a version " + VERSION + " binary frame");
+        }
+        return frame.get();
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringLength(byte[] utf8) {
+        return Short.BYTES + (utf8 == null ? 0 : utf8.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] utf8) {
+        if (utf8 == null) {
+            buffer.putShort((short) NULL_STRING);
+        } else {
+            if (utf8.length >= NULL_STRING) {
+                throw new IllegalArgumentException("String too long for a binary frame: " + utf8.length + " bytes");
+            }
+            buffer.putShort((short) utf8.length);
+            buffer.put(utf8);
+        }
+    }
+
+    private static String getString(ByteBuffer frame) {
+        int length = frame.getShort() & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        frame.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] trimmed(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+}
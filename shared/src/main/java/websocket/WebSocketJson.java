@@ -0,0 +1,210 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import websocket.commands.JoinGameCommand;
+import websocket.commands.LeaveGameCommand;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.ReseignGameCommand;
+import websocket.commands.ResumeGameCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.io.IOException;
+
+/**
+ * Gson set up so that reading a {@link UserGameCommand} or {@link ServerMessage} returns the
+ * concrete subclass named by its commandType or serverMessageType in a single pass over the
+ * JSON, instead of parsing it once for the type and again for the subclass. The type field can
+ * appear anywhere in the object, since Gson writes subclass fields before inherited ones.
+ * Writing is unchanged.
+ */
+public class WebSocketJson {
+
+    private WebSocketJson() {
+    }
+
+    public static Gson newGson() {
+        return new GsonBuilder().registerTypeAdapterFactory(new Factory()).create();
+    }
+
+    private static class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() == UserGameCommand.class) {
+                return (TypeAdapter<T>) new CommandAdapter(gson, this);
+            }
+            if (type.getRawType() == ServerMessage.class) {
+                return (TypeAdapter<T>) new MessageAdapter(gson, this);
+            }
+            return null;
+        }
+    }
+
+    private static class CommandAdapter extends TypeAdapter<UserGameCommand> {
+        private final Gson gson;
+        private final TypeAdapterFactory factory;
+        private final TypeAdapter<ChessMove> moveAdapter;
+
+        CommandAdapter(Gson gson, TypeAdapterFactory factory) {
+            this.gson = gson;
+            this.factory = factory;
+            this.moveAdapter = gson.getAdapter(ChessMove.class);
+        }
+
+        @Override
+        public void write(JsonWriter out, UserGameCommand command) throws IOException {
+            writeConcrete(gson, factory, out, command);
+        }
+
+        @Override
+        public UserGameCommand read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            UserGameCommand.CommandType type = null;
+            String authToken = null;
+            Integer gameID = null;
+            String role = null;
+            boolean deltaUpdates = false;
+            long lastSequence = 0;
+            ChessMove move = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "commandType" -> type = typeNamed(UserGameCommand.CommandType.class, "commandType", in.nextString());
+                    case "authToken" -> authToken = in.nextString();
+                    case "gameID" -> gameID = in.nextInt();
+                    case "role" -> role = in.nextString();
+                    case "deltaUpdates" -> deltaUpdates = in.nextBoolean();
+                    case "lastSequence" -> lastSequence = in.nextLong();
+                    case "move" -> move = moveAdapter.read(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (type == null) {
+                throw new JsonParseException("Command has no commandType");
+            }
+            return switch (type) {
+                case CONNECT -> new JoinGameCommand(type, authToken, gameID, role, deltaUpdates);
+                case MAKE_MOVE -> new MakeMoveCommand(type, authToken, gameID, move);
+                case LEAVE -> new LeaveGameCommand(type, authToken, gameID);
+                case RESIGN -> new ReseignGameCommand(type, authToken, gameID);
+                case RESYNC -> new UserGameCommand(type, authToken, gameID);
+                case RESUME -> new ResumeGameCommand(type, authToken, gameID, lastSequence, deltaUpdates);
+            };
+        }
+    }
+
+    private static class MessageAdapter extends TypeAdapter<ServerMessage> {
+        private final Gson gson;
+        private final TypeAdapterFactory factory;
+        private final TypeAdapter<ChessGame> gameAdapter;
+        private final TypeAdapter<ChessMove> moveAdapter;
+
+        MessageAdapter(Gson gson, TypeAdapterFactory factory) {
+            this.gson = gson;
+            this.factory = factory;
+            this.gameAdapter = gson.getAdapter(ChessGame.class);
+            this.moveAdapter = gson.getAdapter(ChessMove.class);
+        }
+
+        @Override
+        public void write(JsonWriter out, ServerMessage message) throws IOException {
+            writeConcrete(gson, factory, out, message);
+        }
+
+        @Override
+        public ServerMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            ServerMessage.ServerMessageType type = null;
+            ChessGame game = null;
+            String text = null;
+            ChessMove move = null;
+            int ply = 0;
+            long positionHash = 0;
+            MoveMessage.GameStatus status = null;
+            Long sequence = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "serverMessageType" -> type = typeNamed(ServerMessage.ServerMessageType.class, "serverMessageType", in.nextString());
+                    case "game" -> game = gameAdapter.read(in);
+                    case "message", "errorMessage" -> text = in.nextString();
+                    case "move" -> move = moveAdapter.read(in);
+                    case "ply" -> ply = in.nextInt();
+                    case "positionHash" -> positionHash = in.nextLong();
+                    case "status" -> status = MoveMessage.GameStatus.valueOf(in.nextString());
+                    case "sequence" -> sequence = in.nextLong();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (type == null) {
+                throw new JsonParseException("Server message has no serverMessageType");
+            }
+            ServerMessage message = switch (type) {
+                case LOAD_GAME -> new LoadGameMessage(game);
+                case ERROR -> new ErrorMessage(type, text);
+                case NOTIFICATION -> new NotificationMessage(type, text);
+                case MOVE -> new MoveMessage(move, ply, positionHash, status);
+            };
+            message.setSequence(sequence);
+            return message;
+        }
+    }
+
+    private static <E extends Enum<E>> E typeNamed(Class<E> types, String field, String name) {
+        try {
+            return Enum.valueOf(types, name);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException("Unknown " + field + ": " + name);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void writeConcrete(Gson gson, TypeAdapterFactory factory, JsonWriter out, T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        // skip this factory so the base classes are written reflectively rather than back through these adapters
+        TypeToken<T> concreteType = (TypeToken<T>) TypeToken.get(value.getClass());
+        gson.getDelegateAdapter(factory, concreteType).write(out, value);
+    }
+}
@@ -4,14 +4,27 @@ import model.GameData;
 
 public class JoinGameCommand extends UserGameCommand{
     private final String role;
+    private final Boolean deltaUpdates;
 
     public JoinGameCommand(CommandType commandType,  String authToken, Integer gameID,String joinsAs) {
+        this(commandType, authToken, gameID, joinsAs, false);
+    }
+
+    /**
+     * @param deltaUpdates ask for a MOVE message after each move instead of the whole game
+     */
+    public JoinGameCommand(CommandType commandType, String authToken, Integer gameID, String joinsAs, boolean deltaUpdates) {
         super(commandType, authToken, gameID);
         this.role = joinsAs;
+        this.deltaUpdates = deltaUpdates;
     }
 
     public String getRole() {
         return role;
     }
 
+    public boolean wantsDeltaUpdates() {
+        return Boolean.TRUE.equals(deltaUpdates);
+    }
+
 }
@@ -0,0 +1,27 @@
+package websocket.commands;
+
+/**
+ * Rejoins a game after the websocket dropped, asking for just the events after the last one seen
+ */
+public class ResumeGameCommand extends UserGameCommand {
+    private final long lastSequence;
+    private final Boolean deltaUpdates;
+
+    /**
+     * @param lastSequence sequence of the last message received from the game
+     * @param deltaUpdates ask for a MOVE message after each move instead of the whole game
+     */
+    public ResumeGameCommand(CommandType commandType, String authToken, Integer gameID, long lastSequence, boolean deltaUpdates) {
+        super(commandType, authToken, gameID);
+        this.lastSequence = lastSequence;
+        this.deltaUpdates = deltaUpdates;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public boolean wantsDeltaUpdates() {
+        return Boolean.TRUE.equals(deltaUpdates);
+    }
+}
@@ -13,6 +13,11 @@ public class LoadGameMessage extends ServerMessage {
         game = inputGame.game();
     }
 
+    public LoadGameMessage(ChessGame game) {
+        super(ServerMessageType.LOAD_GAME);
+        this.game = game;
+    }
+
     public ChessGame getGame() {
         return game;
     }
@@ -0,0 +1,52 @@
+package websocket.messages;
+
+import chess.ChessMove;
+
+/**
+ * Sent after each move to clients that asked for delta updates when they connected, in place of
+ * a LOAD_GAME with the whole game. A client applies the move to its own copy and compares
+ * positionHash (see ChessGameCodec.positionHash) to make sure it is still in step; if the ply
+ * skips ahead or the hash differs it sends RESYNC to get a fresh LOAD_GAME.
+ */
+public class MoveMessage extends ServerMessage {
+
+    public enum GameStatus {
+        IN_PROGRESS,
+        CHECK,
+        CHECKMATE,
+        STALEMATE
+    }
+
+    private final ChessMove move;
+    private final int ply;
+    private final long positionHash;
+    private final GameStatus status;
+
+    public MoveMessage(ChessMove move, int ply, long positionHash, GameStatus status) {
+        super(ServerMessageType.MOVE);
+        this.move = move;
+        this.ply = ply;
+        this.positionHash = positionHash;
+        this.status = status;
+    }
+
+    public ChessMove getMove() {
+        return move;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public long getPositionHash() {
+        return positionHash;
+    }
+
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    public boolean endsGame() {
+        return status == GameStatus.CHECKMATE || status == GameStatus.STALEMATE;
+    }
+}
@@ -10,11 +10,13 @@ import java.util.Objects;
  */
 public class ServerMessage {
     ServerMessageType serverMessageType;
+    Long sequence;
 
     public enum ServerMessageType {
         LOAD_GAME,
         ERROR,
-        NOTIFICATION
+        NOTIFICATION,
+        MOVE
     }
 
     public ServerMessage(ServerMessageType type) {
@@ -25,6 +27,18 @@ public class ServerMessage {
         return this.serverMessageType;
     }
 
+    /**
+     * Position of this message in its game's event stream, or null for messages outside it such
+     * as errors. A LOAD_GAME sent to one client carries the sequence of the state it shows.
+     */
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
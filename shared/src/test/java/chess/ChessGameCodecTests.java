@@ -0,0 +1,76 @@
+package chess;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ChessGameCodecTests {
+
+    @Test
+    @DisplayName("Starting Position Round Trip")
+    public void startingPositionRoundTrip() {
+        ChessGame game = new ChessGame();
+
+        ChessGame decoded = ChessGameCodec.decode(ChessGameCodec.encode(game));
+
+        Assertions.assertEquals(game, decoded);
+        Assertions.assertEquals(game.getPly(), decoded.getPly());
+        Assertions.assertFalse(decoded.isGameOver());
+    }
+
+    @Test
+    @DisplayName("Mid Game Round Trip")
+    public void midGameRoundTrip() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        game.makeMove(new ChessMove(new ChessPosition(7, 4), new ChessPosition(5, 4), null));
+        game.makeMove(new ChessMove(new ChessPosition(4, 5), new ChessPosition(5, 4), null));
+        game.setGameOver();
+
+        ChessGame decoded = ChessGameCodec.decode(ChessGameCodec.encode(game));
+
+        Assertions.assertEquals(game, decoded);
+        Assertions.assertEquals(ChessGame.TeamColor.BLACK, decoded.getTeamTurn());
+        Assertions.assertEquals(3, decoded.getPly());
+        Assertions.assertTrue(decoded.isGameOver());
+    }
+
+    @Test
+    @DisplayName("Encoding Is Compact")
+    public void encodingIsCompact() {
+        ChessGame game = new ChessGame();
+
+        byte[] binary = ChessGameCodec.encode(game);
+        byte[] json = new Gson().toJson(game).getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertEquals(ChessGameCodec.ENCODED_LENGTH, binary.length);
+        Assertions.assertTrue(binary.length * 10 < json.length,
+                "Binary encoding (" + binary.length + " bytes) should be far smaller than JSON (" + json.length + " bytes)");
+    }
+
+    @Test
+    @DisplayName("Legacy JSON Is Not Mistaken For Binary")
+    public void legacyJsonDetected() {
+        byte[] json = new Gson().toJson(new ChessGame()).getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertFalse(ChessGameCodec.isEncoded(json));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ChessGameCodec.decode(json));
+    }
+
+    @Test
+    @DisplayName("Position Hash Follows Moves")
+    public void positionHashFollowsMoves() throws InvalidMoveException {
+        ChessGame server = new ChessGame();
+        ChessGame client = server.deepCopy();
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+        server.makeMove(move);
+        Assertions.assertNotEquals(ChessGameCodec.positionHash(server), ChessGameCodec.positionHash(client));
+
+        client.makeMove(move);
+        Assertions.assertEquals(ChessGameCodec.positionHash(server), ChessGameCodec.positionHash(client));
+    }
+}
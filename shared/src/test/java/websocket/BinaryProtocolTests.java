@@ -0,0 +1,166 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessGameCodec;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import websocket.commands.JoinGameCommand;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.ResumeGameCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class BinaryProtocolTests {
+
+    private static final ChessMove PROMOTION = new ChessMove(new ChessPosition(7, 1), new ChessPosition(8, 1), ChessPiece.PieceType.QUEEN);
+
+    @Test
+    @DisplayName("Commands Round Trip")
+    public void commandsRoundTrip() {
+        JoinGameCommand connect = new JoinGameCommand(UserGameCommand.CommandType.CONNECT, "token", 12, "WHITE", true);
+        JoinGameCommand decodedConnect = (JoinGameCommand) roundTrip(connect);
+        Assertions.assertEquals(connect, decodedConnect);
+        Assertions.assertEquals("WHITE", decodedConnect.getRole());
+        Assertions.assertTrue(decodedConnect.wantsDeltaUpdates());
+
+        MakeMoveCommand makeMove = new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, "token", 12, PROMOTION);
+        Assertions.assertEquals(PROMOTION, ((MakeMoveCommand) roundTrip(makeMove)).getMove());
+
+        UserGameCommand resync = new UserGameCommand(UserGameCommand.CommandType.RESYNC, null, 3);
+        Assertions.assertEquals(resync, roundTrip(resync));
+
+        ResumeGameCommand resume = (ResumeGameCommand) roundTrip(
+                new ResumeGameCommand(UserGameCommand.CommandType.RESUME, "token", 12, 1L << 40, true));
+        Assertions.assertEquals(1L << 40, resume.getLastSequence());
+        Assertions.assertTrue(resume.wantsDeltaUpdates());
+    }
+
+    @Test
+    @DisplayName("Sequence Round Trips")
+    public void sequenceRoundTrips() {
+        NotificationMessage notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "white moved");
+        Assertions.assertNull(roundTrip(notification).getSequence());
+
+        notification.setSequence(1L << 40);
+        NotificationMessage decoded = (NotificationMessage) roundTrip(notification);
+        Assertions.assertEquals(1L << 40, decoded.getSequence());
+        Assertions.assertEquals("white moved", decoded.getMessage());
+
+        MoveMessage move = new MoveMessage(PROMOTION, 3, 7, MoveMessage.GameStatus.IN_PROGRESS);
+        move.setSequence(5L);
+        Assertions.assertEquals(5L, roundTrip(move).getSequence());
+    }
+
+    @Test
+    @DisplayName("Messages Round Trip")
+    public void messagesRoundTrip() {
+        ChessGame game = new ChessGame();
+        LoadGameMessage loadGame = (LoadGameMessage) roundTrip(new LoadGameMessage(game));
+        Assertions.assertEquals(game, loadGame.getGame());
+
+        ErrorMessage error = (ErrorMessage) roundTrip(new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "Error: bad move ♔"));
+        Assertions.assertEquals("Error: bad move ♔", error.getErrorMessage());
+
+        NotificationMessage notification = (NotificationMessage) roundTrip(
+                new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "white moved"));
+        Assertions.assertEquals("white moved", notification.getMessage());
+
+        long hash = ChessGameCodec.positionHash(game);
+        MoveMessage move = (MoveMessage) roundTrip(new MoveMessage(PROMOTION, 41, hash, MoveMessage.GameStatus.CHECKMATE));
+        Assertions.assertEquals(PROMOTION, move.getMove());
+        Assertions.assertEquals(41, move.getPly());
+        Assertions.assertEquals(hash, move.getPositionHash());
+        Assertions.assertEquals(MoveMessage.GameStatus.CHECKMATE, move.getStatus());
+    }
+
+    @Test
+    @DisplayName("Foreign Frames Rejected")
+    public void foreignFramesRejected() {
+        byte[] json = "{\"commandType\":\"CONNECT\"}".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(json)));
+
+        byte[] truncated = {BinaryProtocol.MAGIC, BinaryProtocol.VERSION, 1, 0};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(truncated)));
+    }
+
+    @Test
+    @DisplayName("Frames Smaller Than JSON")
+    public void framesSmallerThanJson() {
+        Gson gson = new Gson();
+        LoadGameMessage loadGame = new LoadGameMessage(new ChessGame());
+        MakeMoveCommand makeMove = new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE,
+                "c3a1b7a4-5f0e-4d8e-9a43-6c2b1e0f9d77", 12, PROMOTION);
+
+        int loadGameJson = gson.toJson(loadGame).getBytes(StandardCharsets.UTF_8).length;
+        int makeMoveJson = gson.toJson(makeMove).getBytes(StandardCharsets.UTF_8).length;
+
+        Assertions.assertTrue(BinaryProtocol.encodeMessage(loadGame).length < loadGameJson / 4,
+                "LOAD_GAME frame is not much smaller than its JSON");
+        Assertions.assertTrue(BinaryProtocol.encodeCommand(makeMove).length < makeMoveJson,
+                "MAKE_MOVE frame is larger than its JSON");
+    }
+
+    /**
+     * Opt in with -Dchess.benchmark=true; only prints the timings
+     */
+    @Test
+    @DisplayName("Throughput Versus JSON")
+    @EnabledIfSystemProperty(named = "chess.benchmark", matches = "true")
+    public void throughputVersusJson() {
+        Gson gson = new Gson();
+        LoadGameMessage loadGame = new LoadGameMessage(new ChessGame());
+        MakeMoveCommand makeMove = new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE,
+                "c3a1b7a4-5f0e-4d8e-9a43-6c2b1e0f9d77", 12, PROMOTION);
+        int iterations = 200_000;
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            int jsonBytes = 0;
+            for (int i = 0; i < iterations; i++) {
+                String message = gson.toJson(loadGame);
+                String command = gson.toJson(makeMove);
+                jsonBytes = message.length() + command.length();
+                gson.fromJson(message, LoadGameMessage.class);
+                gson.fromJson(command, MakeMoveCommand.class);
+            }
+            long jsonNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int binaryBytes = 0;
+            for (int i = 0; i < iterations; i++) {
+                byte[] message = BinaryProtocol.encodeMessage(loadGame);
+                byte[] command = BinaryProtocol.encodeCommand(makeMove);
+                binaryBytes = message.length + command.length;
+                BinaryProtocol.decodeMessage(ByteBuffer.wrap(message));
+                BinaryProtocol.decodeCommand(ByteBuffer.wrap(command));
+            }
+            long binaryNanos = System.nanoTime() - start;
+
+            if (warmup == 1) {
+                System.out.printf("JSON: %,d MAKE_MOVE + LOAD_GAME round trips/s, %d bytes each%n", iterations * 1_000_000_000L / jsonNanos, jsonBytes);
+                System.out.printf("Binary: %,d MAKE_MOVE + LOAD_GAME round trips/s, %d bytes each%n", iterations * 1_000_000_000L / binaryNanos, binaryBytes);
+            }
+        }
+    }
+
+    private static UserGameCommand roundTrip(UserGameCommand command) {
+        return BinaryProtocol.decodeCommand(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+    }
+
+    private static ServerMessage roundTrip(ServerMessage message) {
+        return BinaryProtocol.decodeMessage(ByteBuffer.wrap(BinaryProtocol.encodeMessage(message)));
+    }
+}
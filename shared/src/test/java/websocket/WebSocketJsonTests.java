@@ -0,0 +1,132 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import websocket.commands.JoinGameCommand;
+import websocket.commands.LeaveGameCommand;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.ResumeGameCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.lang.management.ManagementFactory;
+
+public class WebSocketJsonTests {
+
+    private static final ChessMove PROMOTION = new ChessMove(new ChessPosition(7, 1), new ChessPosition(8, 1), ChessPiece.PieceType.QUEEN);
+
+    private final Gson gson = WebSocketJson.newGson();
+
+    @Test
+    @DisplayName("Commands Decode To Concrete Type")
+    public void commandsDecodeToConcreteType() {
+        JoinGameCommand connect = new JoinGameCommand(UserGameCommand.CommandType.CONNECT, "token", 4, "BLACK", true);
+        JoinGameCommand decodedConnect = (JoinGameCommand) gson.fromJson(gson.toJson(connect), UserGameCommand.class);
+        Assertions.assertEquals(connect, decodedConnect);
+        Assertions.assertEquals("BLACK", decodedConnect.getRole());
+        Assertions.assertTrue(decodedConnect.wantsDeltaUpdates());
+
+        MakeMoveCommand makeMove = new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, "token", 4, PROMOTION);
+        UserGameCommand decodedMove = gson.fromJson(gson.toJson(makeMove), UserGameCommand.class);
+        Assertions.assertEquals(PROMOTION, ((MakeMoveCommand) decodedMove).getMove());
+
+        UserGameCommand leave = gson.fromJson(new Gson().toJson(new LeaveGameCommand(UserGameCommand.CommandType.LEAVE, "token", 4)),
+                UserGameCommand.class);
+        Assertions.assertInstanceOf(LeaveGameCommand.class, leave);
+
+        UserGameCommand resync = new UserGameCommand(UserGameCommand.CommandType.RESYNC, "token", 4);
+        Assertions.assertEquals(resync, gson.fromJson(gson.toJson(resync), UserGameCommand.class));
+
+        ResumeGameCommand resume = (ResumeGameCommand) gson.fromJson(
+                gson.toJson(new ResumeGameCommand(UserGameCommand.CommandType.RESUME, "token", 4, 99, false)), UserGameCommand.class);
+        Assertions.assertEquals(99, resume.getLastSequence());
+        Assertions.assertFalse(resume.wantsDeltaUpdates());
+    }
+
+    @Test
+    @DisplayName("Missing Or Unknown Command Type")
+    public void missingOrUnknownCommandType() {
+        JsonParseException missing = Assertions.assertThrows(JsonParseException.class,
+                () -> gson.fromJson("{\"authToken\":\"token\",\"gameID\":4}", UserGameCommand.class));
+        Assertions.assertEquals("Command has no commandType", missing.getMessage());
+
+        JsonParseException unknown = Assertions.assertThrows(JsonParseException.class,
+                () -> gson.fromJson("{\"commandType\":\"CASTLE\",\"authToken\":\"token\",\"gameID\":4}", UserGameCommand.class));
+        Assertions.assertEquals("Unknown commandType: CASTLE", unknown.getMessage());
+    }
+
+    @Test
+    @DisplayName("Messages Decode To Concrete Type")
+    public void messagesDecodeToConcreteType() {
+        ChessGame game = new ChessGame();
+        ServerMessage loadGame = gson.fromJson(gson.toJson(new LoadGameMessage(game)), ServerMessage.class);
+        Assertions.assertEquals(game, ((LoadGameMessage) loadGame).getGame());
+
+        ServerMessage error = gson.fromJson(gson.toJson(new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "Error: bad request")),
+                ServerMessage.class);
+        Assertions.assertEquals("Error: bad request", ((ErrorMessage) error).getErrorMessage());
+
+        ServerMessage notification = gson.fromJson(
+                gson.toJson(new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "joined")), ServerMessage.class);
+        Assertions.assertEquals("joined", ((NotificationMessage) notification).getMessage());
+        Assertions.assertNull(notification.getSequence());
+
+        NotificationMessage sequenced = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "moved");
+        sequenced.setSequence(12L);
+        Assertions.assertEquals(12L, gson.fromJson(gson.toJson(sequenced), ServerMessage.class).getSequence());
+
+        MoveMessage move = (MoveMessage) gson.fromJson(
+                gson.toJson(new MoveMessage(PROMOTION, 9, 4_000_000_000L, MoveMessage.GameStatus.CHECK)), ServerMessage.class);
+        Assertions.assertEquals(PROMOTION, move.getMove());
+        Assertions.assertEquals(4_000_000_000L, move.getPositionHash());
+        Assertions.assertEquals(MoveMessage.GameStatus.CHECK, move.getStatus());
+    }
+
+    @Test
+    @DisplayName("Single Pass Allocates Less")
+    public void singlePassAllocatesLess() {
+        Gson plain = new Gson();
+        String loadGame = plain.toJson(new LoadGameMessage(new ChessGame()));
+        String makeMove = plain.toJson(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, "token", 4, PROMOTION));
+        int messages = 20_000;
+
+        long twoPass = 0;
+        long singlePass = 0;
+        for (int round = 0; round < 2; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < messages; i++) {
+                plain.fromJson(loadGame, ServerMessage.class);
+                plain.fromJson(loadGame, LoadGameMessage.class);
+                plain.fromJson(makeMove, UserGameCommand.class);
+                plain.fromJson(makeMove, MakeMoveCommand.class);
+            }
+            twoPass = (allocatedBytes() - before) / messages;
+
+            before = allocatedBytes();
+            for (int i = 0; i < messages; i++) {
+                gson.fromJson(loadGame, ServerMessage.class);
+                gson.fromJson(makeMove, UserGameCommand.class);
+            }
+            singlePass = (allocatedBytes() - before) / messages;
+        }
+
+        System.out.println("LOAD_GAME + MAKE_MOVE decode: " + twoPass + " bytes allocated parsing twice, "
+                + singlePass + " bytes in one pass");
+        Assertions.assertTrue(singlePass < twoPass);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}